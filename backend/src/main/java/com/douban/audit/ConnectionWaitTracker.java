@@ -0,0 +1,34 @@
+package com.douban.audit;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * 记录当前线程从 Hikari 连接池借连接等待的时间，供 {@link com.douban.interceptor.SqlMetricsInterceptor}
+ * 归属到正在执行的语句。Hikari 在借连接的线程里回调 recordConnectionAcquiredNanos，因此用 ThreadLocal 即可。
+ */
+public class ConnectionWaitTracker implements MetricsTrackerFactory, IMetricsTracker {
+
+    private static final ThreadLocal<long[]> WAIT_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        WAIT_NANOS.get()[0] += elapsedAcquiredNanos;
+    }
+
+    /**
+     * 取出并清零当前线程累计的等待时间。
+     */
+    public static long drain() {
+        long[] holder = WAIT_NANOS.get();
+        long nanos = holder[0];
+        holder[0] = 0;
+        return nanos;
+    }
+}
@@ -0,0 +1,144 @@
+package com.douban.audit;
+
+import com.douban.entity.SqlAuditStats;
+import com.douban.repository.SqlAuditRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聚合审计：按“指纹 + 时间窗口”累计执行次数、总耗时、最大耗时和不同用户数，
+ * 每个窗口结束后每个指纹只写一行 sql_audit_stats。
+ *
+ * 与 {@link com.douban.counter.CounterBuffer} 一样采用双代结构：换代后旧窗口再冷却一个周期才写库，
+ * 记录路径不加全局锁。窗口长度由 douban.audit.window-ms 配置。
+ */
+@Component
+public class SqlAuditAggregator {
+    private static final Logger log = LoggerFactory.getLogger(SqlAuditAggregator.class);
+
+    // 每个指纹每个窗口最多精确记录的用户数，超过后按上限计
+    private static final int MAX_DISTINCT_USERS = 10_000;
+
+    private static final class Entry {
+        final String statementId;
+        final String sqlText;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final Set<Long> users = ConcurrentHashMap.newKeySet();
+
+        Entry(String statementId, String sqlText) {
+            this.statementId = statementId;
+            this.sqlText = sqlText;
+        }
+    }
+
+    private record Window(LocalDateTime start, Map<String, Entry> entries) {
+    }
+
+    private final SqlAuditRepository sqlAuditRepository;
+
+    private volatile Window active = new Window(LocalDateTime.now(), new ConcurrentHashMap<>());
+    private volatile Window retired;
+    private volatile LocalDateTime retiredEnd;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+
+    public SqlAuditAggregator(SqlAuditRepository sqlAuditRepository) {
+        this.sqlAuditRepository = sqlAuditRepository;
+    }
+
+    public void record(String statementId, SqlVerdictCache.Verdict verdict, Long userId, long elapsedNanos) {
+        Entry entry = active.entries().computeIfAbsent(verdict.fingerprint(),
+                k -> new Entry(statementId, verdict.normalized()));
+        entry.count.increment();
+        entry.totalNanos.add(elapsedNanos);
+        entry.maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        if (userId != null && entry.users.size() < MAX_DISTINCT_USERS) {
+            entry.users.add(userId);
+        }
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * 结束当前窗口：写出上一个已冷却的窗口，当前窗口转为冷却。
+     */
+    @Scheduled(fixedRateString = "${douban.audit.window-ms:60000}", initialDelayString = "${douban.audit.window-ms:60000}")
+    public void rotate() {
+        Window toWrite;
+        LocalDateTime toWriteEnd;
+        synchronized (this) {
+            toWrite = retired;
+            toWriteEnd = retiredEnd;
+            LocalDateTime now = LocalDateTime.now();
+            retired = active;
+            retiredEnd = now;
+            active = new Window(now, new ConcurrentHashMap<>());
+        }
+        write(toWrite, toWriteEnd);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        Window oldRetired;
+        LocalDateTime oldRetiredEnd;
+        Window current;
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (this) {
+            oldRetired = retired;
+            oldRetiredEnd = retiredEnd;
+            current = active;
+            retired = null;
+            active = new Window(now, new ConcurrentHashMap<>());
+        }
+        write(oldRetired, oldRetiredEnd);
+        write(current, now);
+    }
+
+    private void write(Window window, LocalDateTime end) {
+        if (window == null || window.entries().isEmpty()) return;
+        List<SqlAuditStats> rows = new ArrayList<>(window.entries().size());
+        window.entries().forEach((fingerprint, entry) -> {
+            SqlAuditStats row = new SqlAuditStats();
+            row.setFingerprint(fingerprint);
+            row.setStatementId(entry.statementId);
+            row.setSqlText(entry.sqlText);
+            row.setWindowStart(window.start());
+            row.setWindowEnd(end);
+            row.setExecCount(entry.count.sum());
+            row.setTotalLatencyUs(TimeUnit.NANOSECONDS.toMicros(entry.totalNanos.sum()));
+            row.setMaxLatencyUs(TimeUnit.NANOSECONDS.toMicros(entry.maxNanos.get()));
+            row.setDistinctUsers(entry.users.size());
+            rows.add(row);
+        });
+        try {
+            sqlAuditRepository.insertStatsBatch(rows);
+            writtenRows.addAndGet(rows.size());
+        } catch (Exception e) {
+            failedRows.addAndGet(rows.size());
+            log.warn("Failed to write {} SQL audit stats rows: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowStart", active.start().toString());
+        stats.put("fingerprints", active.entries().size());
+        stats.put("recorded", recorded.get());
+        stats.put("writtenRows", writtenRows.get());
+        stats.put("failedRows", failedRows.get());
+        return stats;
+    }
+}
@@ -0,0 +1,148 @@
+package com.douban.audit;
+
+import com.douban.entity.SqlAuditLog;
+import com.douban.repository.SqlAuditRepository;
+import com.douban.util.RingBuffer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SQL 审计日志异步写入：业务线程只把记录放进有界无锁环形队列，
+ * 后台线程按批取出后用 JDBC 批量 INSERT 写库，不再占用业务查询的连接和时间。
+ *
+ * 队列满时按 overflow 策略处理：DROP 丢弃并计数；BLOCK 让业务线程等待队列腾出空间（背压），
+ * 最多等待 block-timeout-ms，超时仍丢弃。关闭时把队列中剩余的记录全部写完。
+ */
+@Component
+public class SqlAuditAppender {
+    private static final Logger log = LoggerFactory.getLogger(SqlAuditAppender.class);
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private final SqlAuditRepository sqlAuditRepository;
+    private final RingBuffer<SqlAuditLog> buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long blockTimeoutNanos;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public SqlAuditAppender(SqlAuditRepository sqlAuditRepository,
+                            @Value("${douban.audit.buffer-size:8192}") int bufferSize,
+                            @Value("${douban.audit.overflow:drop}") String overflow,
+                            @Value("${douban.audit.batch-size:500}") int batchSize,
+                            @Value("${douban.audit.flush-interval-ms:200}") long flushIntervalMs,
+                            @Value("${douban.audit.block-timeout-ms:100}") long blockTimeoutMs) {
+        this.sqlAuditRepository = sqlAuditRepository;
+        this.buffer = new RingBuffer<>(bufferSize);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::runWriter, "sql-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void append(SqlAuditLog entry) {
+        if (!buffer.offer(entry) && !(overflowPolicy == OverflowPolicy.BLOCK && offerBlocking(entry))) {
+            dropped.incrementAndGet();
+            return;
+        }
+        appended.incrementAndGet();
+        if (buffer.size() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean offerBlocking(SqlAuditLog entry) {
+        blocked.incrementAndGet();
+        LockSupport.unpark(writer);
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            if (buffer.offer(entry)) return true;
+        }
+        return false;
+    }
+
+    private void runWriter() {
+        while (running) {
+            int n = writeBatch();
+            if (n < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    private synchronized int writeBatch() {
+        List<SqlAuditLog> batch = new ArrayList<>(Math.min(batchSize, buffer.size()));
+        int n = buffer.drainTo(batch, batchSize);
+        if (n == 0) return 0;
+        try {
+            sqlAuditRepository.insertBatch(batch);
+            written.addAndGet(n);
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            // 审计写入失败不重试，避免数据库故障时越积越多；丢弃数量计入 failed
+            failed.addAndGet(n);
+            log.warn("Failed to write {} SQL audit records: {}", n, e.getMessage());
+        }
+        return n;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        while (writeBatch() > 0) {
+            // 写完剩余记录
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("overflowPolicy", overflowPolicy.name().toLowerCase(Locale.ROOT));
+        stats.put("capacity", buffer.capacity());
+        stats.put("pending", buffer.size());
+        stats.put("appended", appended.get());
+        stats.put("written", written.get());
+        stats.put("batches", batches.get());
+        stats.put("dropped", dropped.get());
+        stats.put("blocked", blocked.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+}
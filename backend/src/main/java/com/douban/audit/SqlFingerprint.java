@@ -0,0 +1,37 @@
+package com.douban.audit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 指纹：压缩空白、转小写，把 IN 列表和多行 VALUES 中重复的占位符折叠成一个，
+ * 使同一条 Mapper 语句不同长度的参数列表得到相同的指纹。只在判定缓存未命中时计算。
+ */
+public final class SqlFingerprint {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?( ?, ?\\?)+");
+    private static final Pattern ROW_LIST = Pattern.compile("\\(\\?\\)( ?, ?\\(\\?\\))+");
+
+    private SqlFingerprint() {
+    }
+
+    public static String normalize(String sql) {
+        String s = WHITESPACE.matcher(sql).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+        s = PLACEHOLDER_LIST.matcher(s).replaceAll("?");
+        return ROW_LIST.matcher(s).replaceAll("(?)");
+    }
+
+    /**
+     * 规范化文本的 FNV-1a 64 位哈希，16 位十六进制。
+     */
+    public static String hash(String normalized) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : normalized.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return String.format("%016x", h);
+    }
+}
@@ -0,0 +1,102 @@
+package com.douban.audit;
+
+/**
+ * 单遍扫描判断 SQL 是否可疑，不做规范化、不分配内存。
+ *
+ * 规则与原先的正则（先把空白压成一个空格再转小写后匹配）一致：
+ * union / drop 整词、insert ... into ... information_schema、sleep( / benchmark(（括号前可有空白）、
+ * or 1=1（中间至少一个空白）、注释符 -- /* *&#47;、xp_ 前缀。
+ */
+public final class SqlRiskScanner {
+
+    private SqlRiskScanner() {
+    }
+
+    public static boolean isRisky(String sql) {
+        int n = sql.length();
+        boolean sawInsert = false;
+        boolean sawInto = false;
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            switch (c) {
+                case '-':
+                    if (i + 1 < n && sql.charAt(i + 1) == '-') return true;
+                    break;
+                case '/':
+                    if (i + 1 < n && sql.charAt(i + 1) == '*') return true;
+                    break;
+                case '*':
+                    if (i + 1 < n && sql.charAt(i + 1) == '/') return true;
+                    break;
+                case 'x': case 'X':
+                    if (matches(sql, i, "xp_")) return true;
+                    break;
+                case 'u': case 'U':
+                    if (word(sql, i, "union")) return true;
+                    break;
+                case 'd': case 'D':
+                    if (word(sql, i, "drop")) return true;
+                    break;
+                case 's': case 'S':
+                    if (call(sql, i, "sleep")) return true;
+                    break;
+                case 'b': case 'B':
+                    if (call(sql, i, "benchmark")) return true;
+                    break;
+                case 'o': case 'O':
+                    if (orOneEqualsOne(sql, i)) return true;
+                    break;
+                case 'i': case 'I':
+                    if (sawInto && matches(sql, i, "information_schema")) return true;
+                    if (sawInsert && word(sql, i, "into")) {
+                        sawInto = true;
+                    } else if (word(sql, i, "insert")) {
+                        sawInsert = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String sql, int at, String token) {
+        return sql.regionMatches(true, at, token, 0, token.length());
+    }
+
+    private static boolean word(String sql, int at, String token) {
+        int end = at + token.length();
+        return (at == 0 || !isWordChar(sql.charAt(at - 1)))
+                && matches(sql, at, token)
+                && (end == sql.length() || !isWordChar(sql.charAt(end)));
+    }
+
+    private static boolean call(String sql, int at, String name) {
+        if (!matches(sql, at, name)) return false;
+        int i = skipWhitespace(sql, at + name.length());
+        return i < sql.length() && sql.charAt(i) == '(';
+    }
+
+    private static boolean orOneEqualsOne(String sql, int at) {
+        if (!matches(sql, at, "or")) return false;
+        int start = at + 2;
+        int i = skipWhitespace(sql, start);
+        return i > start && matches(sql, i, "1=1");
+    }
+
+    private static int skipWhitespace(String sql, int i) {
+        while (i < sql.length() && isSpace(sql.charAt(i))) i++;
+        return i;
+    }
+
+    // 与正则 \s 相同
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // 与正则 \w 相同：ASCII 字母、数字和下划线
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -0,0 +1,66 @@
+package com.douban.audit;
+
+import com.douban.cache.LocalCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SQL 判定缓存：按 (MappedStatement ID, SQL 文本) 记住风险结果和指纹，命中时不再规范化和扫描。
+ *
+ * 同一个语句可能生成多种 SQL 文本（IN 列表长度、&lt;if&gt; 分支、批量插入条数不同），
+ * 每种文本各占一条，互不覆盖；总条数受 douban.audit.verdict-cache-size 限制，
+ * 满了以后由 {@link LocalCache} 的 TinyLFU 准入决定去留，偶发的长尾文本不会挤掉常用的。
+ * 注解里的静态 SQL 每次拿到的是同一个字符串对象，hashCode 已缓存，查找只是一次哈希和引用比较。
+ */
+@Component
+public class SqlVerdictCache {
+
+    /**
+     * @param normalized  规范化后的 SQL（聚合审计中作为该指纹的示例文本）
+     */
+    public record Verdict(String sql, boolean risky, String fingerprint, String normalized) {
+    }
+
+    private record Key(String statementId, String sql) {
+    }
+
+    private final LocalCache<Key, Verdict> verdicts;
+
+    public SqlVerdictCache(@Value("${douban.audit.verdict-cache-size:4096}") int maximumSize) {
+        this.verdicts = new LocalCache<>(maximumSize, Duration.ofHours(1));
+    }
+
+    /**
+     * @param statementId MappedStatement ID，取不到时为 null（不缓存）
+     */
+    public Verdict classify(String statementId, String sql) {
+        Key key = statementId == null ? null : new Key(statementId, sql);
+        if (key != null) {
+            Verdict verdict = verdicts.get(key);
+            if (verdict != null) return verdict;
+        }
+        String normalized = SqlFingerprint.normalize(sql);
+        String fingerprintSource = statementId == null ? normalized : statementId + "|" + normalized;
+        Verdict verdict = new Verdict(sql, SqlRiskScanner.isRisky(sql), SqlFingerprint.hash(fingerprintSource), normalized);
+        if (key != null) verdicts.put(key, verdict);
+        return verdict;
+    }
+
+    public boolean isRisky(String statementId, String sql) {
+        return classify(statementId, sql).risky();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", verdicts.size());
+        stats.put("hits", verdicts.hitCount());
+        stats.put("misses", verdicts.missCount());
+        stats.put("evictions", verdicts.evictionCount());
+        stats.put("rejections", verdicts.rejectionCount());
+        return stats;
+    }
+}
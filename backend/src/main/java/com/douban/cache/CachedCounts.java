@@ -0,0 +1,67 @@
+package com.douban.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * 分页总数缓存：COUNT(*) 的结果按 key 缓存一小段时间，翻页不再每页都做一次全量计数。
+ *
+ * 总数是近似值；与当前用户自身操作相关的计数（收藏、站内信、某部电影的评论数）在写入后主动失效。
+ */
+@Component
+public class CachedCounts {
+
+    private final TieredCache<Long> cache;
+
+    public CachedCounts(TieredCacheManager cacheManager) {
+        this.cache = cacheManager.create("page:count", 50_000,
+                Duration.ofSeconds(30), Duration.ofMinutes(2), Long.class);
+    }
+
+    public long get(String key, LongSupplier loader) {
+        Long value = cache.get(key, () -> loader.getAsLong());
+        return value == null ? 0L : value;
+    }
+
+    public void evict(String key) {
+        cache.evict(key);
+    }
+
+    public static String movies() {
+        return "movies";
+    }
+
+    public static String moviesByKeyword(String keyword) {
+        return "movies:q:" + keyword;
+    }
+
+    public static String moviesByGenres(String genres) {
+        return "movies:g:" + genres;
+    }
+
+    public static String reviewsByMovie(Long movieId) {
+        return "reviews:movie:" + movieId;
+    }
+
+    public static String reviews() {
+        return "reviews";
+    }
+
+    public static String ratings() {
+        return "ratings";
+    }
+
+    public static String users() {
+        return "users";
+    }
+
+    public static String collections(Long userId, String status) {
+        return "collections:" + userId + ":" + status;
+    }
+
+    public static String messages(Long userId) {
+        return "messages:" + userId;
+    }
+}
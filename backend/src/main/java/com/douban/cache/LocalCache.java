@@ -0,0 +1,176 @@
+package com.douban.cache;
+
+import com.douban.util.CountMinSketch;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内有界缓存：分段 LRU + TTL + TinyLFU 准入。
+ *
+ * 缓存满时，新 key 只有在访问频率高于被淘汰的 LRU 尾部时才会被放入，
+ * 避免一次性扫描类访问把热点数据挤出缓存。缓存的值会被多个线程共享，调用方应视为只读。
+ */
+public class LocalCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final CountMinSketch sketch;
+    private final int sampleSize;
+    private final AtomicInteger samples = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public LocalCache(int maximumSize, Duration ttl) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(16, maximumSize / 64)));
+        this.segments = newSegments(segmentCount);
+        int perSegment = (maximumSize + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.sketch = new CountMinSketch(4, Math.max(64, maximumSize * 4));
+        this.sampleSize = Math.max(1000, maximumSize * 10);
+    }
+
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        recordAccess(hash);
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.expiresAtNanos() - System.nanoTime() <= 0) {
+                segment.map.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        }
+    }
+
+    public void put(K key, V value) {
+        if (value == null) return;
+        int hash = spread(key.hashCode());
+        recordAccess(hash);
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            if (segment.map.containsKey(key) || segment.map.size() < segment.capacity) {
+                segment.map.put(key, entry);
+                return;
+            }
+            Iterator<Map.Entry<K, Entry<V>>> it = segment.map.entrySet().iterator();
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            if (eldest.getValue().expiresAtNanos() - System.nanoTime() <= 0) {
+                it.remove();
+                expirations.increment();
+            } else if (sketch.estimate(hash) > sketch.estimate(spread(eldest.getKey().hashCode()))) {
+                it.remove();
+                evictions.increment();
+            } else {
+                rejections.increment();
+                return;
+            }
+            segment.map.put(key, entry);
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(spread(key.hashCode()));
+        synchronized (segment) {
+            segment.map.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    public long rejectionCount() {
+        return rejections.sum();
+    }
+
+    private void recordAccess(int hash) {
+        sketch.add(hash, 1);
+        if (samples.incrementAndGet() >= sampleSize) {
+            samples.set(0);
+            sketch.halve();
+        }
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** 泛型数组不能直接创建，只在这里做一次未检查转换。 */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Segment<K, V>[] newSegments(int count) {
+        return (Segment<K, V>[]) new Segment[count];
+    }
+
+    private static final class Segment<K, V> {
+        private final int capacity;
+        private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+}
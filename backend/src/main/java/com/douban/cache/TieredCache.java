@@ -0,0 +1,247 @@
+package com.douban.cache;
+
+import com.douban.util.TransactionUtil;
+import com.fasterxml.jackson.databind.JavaType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 两级读穿缓存：进程内 LocalCache → Redis → loader（数据库）。
+ *
+ * 同一节点上同一个 key 的并发未命中只会触发一次加载，其余请求等待同一个结果。
+ * 失效通过 {@link TieredCacheManager} 的 Redis 频道广播到所有节点。
+ * redisTtl 为 null 时只使用进程内一级。
+ */
+public class TieredCache<V> {
+
+    private final String name;
+    private final LocalCache<String, V> local;
+    private final JavaType type;
+    private final Duration redisTtl;
+    private final TieredCacheManager manager;
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inflight = new ConcurrentHashMap<>();
+    // 每次失效递增；加载开始后若发生过失效，则不把结果放入本地缓存、也不写回 Redis，避免写回旧值
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long version;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+
+    TieredCache(String name, int maximumSize, Duration localTtl, Duration redisTtl, JavaType type, TieredCacheManager manager) {
+        this.name = name;
+        this.local = new LocalCache<>(maximumSize, localTtl);
+        this.type = type;
+        this.redisTtl = redisTtl;
+        this.manager = manager;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(String key, Supplier<V> loader) {
+        V cached = local.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inflight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+
+        long seen = invalidations.get();
+        try {
+            V value = loadThrough(key, loader, seen);
+            if (value != null && invalidations.get() == seen) {
+                local.put(key, value);
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 批量读取：先查本地，再一次 MGET 查 Redis，剩余的交给 loader 一次性加载。
+     * 批量加载不做并发合并；loader 返回的 Map 中缺失的 key 视为不存在（不缓存）。
+     */
+    public Map<String, V> getAll(Collection<String> keys, Function<List<String>, Map<String, V>> loader) {
+        Map<String, V> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            V cached = local.get(key);
+            if (cached != null) result.put(key, cached);
+            else missing.add(key);
+        }
+        if (missing.isEmpty()) return result;
+
+        long seen = invalidations.get();
+        if (redisTtl != null) {
+            List<String> redisKeys = new ArrayList<>(missing.size());
+            for (String key : missing) redisKeys.add(redisKey(key));
+            List<V> remote = manager.readAllFromRedis(redisKeys, type);
+            List<String> stillMissing = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                V value = remote.get(i);
+                if (value == null) {
+                    stillMissing.add(missing.get(i));
+                    continue;
+                }
+                redisHits.increment();
+                result.put(missing.get(i), value);
+                if (invalidations.get() == seen) local.put(missing.get(i), value);
+            }
+            missing = stillMissing;
+            if (missing.isEmpty()) return result;
+        }
+
+        loads.increment();
+        Map<String, V> loaded;
+        try {
+            loaded = loader.apply(missing);
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        }
+        for (String key : missing) {
+            V value = loaded.get(key);
+            if (value == null) continue;
+            result.put(key, value);
+            if (redisTtl != null) writeBack(key, value, seen);
+            if (invalidations.get() == seen) local.put(key, value);
+        }
+        return result;
+    }
+
+    /**
+     * 失效单个 key。处于事务中时延迟到提交之后执行，避免其他请求在提交前把旧值重新加载进缓存。
+     */
+    public void evict(String key) {
+        TransactionUtil.afterCommit(() -> {
+            evictLocal(key);
+            if (redisTtl != null) {
+                manager.deleteFromRedis(name, redisKey(key));
+            }
+            manager.publishEvict(name, key);
+        });
+    }
+
+    /**
+     * 失效整个缓存：Redis 中通过版本号递增让旧 key 整体作废（随 TTL 过期）。
+     */
+    public void evictAll() {
+        TransactionUtil.afterCommit(() -> {
+            long newVersion = redisTtl != null ? manager.bumpVersion(name) : version;
+            clearLocal(newVersion);
+            manager.publishEvictAll(name, newVersion);
+        });
+    }
+
+    void evictLocal(String key) {
+        invalidations.incrementAndGet();
+        local.invalidate(key);
+    }
+
+    /**
+     * 只清空本节点的本地缓存，不改版本号、不广播。
+     */
+    void clearLocal() {
+        clearLocal(version);
+    }
+
+    void clearLocal(long newVersion) {
+        invalidations.incrementAndGet();
+        if (newVersion > version) {
+            version = newVersion;
+        }
+        local.invalidateAll();
+    }
+
+    void syncVersion(long remoteVersion) {
+        if (remoteVersion > version) {
+            clearLocal(remoteVersion);
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = local.hitCount();
+        long misses = local.missCount();
+        stats.put("size", local.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses == 0 ? 0d : (double) hits / (hits + misses));
+        stats.put("redisHits", redisHits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("loadFailures", loadFailures.sum());
+        stats.put("coalescedLoads", coalesced.sum());
+        stats.put("evictions", local.evictionCount());
+        stats.put("expirations", local.expirationCount());
+        stats.put("admissionRejections", local.rejectionCount());
+        stats.put("version", version);
+        return stats;
+    }
+
+    private V loadThrough(String key, Supplier<V> loader, long seen) {
+        if (redisTtl != null) {
+            V remote = manager.readFromRedis(redisKey(key), type);
+            if (remote != null) {
+                redisHits.increment();
+                return remote;
+            }
+        }
+        loads.increment();
+        V value = loader.get();
+        if (value != null && redisTtl != null) {
+            writeBack(key, value, seen);
+        }
+        return value;
+    }
+
+    /**
+     * 把加载结果写回 Redis。加载期间发生过失效（本节点 evict 或收到广播）时不写，
+     * 写入之后才发生的失效则把刚写入的值删掉，保证失效的 DEL 不会被旧值覆盖。
+     */
+    private void writeBack(String key, V value, long seen) {
+        if (invalidations.get() != seen) return;
+        String redisKey = redisKey(key);
+        manager.writeToRedis(redisKey, value, redisTtl);
+        if (invalidations.get() != seen) {
+            manager.deleteFromRedis(name, redisKey);
+        }
+    }
+
+    private String redisKey(String key) {
+        return TieredCacheManager.KEY_PREFIX + name + ":" + version + ":" + key;
+    }
+}
@@ -0,0 +1,252 @@
+package com.douban.cache;
+
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.config.RedisPubSub;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 创建并管理 {@link TieredCache}，负责 Redis 读写、版本号和跨节点失效广播。
+ *
+ * 失效消息格式：{@code 缓存名\nkey}（单个 key）或 {@code 缓存名\n*\n版本号}（整个缓存）。
+ */
+@Component
+public class TieredCacheManager {
+    private static final Logger log = LoggerFactory.getLogger(TieredCacheManager.class);
+
+    static final String KEY_PREFIX = "douban:cache:";
+    private static final String VERSION_KEY_PREFIX = "douban:cache-version:";
+    public static final String INVALIDATION_CHANNEL = "douban:cache:invalidate";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisPubSub pubSub;
+    private final RedisCircuitBreaker redisBreaker;
+    private final Map<String, TieredCache<?>> caches = new ConcurrentHashMap<>();
+    /** 熔断或 Redis 故障期间删除 / 广播没做成的缓存名，恢复后整体失效 */
+    private final Set<String> staleCaches = ConcurrentHashMap.newKeySet();
+
+    public TieredCacheManager(StringRedisTemplate redisTemplate, ObjectMapper objectMapper, RedisPubSub pubSub,
+                              RedisCircuitBreaker redisBreaker) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.pubSub = pubSub;
+        this.redisBreaker = redisBreaker;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        pubSub.subscribe(INVALIDATION_CHANNEL, this::onInvalidation);
+        redisBreaker.addRecoveryListener(this::invalidateStaleCaches);
+    }
+
+    public <V> TieredCache<V> create(String name, int maximumSize, Duration localTtl, Duration redisTtl, Class<V> type) {
+        return create(name, maximumSize, localTtl, redisTtl, objectMapper.constructType(type));
+    }
+
+    public <V> TieredCache<V> create(String name, int maximumSize, Duration localTtl, Duration redisTtl, JavaType type) {
+        TieredCache<V> cache = new TieredCache<>(name, maximumSize, localTtl, redisTtl, type, this);
+        if (caches.putIfAbsent(name, cache) != null) {
+            throw new IllegalStateException("Duplicate cache name: " + name);
+        }
+        if (redisTtl != null) {
+            cache.syncVersion(readVersion(name));
+        }
+        return cache;
+    }
+
+    /**
+     * 只有本地一级的缓存（仍参与跨节点失效广播）。
+     */
+    public <V> TieredCache<V> createLocal(String name, int maximumSize, Duration ttl, Class<V> type) {
+        return create(name, maximumSize, ttl, null, objectMapper.constructType(type));
+    }
+
+    public JavaType listType(Class<?> elementType) {
+        return objectMapper.getTypeFactory().constructCollectionType(List.class, elementType);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+        return stats;
+    }
+
+    /**
+     * 兜底：广播丢失（如 Redis 短暂不可用）时，定期从 Redis 同步整缓存失效的版本号。
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void refreshVersions() {
+        caches.forEach((name, cache) -> {
+            long v = readVersion(name);
+            if (v > 0) cache.syncVersion(v);
+        });
+    }
+
+    /**
+     * Redis 熔断期间读写、删除、版本号递增和失效广播都直接跳过，由本地缓存和数据库兜底。
+     * 跳过或失败了删除 / 广播的缓存记下来，熔断恢复后整体递增版本号，避免恢复后读到旧值。
+     */
+    <V> V readFromRedis(String key, JavaType type) {
+        if (!redisBreaker.allowRequest()) return null;
+        String json;
+        try {
+            json = redisTemplate.opsForValue().get(key);
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis cache read failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+        try {
+            return json == null ? null : objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            log.debug("Redis cache parse failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 批量读取，返回值与 keys 一一对应（未命中或解析失败为 null）；Redis 不可用或熔断时全部为 null。
+     */
+    <V> List<V> readAllFromRedis(List<String> keys, JavaType type) {
+        List<V> values = new ArrayList<>(keys.size());
+        List<String> jsons = null;
+        if (redisBreaker.allowRequest()) {
+            try {
+                jsons = redisTemplate.opsForValue().multiGet(keys);
+                redisBreaker.recordSuccess();
+            } catch (Exception e) {
+                redisBreaker.recordFailure(e);
+                log.debug("Redis cache multi-read failed: {}", e.getMessage());
+            }
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            V value = null;
+            if (json != null) {
+                try {
+                    value = objectMapper.readValue(json, type);
+                } catch (Exception e) {
+                    log.debug("Redis cache parse failed for {}: {}", keys.get(i), e.getMessage());
+                }
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    void writeToRedis(String key, Object value, Duration ttl) {
+        if (!redisBreaker.allowRequest()) return;
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            log.debug("Redis cache serialize failed for {}: {}", key, e.getMessage());
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, json, ttl);
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis cache write failed for {}: {}", key, e.getMessage());
+        }
+    }
+
+    void deleteFromRedis(String name, String key) {
+        if (!redisBreaker.allowRequest()) {
+            staleCaches.add(name);
+            return;
+        }
+        try {
+            redisTemplate.delete(key);
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            staleCaches.add(name);
+            log.debug("Redis cache delete failed for {}: {}", key, e.getMessage());
+        }
+    }
+
+    long bumpVersion(String name) {
+        if (!redisBreaker.allowRequest()) {
+            staleCaches.add(name);
+            return 0;
+        }
+        try {
+            Long v = redisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + name);
+            redisBreaker.recordSuccess();
+            return v == null ? 0 : v;
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            staleCaches.add(name);
+            log.debug("Redis unavailable, cannot bump cache version of {}: {}", name, e.getMessage());
+            return 0;
+        }
+    }
+
+    void publishEvict(String name, String key) {
+        if (!pubSub.publish(INVALIDATION_CHANNEL, name + "\n" + key)) staleCaches.add(name);
+    }
+
+    void publishEvictAll(String name, long version) {
+        if (!pubSub.publish(INVALIDATION_CHANNEL, name + "\n*\n" + version)) staleCaches.add(name);
+    }
+
+    /**
+     * 熔断恢复后，对断开期间漏掉删除或广播的缓存整体失效（递增版本号并广播）。
+     */
+    private void invalidateStaleCaches() {
+        for (String name : new ArrayList<>(staleCaches)) {
+            TieredCache<?> cache = caches.get(name);
+            staleCaches.remove(name);
+            if (cache == null) continue;
+            long version = bumpVersion(name);
+            if (version == 0) continue;
+            cache.clearLocal(version);
+            publishEvictAll(name, version);
+            log.info("Cache {} invalidated after Redis recovery", name);
+        }
+    }
+
+    private long readVersion(String name) {
+        if (!redisBreaker.allowRequest()) return 0;
+        try {
+            String v = redisTemplate.opsForValue().get(VERSION_KEY_PREFIX + name);
+            redisBreaker.recordSuccess();
+            return v == null ? 0 : Long.parseLong(v);
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, cannot read cache version of {}: {}", name, e.getMessage());
+            return 0;
+        }
+    }
+
+    private void onInvalidation(String message) {
+        String[] parts = message.split("\n", 3);
+        if (parts.length < 2) return;
+        TieredCache<?> cache = caches.get(parts[0]);
+        if (cache == null) return;
+        if ("*".equals(parts[1])) {
+            long version = parts.length == 3 ? Long.parseLong(parts[2]) : 0;
+            cache.clearLocal(version);
+        } else {
+            cache.evictLocal(parts[1]);
+        }
+    }
+}
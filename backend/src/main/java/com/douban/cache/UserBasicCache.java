@@ -0,0 +1,49 @@
+package com.douban.cache;
+
+import com.douban.entity.User;
+import com.douban.mapper.UserMapper;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 用户展示信息（id、用户名、头像）的批量读缓存，供评论等列表页补齐作者信息。
+ *
+ * 用户修改资料后需调用 {@link #evict(Long)}。
+ */
+@Component
+public class UserBasicCache {
+
+    private final TieredCache<User> cache;
+    private final UserMapper userMapper;
+
+    public UserBasicCache(TieredCacheManager cacheManager, UserMapper userMapper) {
+        this.cache = cacheManager.create("user:basic", 50_000,
+                Duration.ofMinutes(1), Duration.ofMinutes(30), User.class);
+        this.userMapper = userMapper;
+    }
+
+    public Map<Long, User> getAll(Collection<Long> userIds) {
+        List<String> keys = new ArrayList<>(userIds.size());
+        for (Long id : userIds) {
+            if (id != null) keys.add(String.valueOf(id));
+        }
+        if (keys.isEmpty()) return Map.of();
+        Map<String, User> cached = cache.getAll(keys, missing -> {
+            List<Long> ids = missing.stream().map(Long::valueOf).toList();
+            Map<String, User> loaded = new HashMap<>();
+            for (User user : userMapper.findBasicByIds(ids)) {
+                loaded.put(String.valueOf(user.getId()), user);
+            }
+            return loaded;
+        });
+        Map<Long, User> result = new HashMap<>();
+        cached.forEach((key, user) -> result.put(Long.valueOf(key), user));
+        return result;
+    }
+
+    public void evict(Long userId) {
+        cache.evict(String.valueOf(userId));
+    }
+}
@@ -0,0 +1,105 @@
+package com.douban.cache;
+
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.mapper.UserMapper;
+import com.douban.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * 用户账号状态的进程内缓存，替代每个已登录请求都查一次数据库。
+ *
+ * 只有本地一级；管理员修改状态后调用 {@link #evict(Long)}，失效通过 {@link TieredCacheManager} 的 Redis 频道
+ * 立即广播到所有节点。封禁要求 1 秒内在所有节点生效，不能只靠广播（可能丢失）或 TTL（太短则缓存形同虚设），
+ * 所以每次修改状态还会递增 Redis 中的状态版本号，各节点每 epoch-poll-ms 读一次，发现变化就清空本地缓存。
+ * 读不到版本号（Redis 熔断或故障）时每次轮询都清空，相当于断开期间 TTL 临时缩短到轮询间隔。
+ */
+@Component
+public class UserStatusCache {
+    private static final Logger log = LoggerFactory.getLogger(UserStatusCache.class);
+
+    // 用户不存在时缓存的占位值，避免无效 token 反复查库
+    private static final String MISSING = "";
+    private static final String EPOCH_KEY = "douban:user:status-epoch";
+
+    private final TieredCache<String> cache;
+    private final UserMapper userMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker redisBreaker;
+
+    // 上次轮询读到的版本号；null 表示还没读到过
+    private volatile String seenEpoch;
+
+    public UserStatusCache(TieredCacheManager cacheManager, UserMapper userMapper,
+                           StringRedisTemplate redisTemplate, RedisCircuitBreaker redisBreaker,
+                           @Value("${douban.user.status-cache-ttl:30s}") Duration ttl) {
+        this.cache = cacheManager.createLocal("user:status", 100_000, ttl, String.class);
+        this.userMapper = userMapper;
+        this.redisTemplate = redisTemplate;
+        this.redisBreaker = redisBreaker;
+    }
+
+    /**
+     * 账号状态，用户不存在时返回 null。
+     */
+    public String getStatus(Long userId) {
+        String status = cache.get(String.valueOf(userId), () -> {
+            String loaded = userMapper.findStatusById(userId);
+            return loaded == null ? MISSING : loaded;
+        });
+        return status == null || status.isEmpty() ? null : status;
+    }
+
+    public boolean isActive(Long userId) {
+        return "ACTIVE".equalsIgnoreCase(getStatus(userId));
+    }
+
+    public void evict(Long userId) {
+        cache.evict(String.valueOf(userId));
+        TransactionUtil.afterCommit(this::bumpEpoch);
+    }
+
+    /**
+     * 检查状态版本号，变化或读不到时清空本地缓存。
+     */
+    @Scheduled(fixedDelayString = "${douban.user.status-epoch-poll-ms:500}")
+    public void pollEpoch() {
+        String epoch = readEpoch();
+        if (epoch == null || !Objects.equals(epoch, seenEpoch)) {
+            cache.clearLocal();
+        }
+        seenEpoch = epoch;
+    }
+
+    private void bumpEpoch() {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            redisTemplate.opsForValue().increment(EPOCH_KEY);
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, cannot bump user status epoch: {}", e.getMessage());
+        }
+    }
+
+    // 版本号 key 不存在时按 "0" 处理；Redis 不可用时返回 null
+    private String readEpoch() {
+        if (!redisBreaker.allowRequest()) return null;
+        try {
+            String epoch = redisTemplate.opsForValue().get(EPOCH_KEY);
+            redisBreaker.recordSuccess();
+            return epoch == null ? "0" : epoch;
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, user status cache falls back to poll-interval expiry: {}", e.getMessage());
+            return null;
+        }
+    }
+}
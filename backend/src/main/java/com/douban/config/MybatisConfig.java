@@ -1,15 +1,31 @@
 package com.douban.config;
 
-import com.douban.interceptor.SqlAuditInterceptor;
-import org.mybatis.spring.boot.autoconfigure.ConfigurationCustomizer;
+import com.douban.audit.ConnectionWaitTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * SQL 拦截器（SqlAuditInterceptor、SqlMetricsInterceptor）都是 Spring Bean，
+ * 由 MyBatis 自动配置注册，这里不再手动 addInterceptor，否则同一个插件会包装两次。
+ */
 @Configuration
 public class MybatisConfig {
 
+    /**
+     * 让连接池把借连接的等待时间报告给 {@link ConnectionWaitTracker}（需在连接池启动前设置）。
+     */
     @Bean
-    public ConfigurationCustomizer sqlAuditCustomizer(SqlAuditInterceptor sqlAuditInterceptor) {
-        return configuration -> configuration.addInterceptor(sqlAuditInterceptor);
+    public static BeanPostProcessor connectionWaitTrackerPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource && dataSource.getMetricsTrackerFactory() == null) {
+                    dataSource.setMetricsTrackerFactory(new ConnectionWaitTracker());
+                }
+                return bean;
+            }
+        };
     }
 }
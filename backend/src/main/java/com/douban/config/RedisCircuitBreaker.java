@@ -0,0 +1,176 @@
+package com.douban.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Redis 熔断器：连续失败达到阈值后断开，之后的 Redis 调用直接走降级逻辑，不再等待超时。
+ *
+ * 断开 open-ms 之后进入半开状态，由后台线程 PING 探测（请求线程不参与探测）：
+ * 成功则恢复，失败则重新断开并等待下一轮。使用 Redis 的组件在调用前检查 {@link #allowRequest()}，
+ * 或直接用 {@link #call(Supplier, Supplier)} 包装。
+ */
+@Component
+public class RedisCircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${douban.redis.breaker.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${douban.redis.breaker.open-ms:5000}")
+    private long openMs;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+    private volatile long stateChangedAt = System.currentTimeMillis();
+    private volatile String lastError;
+
+    private final AtomicLong opens = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+    private final List<Runnable> recoveryListeners = new CopyOnWriteArrayList<>();
+
+    public RedisCircuitBreaker(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 熔断恢复（探测成功、重新闭合）后在探测线程上执行，用于补做断开期间跳过的操作。
+     */
+    public void addRecoveryListener(Runnable listener) {
+        recoveryListeners.add(listener);
+    }
+
+    /**
+     * 熔断器闭合时返回 true；断开或半开时返回 false，并计入短路次数。
+     */
+    public boolean allowRequest() {
+        if (state.get() == State.CLOSED) return true;
+        shortCircuited.incrementAndGet();
+        return false;
+    }
+
+    public void recordSuccess() {
+        if (consecutiveFailures.get() != 0) consecutiveFailures.set(0);
+    }
+
+    public void recordFailure(Exception e) {
+        failures.incrementAndGet();
+        lastError = e.getMessage();
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 闭合时执行 action，失败或断开时返回 fallback 的结果。
+     */
+    public <T> T call(Supplier<T> action, Supplier<T> fallback) {
+        if (!allowRequest()) return fallback.get();
+        try {
+            T result = action.get();
+            recordSuccess();
+            return result;
+        } catch (Exception e) {
+            recordFailure(e);
+            log.debug("Redis call failed, use fallback: {}", e.getMessage());
+            return fallback.get();
+        }
+    }
+
+    /**
+     * 断开超过 open-ms 后半开并 PING 一次。
+     */
+    @Scheduled(fixedDelayString = "${douban.redis.breaker.probe-interval-ms:1000}")
+    public void probeIfOpen() {
+        if (state.get() != State.OPEN || System.currentTimeMillis() - openedAt < openMs) return;
+        if (!state.compareAndSet(State.OPEN, State.HALF_OPEN)) return;
+        stateChangedAt = System.currentTimeMillis();
+        if (ping()) {
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+            stateChangedAt = System.currentTimeMillis();
+            log.info("Redis circuit closed after successful probe");
+            for (Runnable listener : recoveryListeners) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("Redis recovery listener failed: {}", e.getMessage());
+                }
+            }
+        } else {
+            openedAt = System.currentTimeMillis();
+            state.set(State.OPEN);
+            stateChangedAt = openedAt;
+        }
+    }
+
+    /**
+     * PING 一次，结果同时计入熔断状态；返回 PONG 的内容，失败返回 null。
+     */
+    public String probe() {
+        probes.incrementAndGet();
+        try (RedisConnection connection = redisTemplate.getRequiredConnectionFactory().getConnection()) {
+            String pong = connection.ping();
+            recordSuccess();
+            return pong;
+        } catch (Exception e) {
+            recordFailure(e);
+            return null;
+        }
+    }
+
+    private boolean ping() {
+        return probe() != null;
+    }
+
+    private void open() {
+        State previous = state.getAndSet(State.OPEN);
+        openedAt = System.currentTimeMillis();
+        if (previous == State.CLOSED) {
+            opens.incrementAndGet();
+            stateChangedAt = openedAt;
+            log.warn("Redis circuit opened after {} consecutive failures: {}", consecutiveFailures.get(), lastError);
+        }
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.get().name());
+        stats.put("stateChangedAt", Instant.ofEpochMilli(stateChangedAt).toString());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("failures", failures.get());
+        stats.put("opens", opens.get());
+        stats.put("shortCircuited", shortCircuited.get());
+        stats.put("probes", probes.get());
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
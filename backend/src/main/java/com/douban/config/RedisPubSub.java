@@ -0,0 +1,92 @@
+package com.douban.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Redis 发布/订阅的统一入口，用于多节点之间的缓存失效等通知。
+ *
+ * 订阅延迟到应用启动完成后再注册：此时监听容器已在运行，
+ * Redis 不可用也只会在后台重试，不会导致应用启动失败。
+ */
+@Component
+public class RedisPubSub {
+    private static final Logger log = LoggerFactory.getLogger(RedisPubSub.class);
+
+    private record Subscription(String channel, MessageListener listener) {
+    }
+
+    private final RedisMessageListenerContainer container;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker redisBreaker;
+    private final List<Subscription> pending = new ArrayList<>();
+    private boolean ready;
+
+    public RedisPubSub(RedisMessageListenerContainer container, StringRedisTemplate redisTemplate,
+                       RedisCircuitBreaker redisBreaker) {
+        this.container = container;
+        this.redisTemplate = redisTemplate;
+        this.redisBreaker = redisBreaker;
+    }
+
+    public synchronized void subscribe(String channel, Consumer<String> handler) {
+        MessageListener listener = (message, pattern) -> {
+            try {
+                handler.accept(new String(message.getBody(), StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                log.warn("Failed to handle message on channel {}: {}", channel, e.getMessage());
+            }
+        };
+        Subscription subscription = new Subscription(channel, listener);
+        if (ready) {
+            register(subscription);
+        } else {
+            pending.add(subscription);
+        }
+    }
+
+    /**
+     * 发布消息，失败或熔断时只记录日志并返回 false。
+     */
+    public boolean publish(String channel, String message) {
+        if (!redisBreaker.allowRequest()) return false;
+        try {
+            redisTemplate.convertAndSend(channel, message);
+            redisBreaker.recordSuccess();
+            return true;
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip publishing to {}: {}", channel, e.getMessage());
+            return false;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void onApplicationReady() {
+        ready = true;
+        for (Subscription subscription : pending) {
+            register(subscription);
+        }
+        pending.clear();
+    }
+
+    private void register(Subscription subscription) {
+        try {
+            container.addMessageListener(subscription.listener(), new ChannelTopic(subscription.channel()));
+        } catch (Exception e) {
+            log.warn("Failed to subscribe channel {}: {}", subscription.channel(), e.getMessage());
+        }
+    }
+}
@@ -4,33 +4,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+/**
+ * 启动时 PING 一次 Redis 并记录结果；之后的健康状态由 {@link RedisCircuitBreaker} 持续跟踪。
+ */
 @Component
 public class RedisStartupChecker implements ApplicationRunner {
     private static final Logger log = LoggerFactory.getLogger(RedisStartupChecker.class);
 
-    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker redisBreaker;
 
-    public RedisStartupChecker(StringRedisTemplate redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    public RedisStartupChecker(RedisCircuitBreaker redisBreaker) {
+        this.redisBreaker = redisBreaker;
     }
 
     @Override
     public void run(ApplicationArguments args) {
-        try {
-            String pong = redisTemplate.getConnectionFactory() != null
-                    ? redisTemplate.getConnectionFactory().getConnection().ping()
-                    : null;
-            if (pong != null) {
-                log.info("Redis connected (PING -> {})", pong);
-            } else {
-                log.warn("Redis connection factory not available");
-            }
-        } catch (Exception e) {
-            log.warn("Redis not connected: {}", e.getMessage());
+        String pong = redisBreaker.probe();
+        if (pong != null) {
+            log.info("Redis connected (PING -> {})", pong);
+        } else {
+            log.warn("Redis not connected: {}", redisBreaker.stats().get("lastError"));
         }
     }
 }
-
@@ -0,0 +1,18 @@
+package com.douban.config;
+
+/**
+ * 服务暂时不可用（如索引加载中），由 {@link GlobalExceptionHandler} 转成 503 并带上 Retry-After。
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
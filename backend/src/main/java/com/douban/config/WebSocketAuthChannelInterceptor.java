@@ -1,6 +1,6 @@
 package com.douban.config;
 
-import com.douban.mapper.UserMapper;
+import com.douban.cache.UserStatusCache;
 import com.douban.util.JwtUtil;
 import com.douban.websocket.UserPrincipal;
 import org.springframework.messaging.Message;
@@ -15,11 +15,11 @@ import org.springframework.stereotype.Component;
 public class WebSocketAuthChannelInterceptor implements ChannelInterceptor {
 
     private final JwtUtil jwtUtil;
-    private final UserMapper userMapper;
+    private final UserStatusCache userStatusCache;
 
-    public WebSocketAuthChannelInterceptor(JwtUtil jwtUtil, UserMapper userMapper) {
+    public WebSocketAuthChannelInterceptor(JwtUtil jwtUtil, UserStatusCache userStatusCache) {
         this.jwtUtil = jwtUtil;
-        this.userMapper = userMapper;
+        this.userStatusCache = userStatusCache;
     }
 
     @Override
@@ -30,10 +30,10 @@ public class WebSocketAuthChannelInterceptor implements ChannelInterceptor {
             if (token != null && token.startsWith("Bearer ")) {
                 token = token.substring(7);
             }
-            if (token != null && jwtUtil.validateToken(token)) {
-                Long userId = jwtUtil.getUserIdFromToken(token);
-                String status = userMapper.findStatusById(userId);
-                if (status != null && "ACTIVE".equalsIgnoreCase(status)) {
+            JwtUtil.TokenPrincipal principal = jwtUtil.parse(token);
+            if (principal != null) {
+                Long userId = principal.userId();
+                if (userStatusCache.isActive(userId)) {
                     accessor.setUser(new UserPrincipal(userId.toString()));
                 }
             }
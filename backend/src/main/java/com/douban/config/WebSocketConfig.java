@@ -7,6 +7,9 @@ import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 
+/**
+ * 每个节点使用内置简单代理，只服务本节点的连接；跨节点投递由 {@link com.douban.websocket.MessageRelay} 完成。
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
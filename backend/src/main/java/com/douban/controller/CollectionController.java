@@ -22,11 +22,15 @@ public class CollectionController {
             @RequestParam(defaultValue = "wish") String status,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest request) {
         Long userId = (Long) request.getAttribute("userId");
         if (userId == null) {
             return ResponseEntity.status(401).body(Map.of("error", "请先登录"));
         }
+        if (cursor != null) {
+            return ResponseEntity.ok(interactionService.getUserCollectionsAfter(userId, status, cursor, size));
+        }
         PageResult<MovieCollection> result = interactionService.getUserCollections(userId, status, page, size);
         return ResponseEntity.ok(result);
     }
@@ -1,8 +1,11 @@
 package com.douban.controller;
 
+import com.douban.counter.UniqueViewerCounter;
 import com.douban.dto.*;
 import com.douban.entity.Movie;
 import com.douban.entity.Review;
+import com.douban.search.FacetIndex;
+import com.douban.search.MovieSuggester;
 import com.douban.service.InteractionService;
 import com.douban.service.MovieService;
 import com.douban.service.RankingService;
@@ -10,10 +13,14 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/movies")
@@ -28,19 +35,31 @@ public class MovieController {
     @Autowired
     private RankingService rankingService;
 
+    @Autowired
+    private MovieSuggester movieSuggester;
+
+    /**
+     * 传入 cursor 参数（第一页传空字符串）时使用键集分页，返回 CursorPage；否则按页码分页。
+     */
     @GetMapping
-    public ResponseEntity<PageResult<Movie>> getMovies(
+    public ResponseEntity<?> getMovies(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return ResponseEntity.ok(movieService.getMoviesAfter(cursor, size));
+        }
         return ResponseEntity.ok(movieService.getMovies(page, size));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> getMovie(@PathVariable Long id) {
+    public ResponseEntity<?> getMovie(@PathVariable Long id, HttpServletRequest httpRequest) {
         try {
             Movie movie = movieService.getMovieById(id);
-            rankingService.recordMovieView(id);
-            return ResponseEntity.ok(movie);
+            Long userId = (Long) httpRequest.getAttribute("userId");
+            rankingService.recordMovieView(id, UniqueViewerCounter.viewerKey(
+                    userId, httpRequest.getRemoteAddr(), httpRequest.getHeader("User-Agent")));
+            return ResponseEntity.ok(rankingService.withUniqueViewers(movie));
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -56,9 +75,16 @@ public class MovieController {
         return ResponseEntity.ok(movieService.getRecent(limit));
     }
 
+    /**
+     * 热度榜，window 为 1h / 24h（默认）/ 7d；by=viewers 按独立访客排行（仅 24h / 7d）。
+     */
     @GetMapping("/hot")
-    public ResponseEntity<List<Movie>> getHot(@RequestParam(defaultValue = "10") int limit) {
-        return ResponseEntity.ok(rankingService.getHotMovies(limit));
+    public ResponseEntity<List<Movie>> getHot(
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "24h") String window,
+            @RequestParam(defaultValue = "views") String by) {
+        return ResponseEntity.ok(rankingService.getHotMovies(limit,
+                RankingService.Window.parse(window), RankingService.Metric.parse(by)));
     }
 
     @GetMapping("/most-reviewed")
@@ -77,27 +103,89 @@ public class MovieController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<PageResult<Movie>> search(
+    public ResponseEntity<?> search(
             @RequestParam String q,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return ResponseEntity.ok(movieService.searchAfter(q, cursor, size));
+        }
         return ResponseEntity.ok(movieService.search(q, page, size));
     }
 
+    /**
+     * 搜索联想（边输边查），完全在内存中完成。
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<MovieSuggester.Suggestion>> suggest(
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(movieSuggester.suggest(prefix, limit));
+    }
+
     @GetMapping("/genre/{genre}")
-    public ResponseEntity<PageResult<Movie>> getByGenre(
+    public ResponseEntity<?> getByGenre(
             @PathVariable String genre,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return ResponseEntity.ok(movieService.getByGenreAfter(genre, cursor, size));
+        }
         return ResponseEntity.ok(movieService.getByGenre(genre, page, size));
     }
 
+    /**
+     * 多类型筛选：match=all 同时属于所有类型，match=any 属于任一类型；
+     * 可叠加 year / country / language 分面，非游标模式下返回各分面计数。
+     */
     @GetMapping("/genres")
-    public ResponseEntity<PageResult<Movie>> getByGenres(
-            @RequestParam List<String> genres,
+    public ResponseEntity<?> getByGenres(
+            @RequestParam(required = false) List<String> genres,
+            @RequestParam(defaultValue = "all") String match,
+            @RequestParam(required = false) List<String> year,
+            @RequestParam(required = false) List<String> country,
+            @RequestParam(required = false) List<String> language,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
-        return ResponseEntity.ok(movieService.getByGenres(genres, page, size));
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        boolean matchAll = !"any".equalsIgnoreCase(match);
+        Map<String, List<String>> facets = new LinkedHashMap<>();
+        if (year != null) facets.put(FacetIndex.YEAR, year);
+        if (country != null) facets.put(FacetIndex.COUNTRY, country);
+        if (language != null) facets.put(FacetIndex.LANGUAGE, language);
+        if (cursor != null) {
+            return ResponseEntity.ok(movieService.getByGenresAfter(genres, matchAll, facets, cursor, size));
+        }
+        return ResponseEntity.ok(movieService.getByGenres(genres, matchAll, facets, page, size));
+    }
+
+    /**
+     * 分面浏览：分面名作为查询参数（genre / year / decade / country / language / rating），
+     * 多个取值可重复传参或用逗号分隔；同一分面内为 OR，不同分面之间为 AND，
+     * match=all 时类型改为同时满足。非游标模式下一并返回各分面计数。
+     */
+    @GetMapping("/browse")
+    public ResponseEntity<?> browse(
+            @RequestParam MultiValueMap<String, String> params,
+            @RequestParam(defaultValue = "any") String match,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        for (String facet : FacetIndex.FACETS) {
+            List<String> values = params.get(facet);
+            if (values == null) continue;
+            filters.put(facet, values.stream()
+                    .flatMap(v -> Arrays.stream(v.split(",")))
+                    .collect(Collectors.toList()));
+        }
+        boolean matchAll = "all".equalsIgnoreCase(match);
+        if (cursor != null) {
+            return ResponseEntity.ok(movieService.browseAfter(filters, matchAll, cursor, size));
+        }
+        return ResponseEntity.ok(movieService.browse(filters, matchAll, page, size));
     }
 
     // 评分
@@ -134,12 +222,16 @@ public class MovieController {
 
     // 评论
     @GetMapping("/{id}/reviews")
-    public ResponseEntity<PageResult<Review>> getReviews(
+    public ResponseEntity<?> getReviews(
             @PathVariable Long id,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest httpRequest) {
         Long viewerId = (Long) httpRequest.getAttribute("userId");
+        if (cursor != null) {
+            return ResponseEntity.ok(interactionService.getMovieReviewsAfter(id, viewerId, cursor, size));
+        }
         return ResponseEntity.ok(interactionService.getMovieReviews(id, viewerId, page, size));
     }
 
@@ -1,11 +1,11 @@
 package com.douban.controller;
 
 import com.douban.entity.SiteMessage;
-import com.douban.dto.PageResult;
 import com.douban.service.NotificationService;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -22,10 +22,22 @@ public class NotificationController {
         return notificationService.listUnread(userId);
     }
 
+    /**
+     * 未读总数（个人消息 + 未读广播），读取 Redis 中的计数；变化时也会通过 /user/queue/notice 推送。
+     */
+    @GetMapping("/unread/count")
+    public Map<String, Long> unreadCount(@RequestAttribute("userId") Long userId) {
+        return Map.of("count", notificationService.countUnread(userId));
+    }
+
     @GetMapping
-    public PageResult<SiteMessage> list(@RequestAttribute("userId") Long userId,
-                                        @RequestParam(defaultValue = "1") int page,
-                                        @RequestParam(defaultValue = "20") int size) {
+    public Object list(@RequestAttribute("userId") Long userId,
+                       @RequestParam(defaultValue = "1") int page,
+                       @RequestParam(defaultValue = "20") int size,
+                       @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return notificationService.listAfter(userId, cursor, size);
+        }
         return notificationService.listPage(userId, page, size);
     }
 
@@ -34,4 +46,13 @@ public class NotificationController {
         // 用户ID已在拦截器校验，这里仅做消息ID批量已读
         notificationService.markRead(userId, ids);
     }
+
+    /**
+     * 广播按已读水位标记：upTo 及更早的广播全部已读，不传时标记到最新一条。
+     */
+    @PostMapping("/read/broadcasts")
+    public void markBroadcastsRead(@RequestAttribute("userId") Long userId,
+                                   @RequestParam(required = false) Long upTo) {
+        notificationService.markBroadcastsRead(userId, upTo);
+    }
 }
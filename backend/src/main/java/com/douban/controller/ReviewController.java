@@ -1,35 +1,35 @@
 package com.douban.controller;
 
-import com.douban.dto.PageResult;
-import com.douban.entity.Review;
-import com.douban.mapper.ReviewMapper;
+import com.douban.service.InteractionService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/reviews")
 public class ReviewController {
 
-    private final ReviewMapper reviewMapper;
+    private final InteractionService interactionService;
 
-    public ReviewController(ReviewMapper reviewMapper) {
-        this.reviewMapper = reviewMapper;
+    public ReviewController(InteractionService interactionService) {
+        this.interactionService = interactionService;
     }
 
+    /**
+     * 评论点赞排行，window 为 all（总榜，默认）/ week / day（按点赞时间衰减）。
+     */
     @GetMapping("/top")
-    public ResponseEntity<PageResult<Review>> topReviews(
+    public ResponseEntity<?> topReviews(
+            @RequestParam(defaultValue = "all") String window,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest httpRequest) {
-        int safePage = Math.max(1, page);
-        int safeSize = Math.min(50, Math.max(1, size));
-        int offset = (safePage - 1) * safeSize;
         Long viewerId = (Long) httpRequest.getAttribute("userId");
-        List<Review> items = reviewMapper.findTopLiked(viewerId, safeSize, offset);
-        int total = reviewMapper.countAll();
-        return ResponseEntity.ok(new PageResult<>(items, safePage, safeSize, total));
+        if (cursor != null) {
+            return ResponseEntity.ok(interactionService.getTopReviewsAfter(window, viewerId, cursor, size));
+        }
+        return ResponseEntity.ok(interactionService.getTopReviews(window, viewerId, page, size));
     }
 }
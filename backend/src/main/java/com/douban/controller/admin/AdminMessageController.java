@@ -1,22 +1,52 @@
 package com.douban.controller.admin;
 
+import com.douban.dto.BulkMessageRequest;
 import com.douban.dto.MessageRequest;
 import com.douban.entity.SiteMessage;
+import com.douban.service.BulkMessageService;
 import com.douban.service.NotificationService;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/admin/messages")
 public class AdminMessageController {
 
     private final NotificationService notificationService;
+    private final BulkMessageService bulkMessageService;
 
-    public AdminMessageController(NotificationService notificationService) {
+    public AdminMessageController(NotificationService notificationService, BulkMessageService bulkMessageService) {
         this.notificationService = notificationService;
+        this.bulkMessageService = bulkMessageService;
     }
 
     @PostMapping
     public SiteMessage send(@RequestAttribute("userId") Long adminId, @RequestBody MessageRequest request) {
         return notificationService.sendToUser(request.getReceiverId(), adminId, request.getTitle(), request.getContent());
     }
+
+    /**
+     * 提交批量发送任务，立即返回任务状态（含 jobId），之后通过 GET /bulk/{jobId} 查看进度。
+     */
+    @PostMapping("/bulk")
+    public Map<String, Object> sendBulk(@RequestAttribute("userId") Long adminId, @RequestBody BulkMessageRequest request) {
+        return bulkMessageService.submit(adminId, request);
+    }
+
+    @GetMapping("/bulk")
+    public List<Map<String, Object>> listBulk() {
+        return bulkMessageService.list();
+    }
+
+    @GetMapping("/bulk/{jobId}")
+    public Map<String, Object> bulkStatus(@PathVariable long jobId) {
+        return bulkMessageService.status(jobId);
+    }
+
+    @DeleteMapping("/bulk/{jobId}")
+    public Map<String, Object> cancelBulk(@PathVariable long jobId) {
+        return bulkMessageService.cancel(jobId);
+    }
 }
@@ -0,0 +1,131 @@
+package com.douban.controller.admin;
+
+import com.douban.audit.SqlAuditAggregator;
+import com.douban.audit.SqlAuditAppender;
+import com.douban.audit.SqlVerdictCache;
+import com.douban.cache.TieredCacheManager;
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.counter.CounterPipeline;
+import com.douban.counter.UnreadCounter;
+import com.douban.interceptor.SqlMetricsInterceptor;
+import com.douban.search.FacetIndex;
+import com.douban.search.MovieSearchIndex;
+import com.douban.search.MovieSuggester;
+import com.douban.service.PasswordService;
+import com.douban.service.RankingService;
+import com.douban.util.JwtUtil;
+import com.douban.websocket.MessageRelay;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/metrics")
+public class AdminMetricsController {
+
+    private final CounterPipeline counterPipeline;
+    private final TieredCacheManager cacheManager;
+    private final MovieSearchIndex searchIndex;
+    private final MovieSuggester movieSuggester;
+    private final FacetIndex facetIndex;
+    private final RankingService rankingService;
+    private final SqlAuditAppender sqlAuditAppender;
+    private final SqlVerdictCache sqlVerdictCache;
+    private final SqlAuditAggregator sqlAuditAggregator;
+    private final SqlMetricsInterceptor sqlMetricsInterceptor;
+    private final JwtUtil jwtUtil;
+    private final PasswordService passwordService;
+    private final RedisCircuitBreaker redisBreaker;
+    private final MessageRelay messageRelay;
+    private final UnreadCounter unreadCounter;
+
+    public AdminMetricsController(CounterPipeline counterPipeline, TieredCacheManager cacheManager,
+                                  MovieSearchIndex searchIndex, MovieSuggester movieSuggester,
+                                  FacetIndex facetIndex, RankingService rankingService,
+                                  SqlAuditAppender sqlAuditAppender, SqlVerdictCache sqlVerdictCache,
+                                  SqlAuditAggregator sqlAuditAggregator, SqlMetricsInterceptor sqlMetricsInterceptor,
+                                  JwtUtil jwtUtil, PasswordService passwordService, RedisCircuitBreaker redisBreaker,
+                                  MessageRelay messageRelay, UnreadCounter unreadCounter) {
+        this.counterPipeline = counterPipeline;
+        this.cacheManager = cacheManager;
+        this.searchIndex = searchIndex;
+        this.movieSuggester = movieSuggester;
+        this.facetIndex = facetIndex;
+        this.rankingService = rankingService;
+        this.sqlAuditAppender = sqlAuditAppender;
+        this.sqlVerdictCache = sqlVerdictCache;
+        this.sqlAuditAggregator = sqlAuditAggregator;
+        this.sqlMetricsInterceptor = sqlMetricsInterceptor;
+        this.jwtUtil = jwtUtil;
+        this.passwordService = passwordService;
+        this.redisBreaker = redisBreaker;
+        this.messageRelay = messageRelay;
+        this.unreadCounter = unreadCounter;
+    }
+
+    @GetMapping("/counters")
+    public Map<String, Object> counters() {
+        Map<String, Object> stats = new LinkedHashMap<>(counterPipeline.stats());
+        stats.put("views", rankingService.stats());
+        return stats;
+    }
+
+    @GetMapping("/caches")
+    public Map<String, Object> caches() {
+        Map<String, Object> stats = new LinkedHashMap<>(cacheManager.stats());
+        stats.put("jwt", jwtUtil.stats());
+        return stats;
+    }
+
+    @GetMapping("/search")
+    public Map<String, Object> search() {
+        Map<String, Object> stats = new LinkedHashMap<>(searchIndex.stats());
+        stats.put("suggest", movieSuggester.stats());
+        stats.put("facets", facetIndex.stats());
+        return stats;
+    }
+
+    @GetMapping("/audit")
+    public Map<String, Object> audit() {
+        Map<String, Object> stats = new LinkedHashMap<>(sqlAuditAppender.stats());
+        stats.put("verdictCache", sqlVerdictCache.stats());
+        stats.put("aggregate", sqlAuditAggregator.stats());
+        return stats;
+    }
+
+    /**
+     * 各 Mapper 语句的耗时分位数、行数和借连接等待时间，按总耗时降序。
+     */
+    @GetMapping("/sql")
+    public List<Map<String, Object>> sql() {
+        return sqlMetricsInterceptor.stats();
+    }
+
+    @DeleteMapping("/sql")
+    public Map<String, Object> resetSql() {
+        sqlMetricsInterceptor.reset();
+        return Map.of("message", "已重置");
+    }
+
+    @GetMapping("/auth")
+    public Map<String, Object> auth() {
+        return passwordService.stats();
+    }
+
+    @GetMapping("/redis")
+    public Map<String, Object> redis() {
+        return redisBreaker.stats();
+    }
+
+    @GetMapping("/websocket")
+    public Map<String, Object> websocket() {
+        Map<String, Object> stats = new LinkedHashMap<>(messageRelay.stats());
+        stats.put("unreadCounter", unreadCounter.stats());
+        return stats;
+    }
+}
@@ -1,8 +1,12 @@
 package com.douban.controller.admin;
 
+import com.douban.cache.CachedCounts;
+import com.douban.dto.CursorPage;
+import com.douban.dto.PageCursor;
 import com.douban.dto.PageResult;
 import com.douban.entity.Review;
 import com.douban.mapper.ReviewMapper;
+import com.douban.service.InteractionService;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -13,25 +17,37 @@ import java.util.Map;
 public class AdminReviewController {
 
     private final ReviewMapper reviewMapper;
+    private final CachedCounts cachedCounts;
+    private final InteractionService interactionService;
 
-    public AdminReviewController(ReviewMapper reviewMapper) {
+    public AdminReviewController(ReviewMapper reviewMapper, CachedCounts cachedCounts, InteractionService interactionService) {
         this.reviewMapper = reviewMapper;
+        this.cachedCounts = cachedCounts;
+        this.interactionService = interactionService;
     }
 
     @GetMapping
-    public PageResult<Review> list(@RequestParam(defaultValue = "1") int page,
-                                   @RequestParam(defaultValue = "20") int size) {
+    public Object list(@RequestParam(defaultValue = "1") int page,
+                       @RequestParam(defaultValue = "20") int size,
+                       @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.TIME);
+            int safeSize = CursorPage.safeSize(size);
+            List<Review> fetched = reviewMapper.findAllWithDetails(after, safeSize + 1, 0);
+            Long total = after == null ? cachedCounts.get(CachedCounts.reviews(), reviewMapper::countAll) : null;
+            return CursorPage.of(fetched, safeSize, r -> PageCursor.byTime(r.getCreatedAt(), r.getId()), total);
+        }
         int safePage = Math.max(1, page);
         int safeSize = Math.min(50, Math.max(1, size));
         int offset = (safePage - 1) * safeSize;
-        List<Review> items = reviewMapper.findAllWithDetails(safeSize, offset);
-        int total = reviewMapper.countAll();
+        List<Review> items = reviewMapper.findAllWithDetails(null, safeSize, offset);
+        long total = cachedCounts.get(CachedCounts.reviews(), reviewMapper::countAll);
         return new PageResult<>(items, safePage, safeSize, total);
     }
 
     @DeleteMapping("/{id}")
     public Map<String, String> delete(@PathVariable Long id) {
-        reviewMapper.adminDelete(id);
+        interactionService.adminDeleteReview(id);
         return Map.of("message", "评论已删除");
     }
 }
@@ -1,6 +1,11 @@
 package com.douban.controller.admin;
 
+import com.douban.cache.CachedCounts;
+import com.douban.cache.UserBasicCache;
+import com.douban.cache.UserStatusCache;
 import com.douban.dto.AdminUpdateUserRequest;
+import com.douban.dto.CursorPage;
+import com.douban.dto.PageCursor;
 import com.douban.dto.PageResult;
 import com.douban.dto.UpdateRoleRequest;
 import com.douban.dto.UpdateStatusRequest;
@@ -19,18 +24,34 @@ import java.util.stream.Collectors;
 public class AdminUserController {
 
     private final UserMapper userMapper;
+    private final CachedCounts cachedCounts;
+    private final UserBasicCache userBasicCache;
+    private final UserStatusCache userStatusCache;
 
-    public AdminUserController(UserMapper userMapper) {
+    public AdminUserController(UserMapper userMapper, CachedCounts cachedCounts, UserBasicCache userBasicCache,
+                               UserStatusCache userStatusCache) {
         this.userMapper = userMapper;
+        this.cachedCounts = cachedCounts;
+        this.userBasicCache = userBasicCache;
+        this.userStatusCache = userStatusCache;
     }
 
     @GetMapping
-    public PageResult<UserDTO> list(@RequestParam(defaultValue = "1") int page,
-                                    @RequestParam(defaultValue = "20") int size) {
+    public Object list(@RequestParam(defaultValue = "1") int page,
+                       @RequestParam(defaultValue = "20") int size,
+                       @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.ID);
+            int safeSize = CursorPage.safeSize(size);
+            List<UserDTO> fetched = userMapper.findAll(after, safeSize + 1, 0).stream()
+                    .map(UserDTO::fromEntity).collect(Collectors.toList());
+            Long total = after == null ? cachedCounts.get(CachedCounts.users(), userMapper::countAll) : null;
+            return CursorPage.of(fetched, safeSize, u -> PageCursor.byId(u.getId()), total);
+        }
         int offset = Math.max(0, (page - 1) * size);
-        List<User> users = userMapper.findAll(size, offset);
+        List<User> users = userMapper.findAll(null, size, offset);
         List<UserDTO> dtos = users.stream().map(UserDTO::fromEntity).collect(Collectors.toList());
-        int total = userMapper.countAll();
+        long total = cachedCounts.get(CachedCounts.users(), userMapper::countAll);
         return new PageResult<>(dtos, page, size, total);
     }
 
@@ -62,6 +83,7 @@ public class AdminUserController {
                 return ResponseEntity.badRequest().body(Map.of("error", "用户不存在"));
             }
             userMapper.updateStatus(id, request.getStatus());
+            userStatusCache.evict(id);
             return ResponseEntity.ok(Map.of("message", "状态已更新"));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -98,9 +120,11 @@ public class AdminUserController {
             }
 
             userMapper.update(user);
+            userBasicCache.evict(id);
 
             if (request.getStatus() != null) {
                 userMapper.updateStatus(id, request.getStatus());
+                userStatusCache.evict(id);
             }
 
             if (request.getRole() != null) {
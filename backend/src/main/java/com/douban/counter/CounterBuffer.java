@@ -0,0 +1,77 @@
+package com.douban.counter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内计数缓冲：按 key 聚合增量，写入只做一次 LongAdder 累加，不加锁、不访问网络。
+ *
+ * 采用双代结构：drain() 时把当前代退役、返回上一次退役的那一代。
+ * 写线程可能在换代瞬间仍持有旧代的引用，让旧代多“冷却”一个周期后再读取，
+ * 可以保证这些迟到的累加也被计入，而无需在写路径上加锁。
+ */
+public class CounterBuffer {
+
+    private volatile ConcurrentHashMap<Long, LongAdder> active = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<Long, LongAdder> retired = new ConcurrentHashMap<>();
+
+    public void add(long key, long delta) {
+        if (delta == 0) return;
+        active.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+    }
+
+    public void addAll(Map<Long, Long> deltas) {
+        deltas.forEach(this::add);
+    }
+
+    /**
+     * 尚未落地的增量（两代之和），用于在响应里补齐最新值。
+     */
+    public long pending(long key) {
+        long sum = 0;
+        LongAdder a = active.get(key);
+        if (a != null) sum += a.sum();
+        LongAdder r = retired.get(key);
+        if (r != null) sum += r.sum();
+        return sum;
+    }
+
+    public int pendingKeys() {
+        return active.size() + retired.size();
+    }
+
+    /**
+     * 换代并取出已冷却一代的非零增量。
+     */
+    public synchronized Map<Long, Long> drain() {
+        ConcurrentHashMap<Long, LongAdder> cooled = retired;
+        retired = active;
+        active = new ConcurrentHashMap<>();
+        return collect(cooled);
+    }
+
+    /**
+     * 取出全部增量（含未冷却的一代），仅在停机、写入已停止时使用。
+     */
+    public synchronized Map<Long, Long> drainAll() {
+        Map<Long, Long> result = collect(retired);
+        collect(active).forEach((k, v) -> result.merge(k, v, Long::sum));
+        retired = new ConcurrentHashMap<>();
+        active = new ConcurrentHashMap<>();
+        result.values().removeIf(v -> v == 0);
+        return result;
+    }
+
+    private static Map<Long, Long> collect(Map<Long, LongAdder> generation) {
+        Map<Long, Long> result = new HashMap<>();
+        for (Map.Entry<Long, LongAdder> e : generation.entrySet()) {
+            long v = e.getValue().sum();
+            if (v != 0) {
+                result.put(e.getKey(), v);
+            }
+        }
+        return result;
+    }
+}
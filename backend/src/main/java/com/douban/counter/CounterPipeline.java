@@ -0,0 +1,180 @@
+package com.douban.counter;
+
+import com.douban.mapper.MovieStatsMapper;
+import com.douban.mapper.ReviewMapper;
+import com.douban.service.ReviewLeaderboard;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计数写后合并（write-behind）：评论点赞数、收藏状态变化先累加在内存，
+ * 定时批量刷到 MySQL（批量 UPDATE / UPSERT），请求线程不等待任何 IO。
+ * 点赞增量落库后同步写入评论排行榜。
+ */
+@Component
+public class CounterPipeline {
+    private static final Logger log = LoggerFactory.getLogger(CounterPipeline.class);
+
+    private final ReviewMapper reviewMapper;
+    private final MovieStatsMapper movieStatsMapper;
+    private final ReviewLeaderboard reviewLeaderboard;
+
+    private final CounterBuffer reviewLikes = new CounterBuffer();
+    private final CounterBuffer wish = new CounterBuffer();
+    private final CounterBuffer watching = new CounterBuffer();
+    private final CounterBuffer watched = new CounterBuffer();
+
+    private final AtomicLong flushedLikes = new AtomicLong();
+    private final AtomicLong flushedCollections = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastSuccessfulFlushAt = System.currentTimeMillis();
+    private volatile long lastFlushDurationMs;
+
+    @Value("${douban.counter.batch-size:500}")
+    private int batchSize;
+
+    public CounterPipeline(ReviewMapper reviewMapper, MovieStatsMapper movieStatsMapper, ReviewLeaderboard reviewLeaderboard) {
+        this.reviewMapper = reviewMapper;
+        this.movieStatsMapper = movieStatsMapper;
+        this.reviewLeaderboard = reviewLeaderboard;
+    }
+
+    public void recordReviewLike(Long reviewId, int delta) {
+        if (reviewId != null) reviewLikes.add(reviewId, delta);
+    }
+
+    /**
+     * 记录一次收藏状态变化，from / to 为 null 表示新增 / 删除收藏。
+     */
+    public void recordCollectionTransition(Long movieId, String from, String to) {
+        if (movieId == null || Objects.equals(from, to)) return;
+        CounterBuffer fromBuffer = bufferFor(from);
+        if (fromBuffer != null) fromBuffer.add(movieId, -1);
+        CounterBuffer toBuffer = bufferFor(to);
+        if (toBuffer != null) toBuffer.add(movieId, 1);
+    }
+
+    public long pendingReviewLikes(Long reviewId) {
+        return reviewId == null ? 0 : reviewLikes.pending(reviewId);
+    }
+
+    @Scheduled(fixedDelayString = "${douban.counter.flush-interval-ms:1000}")
+    public void flush() {
+        flush(false);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush(true);
+    }
+
+    private synchronized void flush(boolean all) {
+        long start = System.currentTimeMillis();
+        boolean ok = flushLikes(all ? reviewLikes.drainAll() : reviewLikes.drain());
+        ok &= flushCollections(
+                all ? wish.drainAll() : wish.drain(),
+                all ? watching.drainAll() : watching.drain(),
+                all ? watched.drainAll() : watched.drain());
+        long end = System.currentTimeMillis();
+        lastFlushDurationMs = end - start;
+        if (ok) {
+            lastSuccessfulFlushAt = end;
+        } else {
+            failedFlushes.incrementAndGet();
+        }
+    }
+
+    private boolean flushLikes(Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) return true;
+        boolean ok = true;
+        for (Map<Long, Long> chunk : chunks(deltas)) {
+            try {
+                reviewMapper.applyLikeDeltas(chunk);
+                flushedLikes.addAndGet(chunk.size());
+                reviewLeaderboard.applyLikeDeltas(chunk);
+            } catch (Exception e) {
+                log.warn("Failed to flush {} review like deltas, will retry: {}", chunk.size(), e.getMessage());
+                reviewLikes.addAll(chunk);
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private boolean flushCollections(Map<Long, Long> wishDeltas, Map<Long, Long> watchingDeltas, Map<Long, Long> watchedDeltas) {
+        Set<Long> movieIds = new TreeSet<>();
+        movieIds.addAll(wishDeltas.keySet());
+        movieIds.addAll(watchingDeltas.keySet());
+        movieIds.addAll(watchedDeltas.keySet());
+        if (movieIds.isEmpty()) return true;
+
+        List<MovieStatsDelta> rows = new ArrayList<>(movieIds.size());
+        for (Long movieId : movieIds) {
+            rows.add(new MovieStatsDelta(movieId,
+                    wishDeltas.getOrDefault(movieId, 0L),
+                    watchingDeltas.getOrDefault(movieId, 0L),
+                    watchedDeltas.getOrDefault(movieId, 0L)));
+        }
+
+        boolean ok = true;
+        for (int i = 0; i < rows.size(); i += batchSize) {
+            List<MovieStatsDelta> chunk = rows.subList(i, Math.min(rows.size(), i + batchSize));
+            try {
+                movieStatsMapper.upsertDeltas(chunk);
+                flushedCollections.addAndGet(chunk.size());
+            } catch (Exception e) {
+                log.warn("Failed to flush {} movie stats deltas, will retry: {}", chunk.size(), e.getMessage());
+                for (MovieStatsDelta d : chunk) {
+                    wish.add(d.movieId(), d.wish());
+                    watching.add(d.movieId(), d.watching());
+                    watched.add(d.movieId(), d.watched());
+                }
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private List<Map<Long, Long>> chunks(Map<Long, Long> deltas) {
+        List<Map<Long, Long>> result = new ArrayList<>();
+        Map<Long, Long> current = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> e : deltas.entrySet()) {
+            current.put(e.getKey(), e.getValue());
+            if (current.size() >= batchSize) {
+                result.add(current);
+                current = new LinkedHashMap<>();
+            }
+        }
+        if (!current.isEmpty()) result.add(current);
+        return result;
+    }
+
+    private CounterBuffer bufferFor(String status) {
+        if (status == null) return null;
+        return switch (status) {
+            case "wish" -> wish;
+            case "watching" -> watching;
+            case "watched" -> watched;
+            default -> null;
+        };
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("flushLagMs", System.currentTimeMillis() - lastSuccessfulFlushAt);
+        stats.put("lastFlushDurationMs", lastFlushDurationMs);
+        stats.put("pendingLikeKeys", reviewLikes.pendingKeys());
+        stats.put("pendingCollectionKeys", wish.pendingKeys() + watching.pendingKeys() + watched.pendingKeys());
+        stats.put("flushedLikeKeys", flushedLikes.get());
+        stats.put("flushedCollectionKeys", flushedCollections.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+}
@@ -0,0 +1,110 @@
+package com.douban.counter;
+
+import com.douban.util.CountMinSketch;
+import com.douban.util.SpaceSaving;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 固定内存的高频计数：Count-Min Sketch 估计频率，Space-Saving 维护候选 top-k。
+ *
+ * 导出时每个候选的计数取两者中较小的估计（两者都只会偏大），长尾元素直接丢弃。
+ * 与 {@link CounterBuffer} 一样采用双代结构，换代后旧代冷却一个周期再读取，写路径不加全局锁。
+ * Space-Saving 需要加锁，每代按线程分成若干条带，各线程只锁自己那条；导出时把各条带同一元素的计数相加
+ * （仍是上界），再与 sketch 取小、按次数保留前 capacity 个。
+ */
+public class HeavyHitters {
+
+    private record Generation(CountMinSketch sketch, SpaceSaving[] stripes) {
+    }
+
+    private static final int MAX_STRIPES = 16;
+
+    private final int depth;
+    private final int width;
+    private final int capacity;
+    private final int stripeMask;
+
+    private volatile Generation active;
+    private volatile Generation retired;
+
+    public HeavyHitters(int depth, int width, int capacity) {
+        this.depth = depth;
+        this.width = width;
+        this.capacity = capacity;
+        int stripes = Integer.highestOneBit(Math.min(MAX_STRIPES, Math.max(1, Runtime.getRuntime().availableProcessors())));
+        this.stripeMask = stripes - 1;
+        this.active = newGeneration();
+        this.retired = newGeneration();
+    }
+
+    public void add(long item, long count) {
+        Generation g = active;
+        g.sketch.add(item, count);
+        g.stripes[(int) Thread.currentThread().threadId() & stripeMask].offer(item, count);
+    }
+
+    /**
+     * 取出上一代的高频元素（元素 → 估计次数，按次数降序）并换代。
+     */
+    public synchronized Map<Long, Long> drain() {
+        Map<Long, Long> result = estimates(retired);
+        retired = active;
+        active = newGeneration();
+        return result;
+    }
+
+    /**
+     * 取出两代全部的高频元素（关闭时使用）。
+     */
+    public synchronized Map<Long, Long> drainAll() {
+        Map<Long, Long> result = estimates(retired);
+        estimates(active).forEach((item, count) -> result.merge(item, count, Long::sum));
+        retired = newGeneration();
+        active = newGeneration();
+        return result;
+    }
+
+    public int trackedItems() {
+        int size = 0;
+        for (SpaceSaving stripe : active.stripes) size += stripe.size();
+        for (SpaceSaving stripe : retired.stripes) size += stripe.size();
+        return size;
+    }
+
+    public long memoryBytes() {
+        // 两代：每代 sketch 为 depth * width 个 long，top-k 每个计数器按约 100 字节估算
+        return 2L * ((long) depth * active.sketch.width() * Long.BYTES + (long) active.stripes.length * capacity * 100L);
+    }
+
+    private Map<Long, Long> estimates(Generation g) {
+        Map<Long, Long> merged = new HashMap<>();
+        for (SpaceSaving stripe : g.stripes) {
+            for (SpaceSaving.Counter c : stripe.counters()) {
+                merged.merge(c.item(), c.count(), Long::sum);
+            }
+        }
+        List<Map.Entry<Long, Long>> candidates = new ArrayList<>(merged.size());
+        merged.forEach((item, count) -> {
+            long estimate = Math.min(count, g.sketch.estimate(item));
+            if (estimate > 0) candidates.add(Map.entry(item, estimate));
+        });
+        candidates.sort(Map.Entry.<Long, Long>comparingByValue().reversed());
+        Map<Long, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> e : candidates) {
+            if (result.size() >= capacity) break;
+            result.put(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    private Generation newGeneration() {
+        SpaceSaving[] stripes = new SpaceSaving[stripeMask + 1];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new SpaceSaving(capacity);
+        return new Generation(new CountMinSketch(depth, width), stripes);
+    }
+}
@@ -0,0 +1,7 @@
+package com.douban.counter;
+
+/**
+ * 单部电影在一个刷新周期内的收藏状态增量。
+ */
+public record MovieStatsDelta(Long movieId, long wish, long watching, long watched) {
+}
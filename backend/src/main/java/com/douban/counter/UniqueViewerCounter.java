@@ -0,0 +1,247 @@
+package com.douban.counter;
+
+import com.douban.cache.LocalCache;
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.search.MovieCatalog;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每部电影每天的独立访客数（Redis HyperLogLog）。
+ *
+ * 访客标识在本机按电影去重缓冲，定时用 pipeline 批量 PFADD 到当天的 HLL，
+ * 再 PFCOUNT 被写过的电影，把估计值 ZADD 到当天的独立访客排行集合。
+ * 单个 HLL 最多约 12 KB，与访客规模无关，误差约 0.81%；各节点写同一个 key，天然合并。
+ * 与 {@link CounterBuffer} 一样采用双代缓冲，换代后旧代冷却一个周期再写出。
+ * Redis 熔断期间访客标识留在缓冲里（受 MAX_PENDING 限制），查询直接返回 null。
+ *
+ * 详情页展示的近 7 天独立访客数也在定时任务里算：本周期写过的电影和被查询过但本机没有值的电影
+ * 一起 pipeline 多 key PFCOUNT，结果放进本机缓存（WEEKLY_TTL 后过期重算），请求线程只读本机缓存。
+ */
+@Component
+public class UniqueViewerCounter {
+    private static final Logger log = LoggerFactory.getLogger(UniqueViewerCounter.class);
+
+    private static final String KEY_HLL_PREFIX = "douban:movie:uv:";
+    private static final String KEY_RANK_PREFIX = "douban:movie:uv:rank:";
+    public static final Duration TTL = Duration.ofDays(8);
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    // 单个周期最多缓冲的访客标识数，超出的直接丢弃，防止突发流量撑爆内存
+    private static final int MAX_PENDING = 200_000;
+    public static final int WEEKLY_DAYS = 7;
+    // 近 7 天计数在本机缓存的时间，过期后下一次查询会触发重算（其他节点写入的访客最多延迟这么久）
+    private static final Duration WEEKLY_TTL = Duration.ofSeconds(60);
+    // 等待计算近 7 天计数的电影数上限
+    private static final int MAX_REQUESTED = 10_000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final MovieCatalog movieCatalog;
+    private final RedisCircuitBreaker redisBreaker;
+
+    private volatile Map<Long, Set<String>> active = new ConcurrentHashMap<>();
+    private volatile Map<Long, Set<String>> retired = new ConcurrentHashMap<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final LocalCache<Long, Long> weeklyCounts = new LocalCache<>(20_000, WEEKLY_TTL);
+    private final Set<Long> requested = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushedMovies = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    public UniqueViewerCounter(StringRedisTemplate redisTemplate, MovieCatalog movieCatalog,
+                               RedisCircuitBreaker redisBreaker) {
+        this.redisTemplate = redisTemplate;
+        this.movieCatalog = movieCatalog;
+        this.redisBreaker = redisBreaker;
+    }
+
+    /**
+     * 登录用户以用户ID为标识，匿名访客以客户端指纹（IP + User-Agent）的哈希为标识，不保存原始 IP。
+     */
+    public static String viewerKey(Long userId, String clientIp, String userAgent) {
+        if (userId != null) return "u" + userId;
+        String fingerprint = (clientIp == null ? "" : clientIp) + "|" + (userAgent == null ? "" : userAgent);
+        return "a" + Long.toHexString(hash64(fingerprint.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void record(Long movieId, String viewerKey) {
+        if (movieId == null || viewerKey == null) return;
+        if (pending.get() >= MAX_PENDING) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (active.computeIfAbsent(movieId, k -> ConcurrentHashMap.newKeySet()).add(viewerKey)) {
+            pending.incrementAndGet();
+        }
+        recorded.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${douban.counter.flush-interval-ms:1000}")
+    public void flush() {
+        Map<Long, Set<String>> drained;
+        synchronized (this) {
+            drained = retired;
+            retired = active;
+            active = new ConcurrentHashMap<>();
+        }
+        flush(drained);
+        refreshWeeklyCounts(drained.keySet());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        Map<Long, Set<String>> drained;
+        synchronized (this) {
+            drained = retired;
+            active.forEach((movieId, viewers) ->
+                    drained.computeIfAbsent(movieId, k -> ConcurrentHashMap.newKeySet()).addAll(viewers));
+            retired = new ConcurrentHashMap<>();
+            active = new ConcurrentHashMap<>();
+        }
+        flush(drained);
+    }
+
+    private void flush(Map<Long, Set<String>> drained) {
+        if (drained.isEmpty()) return;
+        long size = 0;
+        for (Set<String> viewers : drained.values()) size += viewers.size();
+        pending.addAndGet(-size);
+        if (movieCatalog.isReady()) {
+            drained.keySet().removeIf(id -> movieCatalog.get(id) == null);
+            if (drained.isEmpty()) return;
+        }
+        if (!redisBreaker.allowRequest()) {
+            drained.forEach((movieId, viewers) -> viewers.forEach(v -> record(movieId, v)));
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        String rankKey = rankKey(today);
+        List<Long> movieIds = new ArrayList<>(drained.keySet());
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long movieId : movieIds) {
+                    String key = hllKey(movieId, today);
+                    conn.pfAdd(key, drained.get(movieId).toArray(new String[0]));
+                    conn.expire(key, TTL.toSeconds());
+                }
+                return null;
+            });
+            List<Object> counts = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long movieId : movieIds) {
+                    conn.pfCount(hllKey(movieId, today));
+                }
+                return null;
+            });
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (int i = 0; i < movieIds.size(); i++) {
+                    Object count = counts.get(i);
+                    if (count instanceof Number n) {
+                        conn.zAdd(rankKey, n.doubleValue(), movieIds.get(i).toString());
+                    }
+                }
+                conn.expire(rankKey, TTL.toSeconds());
+                return null;
+            });
+            redisBreaker.recordSuccess();
+            flushedMovies.addAndGet(movieIds.size());
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            // HLL 写入是幂等的，失败时放回缓冲等下个周期重试
+            log.debug("Redis unavailable, keep unique viewers of {} movies for next flush: {}", movieIds.size(), e.getMessage());
+            failedFlushes.incrementAndGet();
+            drained.forEach((movieId, viewers) -> viewers.forEach(v -> record(movieId, v)));
+        }
+    }
+
+    /**
+     * 近 7 天（含今天）的独立访客数，多天按 PFCOUNT 多 key 并集计算，同一访客只算一次。
+     * 只读本机缓存：没有值时登记下来由下一次定时任务计算，本次返回 null。
+     */
+    public Long weeklyCount(Long movieId) {
+        Long count = weeklyCounts.get(movieId);
+        if (count == null && requested.size() < MAX_REQUESTED) {
+            requested.add(movieId);
+        }
+        return count;
+    }
+
+    private void refreshWeeklyCounts(Set<Long> flushed) {
+        Set<Long> ids = new LinkedHashSet<>(flushed);
+        ids.addAll(requested);
+        if (ids.isEmpty() || !redisBreaker.allowRequest()) return;
+        requested.removeAll(ids);
+        LocalDate today = LocalDate.now();
+        List<Long> movieIds = new ArrayList<>(ids);
+        try {
+            List<Object> counts = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long movieId : movieIds) {
+                    String[] keys = new String[WEEKLY_DAYS];
+                    for (int i = 0; i < WEEKLY_DAYS; i++) keys[i] = hllKey(movieId, today.minusDays(i));
+                    conn.pfCount(keys);
+                }
+                return null;
+            });
+            redisBreaker.recordSuccess();
+            for (int i = 0; i < movieIds.size(); i++) {
+                if (counts.get(i) instanceof Number n) {
+                    weeklyCounts.put(movieIds.get(i), n.longValue());
+                }
+            }
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip weekly unique viewers: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recordedViews", recorded.get());
+        stats.put("pendingViewers", pending.get());
+        stats.put("droppedViewers", dropped.get());
+        stats.put("flushedMovieKeys", flushedMovies.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("cachedWeeklyCounts", weeklyCounts.size());
+        return stats;
+    }
+
+    /**
+     * 某天各电影独立访客数的有序集合（电影ID → 当天估计值）。
+     */
+    public static String rankKey(LocalDate day) {
+        return KEY_RANK_PREFIX + DAY_FORMAT.format(day);
+    }
+
+    private static String hllKey(Long movieId, LocalDate day) {
+        return KEY_HLL_PREFIX + DAY_FORMAT.format(day) + ":" + movieId;
+    }
+
+    // FNV-1a 64 位，只用于把指纹打散成定长标识
+    private static long hash64(byte[] data) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : data) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
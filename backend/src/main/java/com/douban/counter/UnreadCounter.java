@@ -0,0 +1,326 @@
+package com.douban.counter;
+
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.mapper.BroadcastMessageMapper;
+import com.douban.mapper.SiteMessageMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 站内信未读数（Redis），读取是一次脚本调用，不再对 site_messages 做 COUNT(*)。
+ *
+ * 每个用户一个哈希 douban:notify:unread:{userId}：p 为个人消息未读数，f 为广播已读下限
+ * （已读水位与注册前最后一条广播ID的较大者）；全站广播ID单独记在一个有序集合里，
+ * 未读总数 = p + 有序集合中 ID 大于 f 的个数，发广播只需 ZADD 一次。
+ *
+ * 哈希不存在时从数据库加载（只在不存在时写入）并设置 TTL；加载与并发写入之间的偏差
+ * 由定时对账（{@link #reconcile}，比较并覆盖）和 TTL 过期后的重新加载纠正。Redis 不可用或熔断时返回 null，由调用方查库。
+ */
+@Component
+public class UnreadCounter {
+    private static final Logger log = LoggerFactory.getLogger(UnreadCounter.class);
+
+    private static final String KEY_USER_PREFIX = "douban:notify:unread:";
+    private static final String KEY_BROADCASTS = "douban:notify:broadcast-ids";
+    private static final Duration TTL = Duration.ofDays(1);
+    // 有序集合只保留最近的广播ID；哨兵成员 "0" 保证集合重建后一直存在
+    private static final int MAX_BROADCAST_IDS = 10_000;
+    private static final String SENTINEL = "0";
+
+    // KEYS[1] 用户哈希，KEYS[2] 广播ID集合；ARGV[1] p 的增量，ARGV[2] TTL 秒。任一 key 不存在时返回 nil
+    private static final String APPLY_SCRIPT = """
+            if redis.call('EXISTS', KEYS[1]) == 0 or redis.call('EXISTS', KEYS[2]) == 0 then return nil end
+            local p = tonumber(redis.call('HGET', KEYS[1], 'p') or '0')
+            local delta = tonumber(ARGV[1])
+            if delta ~= 0 then
+              p = math.max(0, p + delta)
+              redis.call('HSET', KEYS[1], 'p', p)
+              redis.call('EXPIRE', KEYS[1], ARGV[2])
+            end
+            local f = redis.call('HGET', KEYS[1], 'f') or '0'
+            return p + redis.call('ZCOUNT', KEYS[2], '(' .. f, '+inf')
+            """;
+
+    // ARGV[1] p，ARGV[2] f，ARGV[3] TTL 秒；只在 key 不存在时写入
+    private static final String STORE_SCRIPT = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              redis.call('HSET', KEYS[1], 'p', ARGV[1], 'f', ARGV[2])
+              redis.call('EXPIRE', KEYS[1], ARGV[3])
+            end
+            return 1
+            """;
+
+    // 对账用的比较并覆盖：ARGV[1] / ARGV[2] 为加载数据库前读到的 p / f，ARGV[3] / ARGV[4] 为新值，ARGV[5] TTL 秒。
+    // 期间 p 或 f 被并发修改（或 key 已不存在）时不写，返回 {-1, -1}；否则返回 {旧总数, 新总数}
+    private static final String RECONCILE_SCRIPT = """
+            if redis.call('HGET', KEYS[1], 'p') ~= ARGV[1] or redis.call('HGET', KEYS[1], 'f') ~= ARGV[2] then
+              return {-1, -1}
+            end
+            local before = tonumber(ARGV[1]) + redis.call('ZCOUNT', KEYS[2], '(' .. ARGV[2], '+inf')
+            redis.call('HSET', KEYS[1], 'p', ARGV[3], 'f', ARGV[4])
+            redis.call('EXPIRE', KEYS[1], ARGV[5])
+            return {before, tonumber(ARGV[3]) + redis.call('ZCOUNT', KEYS[2], '(' .. ARGV[4], '+inf')}
+            """;
+
+    private static final DefaultRedisScript<Long> APPLY = new DefaultRedisScript<>(APPLY_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> STORE = new DefaultRedisScript<>(STORE_SCRIPT, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RECONCILE = new DefaultRedisScript<>(RECONCILE_SCRIPT, List.class);
+
+    /**
+     * 数据库中的真实未读数：personal 个人消息，broadcastFloor 广播已读下限，broadcasts 未读广播数。
+     */
+    public record Snapshot(long personal, long broadcastFloor, long broadcasts) {
+        public long total() {
+            return personal + broadcasts;
+        }
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker redisBreaker;
+    private final SiteMessageMapper siteMessageMapper;
+    private final BroadcastMessageMapper broadcastMessageMapper;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong corrections = new AtomicLong();
+    private final AtomicLong reconcileConflicts = new AtomicLong();
+
+    public UnreadCounter(StringRedisTemplate redisTemplate, RedisCircuitBreaker redisBreaker,
+                         SiteMessageMapper siteMessageMapper, BroadcastMessageMapper broadcastMessageMapper) {
+        this.redisTemplate = redisTemplate;
+        this.redisBreaker = redisBreaker;
+        this.siteMessageMapper = siteMessageMapper;
+        this.broadcastMessageMapper = broadcastMessageMapper;
+    }
+
+    /**
+     * 当前未读总数；Redis 中没有时从数据库加载并写回。
+     */
+    public long get(Long userId) {
+        Long cached = apply(userId, 0);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        Snapshot snapshot = load(userId);
+        store(userId, snapshot);
+        // 广播ID集合丢失（如 Redis 被清空）时所有读取都会落到这里，顺带重建
+        rebuildBroadcastIndexIfMissing();
+        return snapshot.total();
+    }
+
+    /**
+     * Redis 中缓存的未读总数，不在 Redis 中时返回 null（不加载）。
+     */
+    public Long peek(Long userId) {
+        return apply(userId, 0);
+    }
+
+    /**
+     * 个人消息未读数加 delta（可为负，最小为 0），返回新的未读总数；用户的计数不在 Redis 中时返回 null，
+     * 下次读取时从数据库加载，已经包含这次变化。
+     */
+    public Long add(Long userId, long delta) {
+        return apply(userId, delta);
+    }
+
+    /**
+     * 批量给每个用户的个人未读数加 1（一次 pipeline），返回用户ID → 新的未读总数（不在 Redis 中的用户不返回）。
+     */
+    public Map<Long, Long> incrementAll(List<Long> userIds) {
+        Map<Long, Long> counts = new HashMap<>();
+        if (userIds.isEmpty() || !redisBreaker.allowRequest()) return counts;
+        String ttl = String.valueOf(TTL.toSeconds());
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long userId : userIds) {
+                    conn.eval(APPLY_SCRIPT, ReturnType.INTEGER, 2, userKey(userId), KEY_BROADCASTS, "1", ttl);
+                }
+                return null;
+            });
+            redisBreaker.recordSuccess();
+            for (int i = 0; i < userIds.size(); i++) {
+                if (results.get(i) instanceof Number n) counts.put(userIds.get(i), n.longValue());
+            }
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip unread increments of {} users: {}", userIds.size(), e.getMessage());
+        }
+        return counts;
+    }
+
+    /**
+     * 已读水位变化后丢弃缓存的计数，下次读取时重新加载。
+     */
+    public void evict(Long userId) {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            redisTemplate.delete(userKey(userId));
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, unread count of user {} expires with TTL: {}", userId, e.getMessage());
+        }
+    }
+
+    public void broadcastAdded(Long broadcastId) {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            redisTemplate.opsForZSet().add(KEY_BROADCASTS, broadcastId.toString(), broadcastId);
+            redisTemplate.opsForZSet().removeRange(KEY_BROADCASTS, 0, -(MAX_BROADCAST_IDS + 2));
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, broadcast {} joins unread index on rebuild: {}", broadcastId, e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库计算真实未读数（对账和缓存未命中时使用）。
+     */
+    public Snapshot load(Long userId) {
+        loads.incrementAndGet();
+        long personal = siteMessageMapper.countUnread(userId);
+        Long readId = broadcastMessageMapper.findReadId(userId);
+        long floor = Math.max(readId == null ? 0 : readId, broadcastMessageMapper.findFloorId(userId));
+        long broadcasts = broadcastMessageMapper.countUnread(userId, floor);
+        return new Snapshot(personal, floor, broadcasts);
+    }
+
+    /**
+     * 写入数据库算出的计数，只在 Redis 中没有该用户时写入（已有的值只由 {@link #reconcile} 比较后覆盖）。
+     */
+    private void store(Long userId, Snapshot snapshot) {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            redisTemplate.execute(STORE, List.of(userKey(userId)), String.valueOf(snapshot.personal()),
+                    String.valueOf(snapshot.broadcastFloor()), String.valueOf(TTL.toSeconds()));
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip storing unread count of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 对账：按数据库重新计算，只在加载期间 Redis 中的 p、f 都没被并发修改时覆盖（脚本内比较），
+     * 避免把加载之后才到的 add() 覆盖掉；被并发修改时跳过，等下一轮。
+     * 返回修正后的未读总数；不在 Redis 中、无需修正或跳过时返回 null。
+     */
+    public Long reconcile(Long userId) {
+        if (!redisBreaker.allowRequest()) return null;
+        String key = userKey(userId);
+        List<Object> seen;
+        try {
+            seen = redisTemplate.opsForHash().multiGet(key, List.of("p", "f"));
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip reconciling unread count of user {}: {}", userId, e.getMessage());
+            return null;
+        }
+        if (seen.get(0) == null || seen.get(1) == null) return null;
+        Snapshot actual = load(userId);
+        if (!redisBreaker.allowRequest()) return null;
+        List<?> result;
+        try {
+            result = redisTemplate.execute(RECONCILE, List.of(key, KEY_BROADCASTS),
+                    seen.get(0).toString(), seen.get(1).toString(),
+                    String.valueOf(actual.personal()), String.valueOf(actual.broadcastFloor()),
+                    String.valueOf(TTL.toSeconds()));
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip reconciling unread count of user {}: {}", userId, e.getMessage());
+            return null;
+        }
+        if (result == null || result.size() < 2) return null;
+        long before = ((Number) result.get(0)).longValue();
+        long after = ((Number) result.get(1)).longValue();
+        if (before < 0) {
+            reconcileConflicts.incrementAndGet();
+            return null;
+        }
+        if (before == after) return null;
+        corrections.incrementAndGet();
+        return after;
+    }
+
+    /**
+     * 从数据库重建广播ID集合（先写临时 key 再 RENAME）；启动时集合不存在则重建。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildBroadcastIndexIfMissing() {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(KEY_BROADCASTS))) rebuildBroadcastIndex();
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.warn("Unread broadcast index rebuild skipped: {}", e.getMessage());
+        }
+    }
+
+    public void rebuildBroadcastIndex() {
+        String tmp = KEY_BROADCASTS + ":rebuild";
+        redisTemplate.delete(tmp);
+        redisTemplate.opsForZSet().add(tmp, SENTINEL, 0);
+        List<Long> ids = broadcastMessageMapper.findRecentIds(MAX_BROADCAST_IDS);
+        for (int from = 0; from < ids.size(); from += 1000) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + 1000));
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long id : chunk) conn.zAdd(tmp, id, id.toString());
+                return null;
+            });
+        }
+        redisTemplate.rename(tmp, KEY_BROADCASTS);
+    }
+
+    private Long apply(Long userId, long delta) {
+        if (!redisBreaker.allowRequest()) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        try {
+            Long result = redisTemplate.execute(APPLY, List.of(userKey(userId), KEY_BROADCASTS),
+                    String.valueOf(delta), String.valueOf(TTL.toSeconds()));
+            redisBreaker.recordSuccess();
+            return result;
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            fallbacks.incrementAndGet();
+            log.debug("Redis unavailable, unread count of user {} falls back to database: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("loads", loads.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("corrections", corrections.get());
+        stats.put("reconcileConflicts", reconcileConflicts.get());
+        return stats;
+    }
+
+    private static String userKey(Long userId) {
+        return KEY_USER_PREFIX + userId;
+    }
+}
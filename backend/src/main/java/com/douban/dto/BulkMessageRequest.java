@@ -0,0 +1,18 @@
+package com.douban.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量站内信：receiverIds 指定接收人，或按分群条件（角色、账号状态、收藏过某部电影）选人，二者择一。
+ */
+@Data
+public class BulkMessageRequest {
+    private List<Long> receiverIds;
+    private String role;
+    private String status;
+    private Long movieId;
+    private String title;
+    private String content;
+}
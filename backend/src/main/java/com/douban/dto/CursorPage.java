@@ -0,0 +1,46 @@
+package com.douban.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 键集分页结果。nextCursor 为 null 表示没有下一页；
+ * total 只在第一页返回，来自带 TTL 的计数缓存，是近似值。
+ */
+@Data
+public class CursorPage<T> {
+    private List<T> items;
+    private int size;
+    private String nextCursor;
+    private boolean hasMore;
+    private Long total;
+    /** 搜索前缀展开被截断时为 true，此时结果可能不完整 */
+    private boolean truncated;
+
+    public CursorPage(List<T> items, int size, String nextCursor, Long total) {
+        this.items = items;
+        this.size = size;
+        this.nextCursor = nextCursor;
+        this.hasMore = nextCursor != null;
+        this.total = total;
+    }
+
+    public static final int MAX_SIZE = 50;
+
+    public static int safeSize(int size) {
+        return Math.min(MAX_SIZE, Math.max(1, size));
+    }
+
+    /**
+     * 由多查一行（size + 1）的结果构造分页：多出的那一行只用来判断是否还有下一页。
+     */
+    public static <T> CursorPage<T> of(List<T> fetched, int size, Function<T, PageCursor> keyOf, Long total) {
+        if (fetched.size() <= size) {
+            return new CursorPage<>(fetched, size, null, total);
+        }
+        List<T> items = fetched.subList(0, size);
+        return new CursorPage<>(items, size, keyOf.apply(items.get(size - 1)).encode(), total);
+    }
+}
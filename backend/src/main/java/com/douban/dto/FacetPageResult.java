@@ -0,0 +1,21 @@
+package com.douban.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带分面计数的分页结果：facets 为 分面名 → (取值 → 命中数)，按命中数降序。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class FacetPageResult<T> extends PageResult<T> {
+    private Map<String, Map<String, Integer>> facets;
+
+    public FacetPageResult(List<T> items, int page, int size, long total, Map<String, Map<String, Integer>> facets) {
+        super(items, page, size, total);
+        this.facets = facets;
+    }
+}
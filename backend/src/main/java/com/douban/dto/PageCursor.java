@@ -0,0 +1,107 @@
+package com.douban.dto;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 键集分页的游标：记录上一页最后一行的排序键和ID，下一页从它之后继续查询。
+ *
+ * 对客户端是不透明的 base64url 字符串；种类不匹配或格式错误时抛出 IllegalArgumentException（返回 400）。
+ */
+@Getter
+public final class PageCursor {
+
+    public enum Kind {
+        /** rating DESC, rating_count DESC, id DESC */
+        RATING,
+        /** created_at DESC, id DESC */
+        TIME,
+        /** id DESC */
+        ID,
+        /** 内存中已排好序的结果（如搜索索引、排行榜），按位置续读 */
+        OFFSET
+    }
+
+    private static final String SEPARATOR = "|";
+
+    private final Kind kind;
+    private final BigDecimal score;
+    private final Long count;
+    private final LocalDateTime time;
+    private final Long id;
+
+    private PageCursor(Kind kind, BigDecimal score, Long count, LocalDateTime time, Long id) {
+        this.kind = kind;
+        this.score = score;
+        this.count = count;
+        this.time = time;
+        this.id = id;
+    }
+
+    public static PageCursor byRating(BigDecimal rating, Integer ratingCount, Long id) {
+        return new PageCursor(Kind.RATING, rating == null ? BigDecimal.ZERO : rating,
+                ratingCount == null ? 0L : ratingCount.longValue(), null, id);
+    }
+
+    public static PageCursor byTime(LocalDateTime time, Long id) {
+        return new PageCursor(Kind.TIME, null, null, time, id);
+    }
+
+    public static PageCursor byId(Long id) {
+        return new PageCursor(Kind.ID, null, null, null, id);
+    }
+
+    public static PageCursor byOffset(long offset) {
+        return new PageCursor(Kind.OFFSET, null, offset, null, 0L);
+    }
+
+    public String encode() {
+        String raw = kind.name() + SEPARATOR
+                + (score == null ? "" : score.toPlainString()) + SEPARATOR
+                + (count == null ? "" : count) + SEPARATOR
+                + (time == null ? "" : time) + SEPARATOR
+                + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标；空字符串表示第一页，返回 null。
+     */
+    public static PageCursor decode(String token, Kind expected) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 5 || !expected.name().equals(parts[0])) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            PageCursor cursor = new PageCursor(expected,
+                    parts[1].isEmpty() ? null : new BigDecimal(parts[1]),
+                    parts[2].isEmpty() ? null : Long.valueOf(parts[2]),
+                    parts[3].isEmpty() ? null : LocalDateTime.parse(parts[3]),
+                    Long.valueOf(parts[4]));
+            if (!cursor.isComplete()) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+            return cursor;
+        } catch (RuntimeException e) {
+            // Base64 / 数字 / 时间解析失败统一视为无效游标
+            throw new IllegalArgumentException("无效的游标");
+        }
+    }
+
+    private boolean isComplete() {
+        return switch (kind) {
+            case RATING -> score != null && count != null;
+            case TIME -> time != null;
+            case ID -> true;
+            case OFFSET -> count != null && count >= 0;
+        };
+    }
+}
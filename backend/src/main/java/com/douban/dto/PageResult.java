@@ -10,6 +10,8 @@ public class PageResult<T> {
     private int size;
     private long total;
     private int totalPages;
+    /** 搜索前缀展开被截断时为 true，此时结果可能不完整 */
+    private boolean truncated;
 
     public PageResult(List<T> items, int page, int size, long total) {
         this.items = items;
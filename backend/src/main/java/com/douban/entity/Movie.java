@@ -26,6 +26,8 @@ public class Movie {
 
     // 运行时统计字段（排行榜等场景使用，不落库）
     private Long hot;
+    // 近 7 天独立访客数（HyperLogLog 估计值）
+    private Long uniqueViewers;
     private Integer reviewCount;
     private Integer wishCount;
     private Integer watchedCount;
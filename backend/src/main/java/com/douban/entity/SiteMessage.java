@@ -13,4 +13,6 @@ public class SiteMessage {
     private String content;
     private String status;
     private LocalDateTime createdAt;
+    // 全站广播（来自 broadcast_messages，已读状态由用户的已读水位决定）
+    private boolean broadcast;
 }
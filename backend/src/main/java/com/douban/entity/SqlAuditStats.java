@@ -0,0 +1,20 @@
+package com.douban.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class SqlAuditStats {
+    private Long id;
+    private String fingerprint;
+    private String statementId;
+    private String sqlText;
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+    private Long execCount;
+    private Long totalLatencyUs;
+    private Long maxLatencyUs;
+    private Integer distinctUsers;
+    private LocalDateTime createdAt;
+}
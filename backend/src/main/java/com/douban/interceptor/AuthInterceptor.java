@@ -38,14 +38,17 @@ public class AuthInterceptor implements HandlerInterceptor {
             return true;
         }
 
+        // 同一请求已被前面的认证拦截器解析过
+        if (request.getAttribute("userId") != null) {
+            return true;
+        }
+
         String authHeader = request.getHeader("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            if (jwtUtil.validateToken(token)) {
-                Long userId = jwtUtil.getUserIdFromToken(token);
-                String role = jwtUtil.getRoleFromToken(token);
-                request.setAttribute("userId", userId);
-                request.setAttribute("role", role);
+            JwtUtil.TokenPrincipal principal = jwtUtil.parse(authHeader.substring(7));
+            if (principal != null) {
+                request.setAttribute("userId", principal.userId());
+                request.setAttribute("role", principal.role());
                 return true;
             }
         }
@@ -1,38 +1,67 @@
 package com.douban.interceptor;
 
-import com.douban.repository.SqlAuditRepository;
+import com.douban.audit.SqlAuditAggregator;
+import com.douban.audit.SqlAuditAppender;
+import com.douban.audit.SqlVerdictCache;
+import com.douban.entity.SqlAuditLog;
 import jakarta.servlet.http.HttpServletRequest;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.ResultHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDateTime;
 import java.util.Properties;
-import java.util.regex.Pattern;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * MyBatis SQL 审计与简单注入拦截。
+ * MyBatis SQL 审计与简单注入拦截。审计记录交给 {@link SqlAuditAppender} 异步批量写库，
+ * 风险判定走 {@link SqlVerdictCache}，已判定过的语句不再规范化和扫描。
+ *
+ * 审计模式（douban.audit.mode）：
+ * - full：每条语句一行 sql_audit，可用 sample-rate 对正常语句抽样；
+ * - aggregate：正常语句只在执行时计时，交给 {@link SqlAuditAggregator} 按指纹和时间窗口汇总成 sql_audit_stats。
+ * 两种模式下被拦截的可疑语句都完整地单独记录。
+ *
+ * 作为 Spring Bean 由 MyBatis 自动配置注册，不要再手动 addInterceptor（会重复包装）。
  */
 @Component
 @Intercepts({
-        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})
+        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}),
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class})
 })
 public class SqlAuditInterceptor implements Interceptor {
 
     private static final Logger log = LoggerFactory.getLogger(SqlAuditInterceptor.class);
-    private static final Pattern RISKY_SQL_PATTERN = Pattern.compile(
-            "(?i)(\\bunion\\b|\\bdrop\\b|\\binsert\\b.+\\binto\\b.+information_schema|sleep\\s*\\(|benchmark\\s*\\(|or\\s+1=1|--|;--|/\\*|\\*/|xp_)");
 
-    private final SqlAuditRepository sqlAuditRepository;
+    private final SqlAuditAppender sqlAuditAppender;
+    private final SqlVerdictCache sqlVerdictCache;
+    private final SqlAuditAggregator sqlAuditAggregator;
 
-    public SqlAuditInterceptor(SqlAuditRepository sqlAuditRepository) {
-        this.sqlAuditRepository = sqlAuditRepository;
+    @Value("${douban.audit.mode:full}")
+    private String mode;
+
+    @Value("${douban.audit.sample-rate:1.0}")
+    private double sampleRate;
+
+    public SqlAuditInterceptor(SqlAuditAppender sqlAuditAppender, SqlVerdictCache sqlVerdictCache,
+                               SqlAuditAggregator sqlAuditAggregator) {
+        this.sqlAuditAppender = sqlAuditAppender;
+        this.sqlVerdictCache = sqlVerdictCache;
+        this.sqlAuditAggregator = sqlAuditAggregator;
     }
 
     @Override
@@ -40,10 +69,40 @@ public class SqlAuditInterceptor implements Interceptor {
         StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
         BoundSql boundSql = statementHandler.getBoundSql();
         String rawSql = boundSql.getSql();
-        String normalizedSql = rawSql.replaceAll("\\s+", " ").toLowerCase();
+        String statementId = statementId(statementHandler);
+        SqlVerdictCache.Verdict verdict = sqlVerdictCache.classify(statementId, rawSql);
+        boolean aggregate = "aggregate".equalsIgnoreCase(mode);
+
+        if (!"prepare".equals(invocation.getMethod().getName())) {
+            if (!aggregate) {
+                return invocation.proceed();
+            }
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                sqlAuditAggregator.record(statementId, verdict, currentUserId(), System.nanoTime() - start);
+            }
+        }
+
+        boolean risky = verdict.risky();
+        if (risky || (!aggregate && sampled())) {
+            append(rawSql, risky);
+        }
+
+        if (risky) {
+            log.warn("Blocked risky SQL: {}", rawSql.replaceAll("\\s+", " "));
+            throw new RuntimeException("检测到异常SQL，已拦截");
+        }
+
+        return invocation.proceed();
+    }
 
-        boolean risky = RISKY_SQL_PATTERN.matcher(normalizedSql).find();
+    private boolean sampled() {
+        return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
 
+    private void append(String rawSql, boolean risky) {
         Long userId = null;
         String clientIp = null;
 
@@ -57,18 +116,32 @@ public class SqlAuditInterceptor implements Interceptor {
             clientIp = request.getRemoteAddr();
         }
 
-        try {
-            sqlAuditRepository.insert(userId, clientIp, rawSql, risky);
-        } catch (Exception e) {
-            log.warn("Failed to persist SQL audit log", e);
-        }
+        SqlAuditLog entry = new SqlAuditLog();
+        entry.setUserId(userId);
+        entry.setClientIp(clientIp);
+        entry.setSqlText(rawSql);
+        entry.setBlocked(risky);
+        entry.setCreatedAt(LocalDateTime.now());
+        sqlAuditAppender.append(entry);
+    }
 
-        if (risky) {
-            log.warn("Blocked risky SQL: {}", normalizedSql);
-            throw new RuntimeException("检测到异常SQL，已拦截");
+    private static Long currentUserId() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        if (attrs instanceof ServletRequestAttributes servletAttrs
+                && servletAttrs.getRequest().getAttribute("userId") instanceof Long userId) {
+            return userId;
         }
+        return null;
+    }
 
-        return invocation.proceed();
+    private static String statementId(StatementHandler statementHandler) {
+        try {
+            MetaObject meta = SystemMetaObject.forObject(statementHandler);
+            Object ms = meta.hasGetter("delegate") ? meta.getValue("delegate.mappedStatement") : meta.getValue("mappedStatement");
+            return ms instanceof MappedStatement mappedStatement ? mappedStatement.getId() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
     }
 
     @Override
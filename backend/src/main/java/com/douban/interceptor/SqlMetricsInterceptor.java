@@ -0,0 +1,143 @@
+package com.douban.interceptor;
+
+import com.douban.audit.ConnectionWaitTracker;
+import com.douban.util.LatencyHistogram;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Executor 层的 SQL 指标：按 MappedStatement ID 统计执行耗时直方图、返回 / 影响行数、
+ * 借连接等待时间和失败次数；超过阈值的语句写慢查询日志（只输出占位符和参数名，不输出参数值）。
+ *
+ * 作为 Spring Bean 由 MyBatis 自动配置注册到 Configuration，不要再手动 addInterceptor（会重复包装）。
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+})
+public class SqlMetricsInterceptor implements Interceptor {
+
+    private static final Logger slowLog = LoggerFactory.getLogger("com.douban.sql.slow");
+
+    private static final class StatementMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram connectionWait = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder slow = new LongAdder();
+    }
+
+    private final Map<String, StatementMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Value("${douban.sql.slow-threshold-ms:200}")
+    private long slowThresholdMs;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        StatementMetrics m = metrics.computeIfAbsent(ms.getId(), k -> new StatementMetrics());
+        ConnectionWaitTracker.drain();
+        long start = System.nanoTime();
+        Object result = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        } catch (Throwable e) {
+            m.errors.increment();
+            throw e;
+        } finally {
+            long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            m.latency.record(elapsedMicros);
+            m.connectionWait.record(TimeUnit.NANOSECONDS.toMicros(ConnectionWaitTracker.drain()));
+            long rows = rowsOf(result);
+            m.rows.add(rows);
+            if (elapsedMicros >= TimeUnit.MILLISECONDS.toMicros(slowThresholdMs)) {
+                m.slow.increment();
+                logSlow(invocation, ms, elapsedMicros, rows);
+            }
+        }
+    }
+
+    private static long rowsOf(Object result) {
+        if (result instanceof Collection<?> c) return c.size();
+        if (result instanceof Number n) return n.longValue();
+        return 0;
+    }
+
+    private static void logSlow(Invocation invocation, MappedStatement ms, long elapsedMicros, long rows) {
+        Object[] args = invocation.getArgs();
+        BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : ms.getBoundSql(args[1]);
+        String params = boundSql.getParameterMappings().stream()
+                .map(ParameterMapping::getProperty)
+                .map(name -> name + "=***")
+                .collect(Collectors.joining(", "));
+        slowLog.warn("Slow SQL {} took {} ms, rows={}: {} [{}]", ms.getId(), elapsedMicros / 1000, rows,
+                boundSql.getSql().replaceAll("\\s+", " "), params);
+    }
+
+    /**
+     * 各语句的指标，按总耗时降序。耗时单位为毫秒（保留三位小数）。
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> list = new ArrayList<>(metrics.size());
+        metrics.forEach((id, m) -> {
+            LatencyHistogram h = m.latency;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("statement", id);
+            row.put("count", h.count());
+            row.put("errors", m.errors.sum());
+            row.put("slow", m.slow.sum());
+            row.put("rows", m.rows.sum());
+            row.put("totalMs", millis(h.sum()));
+            row.put("meanMs", millis(h.mean()));
+            row.put("p50Ms", millis(h.percentile(50)));
+            row.put("p90Ms", millis(h.percentile(90)));
+            row.put("p99Ms", millis(h.percentile(99)));
+            row.put("p999Ms", millis(h.percentile(99.9)));
+            row.put("maxMs", millis(h.max()));
+            row.put("connectionWaitMeanMs", millis(m.connectionWait.mean()));
+            row.put("connectionWaitP99Ms", millis(m.connectionWait.percentile(99)));
+            list.add(row);
+        });
+        list.sort(Comparator.comparingDouble((Map<String, Object> row) -> (Double) row.get("totalMs")).reversed());
+        return list;
+    }
+
+    public void reset() {
+        metrics.clear();
+    }
+
+    private static double millis(double micros) {
+        return Math.round(micros) / 1000.0;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        // no-op
+    }
+}
@@ -1,6 +1,6 @@
 package com.douban.interceptor;
 
-import com.douban.mapper.UserMapper;
+import com.douban.cache.UserStatusCache;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.stereotype.Component;
@@ -9,10 +9,10 @@ import org.springframework.web.servlet.HandlerInterceptor;
 @Component
 public class UserStatusInterceptor implements HandlerInterceptor {
 
-    private final UserMapper userMapper;
+    private final UserStatusCache userStatusCache;
 
-    public UserStatusInterceptor(UserMapper userMapper) {
-        this.userMapper = userMapper;
+    public UserStatusInterceptor(UserStatusCache userStatusCache) {
+        this.userStatusCache = userStatusCache;
     }
 
     @Override
@@ -26,8 +26,7 @@ public class UserStatusInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        String status = userMapper.findStatusById(userId);
-        if (status != null && "ACTIVE".equalsIgnoreCase(status)) {
+        if (userStatusCache.isActive(userId)) {
             return true;
         }
 
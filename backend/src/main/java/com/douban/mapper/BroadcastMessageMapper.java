@@ -0,0 +1,68 @@
+package com.douban.mapper;
+
+import com.douban.dto.PageCursor;
+import com.douban.entity.SiteMessage;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+/**
+ * 全站广播与每个用户的已读水位。查询结果映射成 {@link SiteMessage}（broadcast = true，receiverId = 0），
+ * 便于和个人站内信合并；用户只能看到注册之后发出的广播。
+ */
+@Mapper
+public interface BroadcastMessageMapper {
+
+    String COLUMNS = "id, 0 AS receiver_id, sender_id, title, content, "
+            + "CASE WHEN id > #{readId} THEN 'UNREAD' ELSE 'READ' END AS status, created_at, TRUE AS broadcast";
+
+    String VISIBLE = "created_at >= (SELECT created_at FROM users WHERE id = #{userId})";
+
+    @Insert("INSERT INTO broadcast_messages (sender_id, title, content, created_at) VALUES (#{senderId}, #{title}, #{content}, #{createdAt})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(SiteMessage message);
+
+    @Select({
+            "<script>",
+            "SELECT " + COLUMNS + " FROM broadcast_messages WHERE " + VISIBLE,
+            "<if test='after != null'>",
+            "AND created_at &lt;= #{after.time} AND (created_at &lt; #{after.time} OR id &lt; #{after.id})",
+            "</if>",
+            "ORDER BY created_at DESC, id DESC LIMIT #{limit}",
+            "</script>"
+    })
+    List<SiteMessage> findVisible(@Param("userId") Long userId, @Param("readId") long readId,
+                                  @Param("after") PageCursor after, @Param("limit") int limit);
+
+    @Select("SELECT COUNT(*) FROM broadcast_messages WHERE " + VISIBLE)
+    long countVisible(@Param("userId") Long userId);
+
+    @Select("SELECT " + COLUMNS + " FROM broadcast_messages WHERE " + VISIBLE
+            + " AND id > #{readId} ORDER BY created_at DESC, id DESC LIMIT #{limit}")
+    List<SiteMessage> findUnread(@Param("userId") Long userId, @Param("readId") long readId, @Param("limit") int limit);
+
+    @Select("SELECT COUNT(*) FROM broadcast_messages WHERE " + VISIBLE + " AND id > #{readId}")
+    int countUnread(@Param("userId") Long userId, @Param("readId") long readId);
+
+    @Select("SELECT COALESCE(MAX(id), 0) FROM broadcast_messages")
+    long latestId();
+
+    /**
+     * 用户注册前最后一条广播的ID，更早的广播对该用户不可见。
+     */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM broadcast_messages WHERE created_at < (SELECT created_at FROM users WHERE id = #{userId})")
+    long findFloorId(@Param("userId") Long userId);
+
+    @Select("SELECT id FROM broadcast_messages ORDER BY id DESC LIMIT #{limit}")
+    List<Long> findRecentIds(@Param("limit") int limit);
+
+    @Select("SELECT broadcast_read_id FROM user_inbox_state WHERE user_id = #{userId}")
+    Long findReadId(@Param("userId") Long userId);
+
+    /**
+     * 已读水位只前进不后退。
+     */
+    @Insert("INSERT INTO user_inbox_state (user_id, broadcast_read_id) VALUES (#{userId}, #{readId}) "
+            + "ON DUPLICATE KEY UPDATE broadcast_read_id = GREATEST(broadcast_read_id, VALUES(broadcast_read_id))")
+    int advanceReadId(@Param("userId") Long userId, @Param("readId") long readId);
+}
@@ -1,5 +1,6 @@
 package com.douban.mapper;
 
+import com.douban.dto.PageCursor;
 import com.douban.entity.MovieCollection;
 import org.apache.ibatis.annotations.*;
 import java.util.List;
@@ -7,11 +8,16 @@ import java.util.List;
 @Mapper
 public interface CollectionMapper {
 
-        @Select("SELECT c.*, m.id as movie_id, m.title, m.original_title, m.year, m.directors, " +
+        @Select("<script>" +
+                        "SELECT c.*, m.id as movie_id, m.title, m.original_title, m.year, m.directors, " +
                         "m.genres, m.rating, m.rating_count, m.poster, m.duration " +
                         "FROM collections c LEFT JOIN movies m ON c.movie_id = m.id " +
                         "WHERE c.user_id = #{userId} AND c.status = #{status} " +
-                        "ORDER BY c.created_at DESC LIMIT #{limit} OFFSET #{offset}")
+                        "<if test='after != null'>" +
+                        "AND c.created_at &lt;= #{after.time} AND (c.created_at &lt; #{after.time} OR c.id &lt; #{after.id}) " +
+                        "</if>" +
+                        "ORDER BY c.created_at DESC, c.id DESC LIMIT #{limit} OFFSET #{offset}" +
+                        "</script>")
         @Results({
                         @Result(property = "id", column = "id"),
                         @Result(property = "userId", column = "user_id"),
@@ -30,7 +36,7 @@ public interface CollectionMapper {
                         @Result(property = "movie.duration", column = "duration")
         })
         List<MovieCollection> findByUserAndStatus(@Param("userId") Long userId, @Param("status") String status,
-                        @Param("limit") int limit, @Param("offset") int offset);
+                        @Param("after") PageCursor after, @Param("limit") int limit, @Param("offset") int offset);
 
         @Select("SELECT COUNT(*) FROM collections WHERE user_id = #{userId} AND status = #{status}")
         int countByUserAndStatus(@Param("userId") Long userId, @Param("status") String status);
@@ -50,4 +56,7 @@ public interface CollectionMapper {
 
         @Select("SELECT status FROM collections WHERE user_id = #{userId} AND movie_id = #{movieId}")
         String getStatus(@Param("userId") Long userId, @Param("movieId") Long movieId);
+
+        @Select("SELECT status FROM collections WHERE user_id = #{userId} AND movie_id = #{movieId} FOR UPDATE")
+        String getStatusForUpdate(@Param("userId") Long userId, @Param("movieId") Long movieId);
 }
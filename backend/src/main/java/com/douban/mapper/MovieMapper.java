@@ -1,7 +1,10 @@
 package com.douban.mapper;
 
+import com.douban.dto.PageCursor;
 import com.douban.entity.Movie;
 import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -9,11 +12,9 @@ public interface MovieMapper {
 
     @Select("SELECT " +
             "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
+            "m.rating, m.rating_count, " +
             "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
             "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
             "WHERE m.id = #{id}")
     Movie findById(Long id);
 
@@ -28,85 +29,90 @@ public interface MovieMapper {
     @Delete("DELETE FROM movies WHERE id = #{id}")
     int delete(@Param("id") Long id);
 
-    @Select("SELECT " +
-            "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
-            "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
-            "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
-            "ORDER BY rating DESC, rating_count DESC LIMIT #{limit} OFFSET #{offset}")
-    List<Movie> findAll(@Param("limit") int limit, @Param("offset") int offset);
+    /**
+     * 键集分页条件：排序为 rating DESC, rating_count DESC, id DESC，after 为上一页最后一行的排序键。
+     * 先用 rating <= 限定范围以便走 idx_rating，再精确排除并列的行。
+     */
+    String AFTER_RATING = """
+            <if test="after != null">
+              AND m.rating &lt;= #{after.score}
+              AND (m.rating &lt; #{after.score}
+                OR m.rating_count &lt; #{after.count}
+                OR (m.rating_count = #{after.count} AND m.id &lt; #{after.id}))
+            </if>
+            """;
+
+    @Select("""
+            <script>
+            SELECT
+              m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration,
+              m.rating, m.rating_count,
+              m.summary, m.poster, m.images, m.created_at, m.updated_at
+            FROM movies m
+            WHERE 1=1
+            """ + AFTER_RATING + """
+            ORDER BY m.rating DESC, m.rating_count DESC, m.id DESC
+            LIMIT #{limit} OFFSET #{offset}
+            </script>
+            """)
+    List<Movie> findAll(@Param("after") PageCursor after, @Param("limit") int limit, @Param("offset") int offset);
 
     @Select("SELECT COUNT(*) FROM movies")
     int count();
 
     @Select("SELECT " +
             "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
+            "m.rating, m.rating_count, " +
             "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
             "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
-            "ORDER BY rating DESC, rating_count DESC LIMIT #{limit}")
+            "ORDER BY m.rating DESC, m.rating_count DESC LIMIT #{limit}")
     List<Movie> findTopRated(@Param("limit") int limit);
 
     @Select("SELECT " +
             "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
+            "m.rating, m.rating_count, " +
             "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
             "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
             "ORDER BY m.created_at DESC LIMIT #{limit}")
     List<Movie> findRecent(@Param("limit") int limit);
 
-    @Select("SELECT " +
-            "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
-            "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
-            "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
-            "WHERE m.title LIKE CONCAT('%', #{keyword}, '%') OR m.original_title LIKE CONCAT('%', #{keyword}, '%') OR m.directors LIKE CONCAT('%', #{keyword}, '%') OR m.actors LIKE CONCAT('%', #{keyword}, '%') " +
-            "ORDER BY rating DESC, rating_count DESC LIMIT #{limit} OFFSET #{offset}")
-    List<Movie> search(@Param("keyword") String keyword, @Param("limit") int limit, @Param("offset") int offset);
+    @Select("""
+            <script>
+            SELECT
+              m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration,
+              m.rating, m.rating_count,
+              m.summary, m.poster, m.images, m.created_at, m.updated_at
+            FROM movies m
+            WHERE (m.title LIKE CONCAT('%', #{keyword}, '%') OR m.original_title LIKE CONCAT('%', #{keyword}, '%')
+              OR m.directors LIKE CONCAT('%', #{keyword}, '%') OR m.actors LIKE CONCAT('%', #{keyword}, '%'))
+            """ + AFTER_RATING + """
+            ORDER BY m.rating DESC, m.rating_count DESC, m.id DESC
+            LIMIT #{limit} OFFSET #{offset}
+            </script>
+            """)
+    List<Movie> search(@Param("keyword") String keyword, @Param("after") PageCursor after,
+                       @Param("limit") int limit, @Param("offset") int offset);
 
     @Select("SELECT COUNT(*) FROM movies WHERE title LIKE CONCAT('%', #{keyword}, '%') OR original_title LIKE CONCAT('%', #{keyword}, '%') OR directors LIKE CONCAT('%', #{keyword}, '%') OR actors LIKE CONCAT('%', #{keyword}, '%')")
     int countByKeyword(@Param("keyword") String keyword);
 
-    @Select("SELECT " +
-            "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
-            "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
-            "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
-            "WHERE m.genres LIKE CONCAT('%', #{genre}, '%') " +
-            "ORDER BY rating DESC, rating_count DESC LIMIT #{limit} OFFSET #{offset}")
-    List<Movie> findByGenre(@Param("genre") String genre, @Param("limit") int limit, @Param("offset") int offset);
-
-    @Select("SELECT COUNT(*) FROM movies WHERE genres LIKE CONCAT('%', #{genre}, '%')")
-    int countByGenre(@Param("genre") String genre);
-
     @Select("""
             <script>
             SELECT
               m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration,
-              COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count,
+              m.rating, m.rating_count,
               m.summary, m.poster, m.images, m.created_at, m.updated_at
             FROM movies m
-            LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt
-            ON m.id = rt.movie_id
             WHERE 1=1
             <foreach collection="genres" item="g">
               AND m.genres LIKE CONCAT('%', #{g}, '%')
             </foreach>
-            ORDER BY rating DESC, rating_count DESC
+            ORDER BY m.rating DESC, m.rating_count DESC, m.id DESC
             LIMIT #{limit} OFFSET #{offset}
             </script>
             """)
-    List<Movie> findByGenresAll(@Param("genres") List<String> genres, @Param("limit") int limit, @Param("offset") int offset);
+    List<Movie> findByGenresAll(@Param("genres") List<String> genres,
+                                @Param("limit") int limit, @Param("offset") int offset);
 
     @Select("""
             <script>
@@ -120,48 +126,48 @@ public interface MovieMapper {
             """)
     int countByGenresAll(@Param("genres") List<String> genres);
 
-    @Update("UPDATE movies SET rating = #{rating}, rating_count = #{ratingCount} WHERE id = #{id}")
-    int updateRating(@Param("id") Long id, @Param("rating") java.math.BigDecimal rating, @Param("ratingCount") int ratingCount);
+    /**
+     * 按增量维护评分聚合：rating_sum / rating_count 累加差值，rating 由累加后的值重新计算。
+     * MySQL 单表 UPDATE 按从左到右的顺序赋值，rating 读取的是本语句内已更新的 sum/count。
+     */
+    @Update("UPDATE movies SET " +
+            "rating_sum = rating_sum + #{sumDelta}, " +
+            "rating_count = rating_count + #{countDelta}, " +
+            "rating = IF(rating_count > 0, ROUND(rating_sum / rating_count, 1), 0) " +
+            "WHERE id = #{id}")
+    int applyRatingDelta(@Param("id") Long id, @Param("sumDelta") long sumDelta, @Param("countDelta") int countDelta);
 
     @Select("SELECT " +
             "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
+            "m.rating, m.rating_count, " +
             "m.summary, m.poster, m.images, m.created_at, m.updated_at, " +
             "COALESCE(r.review_count, 0) AS review_count " +
             "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
             "LEFT JOIN (SELECT movie_id, COUNT(*) AS review_count FROM reviews GROUP BY movie_id) r " +
             "ON m.id = r.movie_id " +
-            "ORDER BY COALESCE(review_count, 0) DESC, rating DESC, rating_count DESC " +
+            "ORDER BY COALESCE(review_count, 0) DESC, m.rating DESC, m.rating_count DESC " +
             "LIMIT #{limit}")
     List<Movie> findMostReviewed(@Param("limit") int limit);
 
     @Select("SELECT " +
             "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
+            "m.rating, m.rating_count, " +
             "m.summary, m.poster, m.images, m.created_at, m.updated_at, " +
-            "COALESCE(c.wish_count, 0) AS wish_count " +
+            "COALESCE(s.wish_count, 0) AS wish_count " +
             "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
-            "LEFT JOIN (SELECT movie_id, COUNT(*) AS wish_count FROM collections WHERE status = 'wish' GROUP BY movie_id) c " +
-            "ON m.id = c.movie_id " +
-            "ORDER BY wish_count DESC, rating_count DESC, rating DESC " +
+            "LEFT JOIN movie_stats s ON m.id = s.movie_id " +
+            "ORDER BY wish_count DESC, m.rating_count DESC, m.rating DESC " +
             "LIMIT #{limit}")
     List<Movie> findMostWished(@Param("limit") int limit);
 
     @Select("SELECT " +
             "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
-            "COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count, " +
+            "m.rating, m.rating_count, " +
             "m.summary, m.poster, m.images, m.created_at, m.updated_at, " +
-            "COALESCE(c.watched_count, 0) AS watched_count " +
+            "COALESCE(s.watched_count, 0) AS watched_count " +
             "FROM movies m " +
-            "LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt " +
-            "ON m.id = rt.movie_id " +
-            "LEFT JOIN (SELECT movie_id, COUNT(*) AS watched_count FROM collections WHERE status = 'watched' GROUP BY movie_id) c " +
-            "ON m.id = c.movie_id " +
-            "ORDER BY watched_count DESC, rating_count DESC, rating DESC " +
+            "LEFT JOIN movie_stats s ON m.id = s.movie_id " +
+            "ORDER BY watched_count DESC, m.rating_count DESC, m.rating DESC " +
             "LIMIT #{limit}")
     List<Movie> findMostWatched(@Param("limit") int limit);
 
@@ -169,11 +175,9 @@ public interface MovieMapper {
             <script>
             SELECT
               m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration,
-              COALESCE(rt.rating, 0) AS rating, COALESCE(rt.rating_count, 0) AS rating_count,
+              m.rating, m.rating_count,
               m.summary, m.poster, m.images, m.created_at, m.updated_at
             FROM movies m
-            LEFT JOIN (SELECT movie_id, ROUND(AVG(score), 1) AS rating, COUNT(*) AS rating_count FROM ratings GROUP BY movie_id) rt
-            ON m.id = rt.movie_id
             WHERE m.id IN
             <foreach collection="ids" item="id" open="(" separator="," close=")">
               #{id}
@@ -186,4 +190,26 @@ public interface MovieMapper {
             </script>
             """)
     List<Movie> findByIdsOrdered(@Param("ids") List<Long> ids);
+
+    /**
+     * 按主键分批全量读取（内存目录启动加载用），避免一次性拉取整表。
+     */
+    @Select("SELECT " +
+            "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
+            "m.rating, m.rating_count, " +
+            "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
+            "FROM movies m " +
+            "WHERE m.id > #{afterId} ORDER BY m.id LIMIT #{limit}")
+    List<Movie> findBatchAfterId(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 增量同步：读取 updated_at 不早于 since 的电影（评分变化也会刷新 updated_at）。
+     */
+    @Select("SELECT " +
+            "m.id, m.title, m.original_title, m.year, m.directors, m.actors, m.genres, m.country, m.language, m.duration, " +
+            "m.rating, m.rating_count, " +
+            "m.summary, m.poster, m.images, m.created_at, m.updated_at " +
+            "FROM movies m " +
+            "WHERE m.updated_at >= #{since} ORDER BY m.updated_at")
+    List<Movie> findUpdatedSince(@Param("since") LocalDateTime since);
 }
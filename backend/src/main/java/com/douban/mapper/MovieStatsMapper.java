@@ -0,0 +1,28 @@
+package com.douban.mapper;
+
+import com.douban.counter.MovieStatsDelta;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+@Mapper
+public interface MovieStatsMapper {
+
+    @Insert("""
+            <script>
+            INSERT INTO movie_stats (movie_id, wish_count, watching_count, watched_count)
+            VALUES
+            <foreach collection="deltas" item="d" separator=",">
+              (#{d.movieId}, #{d.wish}, #{d.watching}, #{d.watched})
+            </foreach>
+            ON DUPLICATE KEY UPDATE
+              wish_count = wish_count + VALUES(wish_count),
+              watching_count = watching_count + VALUES(watching_count),
+              watched_count = watched_count + VALUES(watched_count)
+            </script>
+            """)
+    int upsertDeltas(@Param("deltas") List<MovieStatsDelta> deltas);
+
+    @Delete("DELETE FROM movie_stats WHERE movie_id = #{movieId}")
+    int deleteByMovie(@Param("movieId") Long movieId);
+}
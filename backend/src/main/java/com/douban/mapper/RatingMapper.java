@@ -1,6 +1,8 @@
 package com.douban.mapper;
 
+import com.douban.dto.PageCursor;
 import com.douban.entity.Rating;
+import com.douban.entity.Review;
 import org.apache.ibatis.annotations.*;
 import java.util.List;
 
@@ -13,11 +15,21 @@ public interface RatingMapper {
     @Select("SELECT * FROM ratings WHERE id = #{id}")
     Rating findById(@Param("id") Long id);
 
-    @Select("SELECT AVG(score) FROM ratings WHERE movie_id = #{movieId}")
-    Double getAverageScore(@Param("movieId") Long movieId);
+    // 加行锁读取旧分数，用于计算评分聚合的增量（需在事务内调用）
+    @Select("SELECT * FROM ratings WHERE user_id = #{userId} AND movie_id = #{movieId} FOR UPDATE")
+    Rating findByUserAndMovieForUpdate(@Param("userId") Long userId, @Param("movieId") Long movieId);
 
-    @Select("SELECT COUNT(*) FROM ratings WHERE movie_id = #{movieId}")
-    int countByMovie(@Param("movieId") Long movieId);
+    @Select("SELECT * FROM ratings WHERE id = #{id} FOR UPDATE")
+    Rating findByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * 批量读取 (用户, 电影) 对应的评分，走 (user_id, movie_id) 唯一索引。
+     */
+    @Select("<script>" +
+            "SELECT user_id, movie_id, score FROM ratings WHERE (user_id, movie_id) IN " +
+            "<foreach collection='reviews' item='r' open='(' separator=',' close=')'>(#{r.userId}, #{r.movieId})</foreach>" +
+            "</script>")
+    List<Rating> findScoresFor(@Param("reviews") List<Review> reviews);
 
     @Insert("INSERT INTO ratings (user_id, movie_id, score) VALUES (#{userId}, #{movieId}, #{score})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
@@ -32,13 +44,18 @@ public interface RatingMapper {
     @Select("SELECT r.*, u.username, u.avatar FROM ratings r LEFT JOIN users u ON r.user_id = u.id WHERE r.movie_id = #{movieId} ORDER BY r.created_at DESC")
     List<Rating> findByMovie(@Param("movieId") Long movieId);
 
-    @Select("SELECT r.*, u.username, u.avatar, m.title as movie_title, m.poster as movie_poster, m.year as movie_year " +
+    @Select("<script>" +
+            "SELECT r.*, u.username, u.avatar, m.title as movie_title, m.poster as movie_poster, m.year as movie_year " +
             "FROM ratings r " +
             "LEFT JOIN users u ON r.user_id = u.id " +
             "LEFT JOIN movies m ON r.movie_id = m.id " +
-            "ORDER BY r.created_at DESC " +
-            "LIMIT #{limit} OFFSET #{offset}")
-    List<Rating> findAllWithDetails(@Param("limit") int limit, @Param("offset") int offset);
+            "<if test='after != null'>" +
+            "WHERE r.created_at &lt;= #{after.time} AND (r.created_at &lt; #{after.time} OR r.id &lt; #{after.id}) " +
+            "</if>" +
+            "ORDER BY r.created_at DESC, r.id DESC " +
+            "LIMIT #{limit} OFFSET #{offset}" +
+            "</script>")
+    List<Rating> findAllWithDetails(@Param("after") PageCursor after, @Param("limit") int limit, @Param("offset") int offset);
 
     @Select("SELECT COUNT(*) FROM ratings")
     int countAll();
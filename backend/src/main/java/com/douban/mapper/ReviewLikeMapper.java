@@ -2,12 +2,24 @@ package com.douban.mapper;
 
 import org.apache.ibatis.annotations.*;
 
+import java.util.Collection;
+import java.util.List;
+
 @Mapper
 public interface ReviewLikeMapper {
 
     @Select("SELECT COUNT(*) FROM review_likes WHERE user_id = #{userId} AND review_id = #{reviewId}")
     int exists(@Param("userId") Long userId, @Param("reviewId") Long reviewId);
 
+    @Select("SELECT COUNT(*) FROM review_likes WHERE user_id = #{userId} AND review_id = #{reviewId} FOR UPDATE")
+    int existsForUpdate(@Param("userId") Long userId, @Param("reviewId") Long reviewId);
+
+    @Select("<script>" +
+            "SELECT review_id FROM review_likes WHERE user_id = #{userId} AND review_id IN " +
+            "<foreach collection='reviewIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Long> findLikedReviewIds(@Param("userId") Long userId, @Param("reviewIds") Collection<Long> reviewIds);
+
     @Insert("INSERT INTO review_likes (user_id, review_id) VALUES (#{userId}, #{reviewId})")
     int insert(@Param("userId") Long userId, @Param("reviewId") Long reviewId);
 
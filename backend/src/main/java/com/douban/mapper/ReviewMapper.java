@@ -1,32 +1,39 @@
 package com.douban.mapper;
 
+import com.douban.dto.PageCursor;
 import com.douban.entity.Review;
 import org.apache.ibatis.annotations.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ReviewMapper {
 
+    /**
+     * 键集分页条件，排序 created_at DESC, id DESC。
+     */
+    String AFTER_TIME = """
+            <if test="after != null">
+              AND r.created_at &lt;= #{after.time}
+              AND (r.created_at &lt; #{after.time} OR r.id &lt; #{after.id})
+            </if>
+            """;
+
     @Select("""
-            SELECT
-              r.id, r.user_id, r.movie_id, r.title, r.content, r.created_at, r.updated_at,
-              u.username, u.avatar,
-              rt.score AS user_rating,
-              COALESCE(lc.like_count, 0) AS like_count,
-              (rl.review_id IS NOT NULL) AS liked
+            <script>
+            SELECT r.id, r.user_id, r.movie_id, r.title, r.content, r.like_count, r.created_at, r.updated_at
             FROM reviews r
-            LEFT JOIN users u ON r.user_id = u.id
-            LEFT JOIN ratings rt ON r.user_id = rt.user_id AND r.movie_id = rt.movie_id
-            LEFT JOIN (SELECT review_id, COUNT(*) AS like_count FROM review_likes GROUP BY review_id) lc ON lc.review_id = r.id
-            LEFT JOIN review_likes rl ON rl.review_id = r.id AND rl.user_id = #{viewerId}
             WHERE r.movie_id = #{movieId}
-            ORDER BY r.created_at DESC
+            """ + AFTER_TIME + """
+            ORDER BY r.created_at DESC, r.id DESC
             LIMIT #{limit} OFFSET #{offset}
+            </script>
             """)
     List<Review> findByMovie(
             @Param("movieId") Long movieId,
-            @Param("viewerId") Long viewerId,
+            @Param("after") PageCursor after,
             @Param("limit") int limit,
             @Param("offset") int offset
     );
@@ -39,14 +46,13 @@ public interface ReviewMapper {
               r.id, r.user_id, r.movie_id, r.title, r.content, r.created_at, r.updated_at,
               u.username, u.avatar,
               rt.score AS user_rating,
-              COALESCE(lc.like_count, 0) AS like_count,
+              r.like_count,
               (rl.review_id IS NOT NULL) AS liked,
               m.title AS movie_title, m.poster AS movie_poster, m.year AS movie_year
             FROM reviews r
             LEFT JOIN users u ON r.user_id = u.id
             LEFT JOIN ratings rt ON r.user_id = rt.user_id AND r.movie_id = rt.movie_id
             LEFT JOIN movies m ON r.movie_id = m.id
-            LEFT JOIN (SELECT review_id, COUNT(*) AS like_count FROM review_likes GROUP BY review_id) lc ON lc.review_id = r.id
             LEFT JOIN review_likes rl ON rl.review_id = r.id AND rl.user_id = #{viewerId}
             WHERE r.id = #{id}
             """)
@@ -65,43 +71,87 @@ public interface ReviewMapper {
     @Delete("DELETE FROM reviews WHERE id = #{id}")
     int adminDelete(@Param("id") Long id);
 
+    /**
+     * 按已落库的 like_count 排序，只取评论行本身；仅在 Redis 排行榜不可用时使用。
+     */
     @Select("""
-            SELECT
-              r.id, r.user_id, r.movie_id, r.title, r.content, r.created_at, r.updated_at,
-              u.username, u.avatar,
-              rt.score AS user_rating,
-              COALESCE(lc.like_count, 0) AS like_count,
-              (rl.review_id IS NOT NULL) AS liked,
-              m.title AS movie_title, m.poster AS movie_poster, m.year AS movie_year
+            SELECT r.id, r.user_id, r.movie_id, r.title, r.content, r.like_count, r.created_at, r.updated_at
             FROM reviews r
-            LEFT JOIN users u ON r.user_id = u.id
-            LEFT JOIN ratings rt ON r.user_id = rt.user_id AND r.movie_id = rt.movie_id
-            LEFT JOIN movies m ON r.movie_id = m.id
-            LEFT JOIN (SELECT review_id, COUNT(*) AS like_count FROM review_likes GROUP BY review_id) lc ON lc.review_id = r.id
-            LEFT JOIN review_likes rl ON rl.review_id = r.id AND rl.user_id = #{viewerId}
-            ORDER BY COALESCE(lc.like_count, 0) DESC, r.created_at DESC
+            ORDER BY r.like_count DESC, r.created_at DESC, r.id DESC
             LIMIT #{limit} OFFSET #{offset}
             """)
-    List<Review> findTopLiked(@Param("viewerId") Long viewerId, @Param("limit") int limit, @Param("offset") int offset);
+    List<Review> findTopLiked(@Param("limit") int limit, @Param("offset") int offset);
+
+    @Select("""
+            <script>
+            SELECT r.id, r.user_id, r.movie_id, r.title, r.content, r.like_count, r.created_at, r.updated_at
+            FROM reviews r
+            WHERE r.id IN
+            <foreach collection="ids" item="id" open="(" separator="," close=")">
+              #{id}
+            </foreach>
+            </script>
+            """)
+    List<Review> findByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 按ID分批读取点赞数，用于重建排行榜。
+     */
+    @Select("SELECT id, like_count FROM reviews WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Review> findLikeCountsAfterId(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 最近若干天每条评论每天新增的点赞数，用于重建按天分桶的排行榜。
+     */
+    @Select("""
+            SELECT review_id AS reviewId, DATE(created_at) AS day, COUNT(*) AS likes
+            FROM review_likes
+            WHERE created_at >= #{since}
+            GROUP BY review_id, DATE(created_at)
+            """)
+    List<Map<String, Object>> countLikesByDaySince(@Param("since") LocalDateTime since);
+
+    /**
+     * 批量累加点赞数（key 为评论ID，value 为增量）；显式保留 updated_at，点赞不算内容修改。
+     */
+    @Update("""
+            <script>
+            UPDATE reviews
+            SET like_count = like_count + CASE id
+            <foreach collection="deltas" index="id" item="delta">
+              WHEN #{id} THEN #{delta}
+            </foreach>
+            ELSE 0 END,
+            updated_at = updated_at
+            WHERE id IN
+            <foreach collection="deltas" index="id" open="(" separator="," close=")">
+              #{id}
+            </foreach>
+            </script>
+            """)
+    int applyLikeDeltas(@Param("deltas") Map<Long, Long> deltas);
 
     @Select("SELECT COUNT(*) FROM reviews")
     int countAll();
 
     @Select("""
+            <script>
             SELECT
               r.id, r.user_id, r.movie_id, r.title, r.content, r.created_at, r.updated_at,
               u.username, u.avatar,
               rt.score AS user_rating,
-              COALESCE(lc.like_count, 0) AS like_count,
+              r.like_count,
               m.title AS movie_title, m.poster AS movie_poster, m.year AS movie_year
             FROM reviews r
             LEFT JOIN users u ON r.user_id = u.id
             LEFT JOIN ratings rt ON r.user_id = rt.user_id AND r.movie_id = rt.movie_id
             LEFT JOIN movies m ON r.movie_id = m.id
-            LEFT JOIN (SELECT review_id, COUNT(*) AS like_count FROM review_likes GROUP BY review_id) lc ON lc.review_id = r.id
-            ORDER BY r.created_at DESC
+            WHERE 1=1
+            """ + AFTER_TIME + """
+            ORDER BY r.created_at DESC, r.id DESC
             LIMIT #{limit} OFFSET #{offset}
+            </script>
             """)
-    List<Review> findAllWithDetails(@Param("limit") int limit, @Param("offset") int offset);
+    List<Review> findAllWithDetails(@Param("after") PageCursor after, @Param("limit") int limit, @Param("offset") int offset);
 }
 
@@ -1,5 +1,6 @@
 package com.douban.mapper;
 
+import com.douban.dto.PageCursor;
 import com.douban.entity.SiteMessage;
 import org.apache.ibatis.annotations.*;
 
@@ -12,8 +13,31 @@ public interface SiteMessageMapper {
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(SiteMessage message);
 
-    @Select("SELECT * FROM site_messages WHERE receiver_id = #{receiverId} ORDER BY created_at DESC LIMIT #{limit} OFFSET #{offset}")
-    List<SiteMessage> findByReceiver(@Param("receiverId") Long receiverId, @Param("limit") int limit, @Param("offset") int offset);
+    /**
+     * 多行 INSERT，一条语句写入一批站内信，并回填各自的自增ID。
+     */
+    @Insert({
+            "<script>",
+            "INSERT INTO site_messages (receiver_id, sender_id, title, content, status, created_at) VALUES",
+            "<foreach collection='messages' item='m' separator=','>",
+            "(#{m.receiverId}, #{m.senderId}, #{m.title}, #{m.content}, #{m.status}, #{m.createdAt})",
+            "</foreach>",
+            "</script>"
+    })
+    @Options(useGeneratedKeys = true, keyProperty = "messages.id")
+    int insertBatch(@Param("messages") List<SiteMessage> messages);
+
+    @Select({
+            "<script>",
+            "SELECT * FROM site_messages WHERE receiver_id = #{receiverId}",
+            "<if test='after != null'>",
+            "AND created_at &lt;= #{after.time} AND (created_at &lt; #{after.time} OR id &lt; #{after.id})",
+            "</if>",
+            "ORDER BY created_at DESC, id DESC LIMIT #{limit} OFFSET #{offset}",
+            "</script>"
+    })
+    List<SiteMessage> findByReceiver(@Param("receiverId") Long receiverId, @Param("after") PageCursor after,
+                                     @Param("limit") int limit, @Param("offset") int offset);
 
     @Select("SELECT COUNT(*) FROM site_messages WHERE receiver_id = #{receiverId}")
     int countByReceiver(@Param("receiverId") Long receiverId);
@@ -21,9 +45,12 @@ public interface SiteMessageMapper {
     @Select("SELECT * FROM site_messages WHERE receiver_id = #{receiverId} AND status = 'UNREAD' ORDER BY created_at DESC")
     List<SiteMessage> findUnread(@Param("receiverId") Long receiverId);
 
+    /**
+     * 只更新仍未读的行，返回值即这次新变为已读的条数。
+     */
     @Update({
             "<script>",
-            "UPDATE site_messages SET status = 'READ' WHERE receiver_id = #{receiverId} AND id IN",
+            "UPDATE site_messages SET status = 'READ' WHERE receiver_id = #{receiverId} AND status = 'UNREAD' AND id IN",
             "<foreach item='id' collection='ids' open='(' separator=',' close=')'>",
             "#{id}",
             "</foreach>",
@@ -1,5 +1,6 @@
 package com.douban.mapper;
 
+import com.douban.dto.PageCursor;
 import com.douban.entity.User;
 import org.apache.ibatis.annotations.*;
 
@@ -9,6 +10,15 @@ public interface UserMapper {
     @Select("SELECT * FROM users WHERE id = #{id}")
     User findById(Long id);
 
+    /**
+     * 批量读取展示用的基本信息（id、用户名、头像）。
+     */
+    @Select("<script>" +
+            "SELECT id, username, avatar FROM users WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    java.util.List<User> findBasicByIds(@Param("ids") java.util.Collection<Long> ids);
+
     @Select("SELECT status FROM users WHERE id = #{id}")
     String findStatusById(@Param("id") Long id);
 
@@ -40,12 +50,54 @@ public interface UserMapper {
     @Update("UPDATE users SET password_hash = #{passwordHash} WHERE id = #{id}")
     int updatePasswordHash(@Param("id") Long id, @Param("passwordHash") String passwordHash);
 
-    @Select("SELECT * FROM users ORDER BY id DESC LIMIT #{limit} OFFSET #{offset}")
-    java.util.List<User> findAll(@Param("limit") int limit, @Param("offset") int offset);
+    /**
+     * 仅当密码哈希仍是 oldHash 时替换（登录时升级哈希用，不覆盖期间修改过的密码）。
+     */
+    @Update("UPDATE users SET password_hash = #{passwordHash} WHERE id = #{id} AND password_hash = #{oldHash}")
+    int upgradePasswordHash(@Param("id") Long id, @Param("oldHash") String oldHash,
+                            @Param("passwordHash") String passwordHash);
+
+    @Select("<script>" +
+            "SELECT * FROM users " +
+            "<if test='after != null'>WHERE id &lt; #{after.id} </if>" +
+            "ORDER BY id DESC LIMIT #{limit} OFFSET #{offset}" +
+            "</script>")
+    java.util.List<User> findAll(@Param("after") PageCursor after, @Param("limit") int limit, @Param("offset") int offset);
 
     @Select("SELECT COUNT(*) FROM users")
     int countAll();
 
     @Select("SELECT COUNT(*) FROM users WHERE role = #{role}")
     int countByRole(@Param("role") String role);
+
+    /**
+     * 按分群条件以用户ID为键集分批读取接收人（ID 升序）；movieId 不为空时只取收藏过该电影的用户。
+     */
+    @Select("<script>" +
+            "<choose>" +
+            "<when test='movieId != null'>" +
+            "SELECT c.user_id FROM collections c JOIN users u ON u.id = c.user_id " +
+            "WHERE c.movie_id = #{movieId} AND c.user_id &gt; #{afterId} " +
+            "<if test='role != null'>AND u.role = #{role} </if>" +
+            "<if test='status != null'>AND u.status = #{status} </if>" +
+            "ORDER BY c.user_id LIMIT #{limit}" +
+            "</when>" +
+            "<otherwise>" +
+            "SELECT id FROM users WHERE id &gt; #{afterId} " +
+            "<if test='role != null'>AND role = #{role} </if>" +
+            "<if test='status != null'>AND status = #{status} </if>" +
+            "ORDER BY id LIMIT #{limit}" +
+            "</otherwise>" +
+            "</choose>" +
+            "</script>")
+    java.util.List<Long> findIdsBySegment(@Param("role") String role, @Param("status") String status,
+                                          @Param("movieId") Long movieId, @Param("afterId") long afterId,
+                                          @Param("limit") int limit);
+
+    @Select("<script>" +
+            "SELECT id FROM users WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            " ORDER BY id" +
+            "</script>")
+    java.util.List<Long> findExistingIds(@Param("ids") java.util.Collection<Long> ids);
 }
@@ -1,21 +1,57 @@
 package com.douban.repository;
 
+import com.douban.entity.SqlAuditLog;
+import com.douban.entity.SqlAuditStats;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
 @Repository
 public class SqlAuditRepository {
 
+    private static final String INSERT_SQL =
+            "INSERT INTO sql_audit (user_id, client_ip, sql_text, blocked, created_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_STATS_SQL =
+            "INSERT INTO sql_audit_stats (fingerprint, statement_id, sql_text, window_start, window_end, "
+                    + "exec_count, total_latency_us, max_latency_us, distinct_users) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private final JdbcTemplate jdbcTemplate;
 
     public SqlAuditRepository(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
-    public void insert(Long userId, String clientIp, String sqlText, boolean blocked) {
-        jdbcTemplate.update(
-                "INSERT INTO sql_audit (user_id, client_ip, sql_text, blocked) VALUES (?, ?, ?, ?)",
-                userId, clientIp, sqlText, blocked ? 1 : 0
-        );
+    /**
+     * 批量写入（连接串开启 rewriteBatchedStatements 后合并为一条多值 INSERT）。
+     */
+    public void insertBatch(List<SqlAuditLog> logs) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, logs.size(), (ps, log) -> {
+            if (log.getUserId() == null) {
+                ps.setNull(1, Types.BIGINT);
+            } else {
+                ps.setLong(1, log.getUserId());
+            }
+            ps.setString(2, log.getClientIp());
+            ps.setString(3, log.getSqlText());
+            ps.setInt(4, Boolean.TRUE.equals(log.getBlocked()) ? 1 : 0);
+            ps.setTimestamp(5, Timestamp.valueOf(log.getCreatedAt()));
+        });
+    }
+
+    public void insertStatsBatch(List<SqlAuditStats> rows) {
+        jdbcTemplate.batchUpdate(INSERT_STATS_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setString(1, row.getFingerprint());
+            ps.setString(2, row.getStatementId());
+            ps.setString(3, row.getSqlText());
+            ps.setTimestamp(4, Timestamp.valueOf(row.getWindowStart()));
+            ps.setTimestamp(5, Timestamp.valueOf(row.getWindowEnd()));
+            ps.setLong(6, row.getExecCount());
+            ps.setLong(7, row.getTotalLatencyUs());
+            ps.setLong(8, row.getMaxLatencyUs());
+            ps.setInt(9, row.getDistinctUsers());
+        });
     }
 }
@@ -0,0 +1,373 @@
+package com.douban.search;
+
+import com.douban.entity.Movie;
+import com.douban.util.IdBitmap;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 电影分面位图索引：类型、年份、年代、国家/地区、语言、评分段。
+ *
+ * 每个分面维护一个 “值 ↔ 数字ID” 字典（归一化后比较，保留首次出现的原始写法用于展示），
+ * 以及 值ID → 电影ID 位图。筛选是位图的交/并，命中总数和分面计数都直接来自位图基数。
+ * 各分面的位图和全集位图组成一个不可变快照，写入（全量重建或单个电影变化）生成新快照后一次 volatile 写发布，
+ * 一次查询自始至终只读同一个快照，不会看到一部分分面已重建、另一部分还是旧的，读请求无需加锁。
+ *
+ * 分面计数为 “多选” 语义：某个分面的计数只应用其他分面的筛选条件，
+ * 这样已选中某个国家后，其他国家的数量仍然可见，可以继续追加选择。
+ */
+@Component
+public class FacetIndex implements MovieCatalog.Listener {
+
+    public static final String GENRE = "genre";
+    public static final String YEAR = "year";
+    public static final String COUNTRY = "country";
+    public static final String LANGUAGE = "language";
+    public static final String DECADE = "decade";
+    public static final String RATING = "rating";
+
+    public static final List<String> FACETS = List.of(GENRE, YEAR, DECADE, COUNTRY, LANGUAGE, RATING);
+
+    private static final String VALUE_SEPARATORS = "[,，/、;；|]";
+    // 结果排序：rating DESC, rating_count DESC, id DESC
+    private static final Comparator<Movie> RANK = Comparator.comparing(FacetIndex::rating).reversed()
+            .thenComparing(FacetIndex::ratingCount, Comparator.reverseOrder())
+            .thenComparing(Movie::getId, Comparator.reverseOrder());
+
+    /**
+     * 查询条件：同一分面内多个值为 OR，不同分面之间为 AND；
+     * matchAllGenres 为 true 时类型分面内改为 AND（同时属于所有所选类型）。
+     */
+    public record FacetQuery(Map<String, List<String>> filters, boolean matchAllGenres) {
+    }
+
+    public record FacetResult(List<Movie> movies, int total, Map<String, Map<String, Integer>> facets) {
+    }
+
+    /**
+     * 单个分面的字典（只增不减，各快照共用）；倒排位图在 {@link Snapshot} 里。
+     */
+    private static final class Facet {
+        final String name;
+        final Function<Movie, List<String>> extractor;
+        final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        final List<String> labels = Collections.synchronizedList(new ArrayList<>());
+
+        Facet(String name, Function<Movie, List<String>> extractor) {
+            this.name = name;
+            this.extractor = extractor;
+        }
+
+        Integer idOf(String value) {
+            return ids.get(Tokenizer.normalize(value).trim());
+        }
+
+        int intern(String value) {
+            return ids.computeIfAbsent(Tokenizer.normalize(value).trim(), k -> {
+                synchronized (labels) {
+                    labels.add(value.trim());
+                    return labels.size() - 1;
+                }
+            });
+        }
+
+        void add(Map<Integer, IdBitmap> postings, Movie movie, int movieId) {
+            for (String value : extractor.apply(movie)) {
+                postings.merge(intern(value), IdBitmap.EMPTY.with(movieId), IdBitmap::or);
+            }
+        }
+
+        void remove(Map<Integer, IdBitmap> postings, Movie movie, int movieId) {
+            for (String value : extractor.apply(movie)) {
+                Integer id = idOf(value);
+                if (id == null) continue;
+                postings.computeIfPresent(id, (k, bitmap) -> bitmap.without(movieId));
+            }
+        }
+    }
+
+    /**
+     * 不可变快照：分面名 → (值ID → 电影ID 位图)，以及全部电影的位图。
+     */
+    private record Snapshot(Map<String, Map<Integer, IdBitmap>> postings, IdBitmap all) {
+        Map<Integer, IdBitmap> postings(Facet facet) {
+            return postings.getOrDefault(facet.name, Map.of());
+        }
+
+        IdBitmap bitmap(Facet facet, String value) {
+            Integer id = facet.idOf(value);
+            return id == null ? IdBitmap.EMPTY : postings(facet).getOrDefault(id, IdBitmap.EMPTY);
+        }
+    }
+
+    private final MovieCatalog catalog;
+    private final Map<String, Facet> facets = new LinkedHashMap<>();
+
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), IdBitmap.EMPTY);
+    // 按 rating DESC, rating_count DESC, id DESC 排好的电影ID，变化后懒重建
+    private volatile int[] rankOrder = new int[0];
+    private volatile boolean orderDirty = true;
+
+    public FacetIndex(MovieCatalog catalog) {
+        this.catalog = catalog;
+        register(new Facet(GENRE, movie -> split(movie.getGenres())));
+        register(new Facet(YEAR, movie -> movie.getYear() == null ? List.of() : List.of(String.valueOf(movie.getYear()))));
+        register(new Facet(COUNTRY, movie -> split(movie.getCountry())));
+        register(new Facet(LANGUAGE, movie -> split(movie.getLanguage())));
+        register(new Facet(DECADE, movie -> movie.getYear() == null ? List.of() : List.of((movie.getYear() / 10 * 10) + "s")));
+        register(new Facet(RATING, movie -> List.of(ratingBucket(movie))));
+    }
+
+    private void register(Facet facet) {
+        facets.put(facet.name, facet);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        catalog.addListener(this);
+    }
+
+    public boolean isReady() {
+        return catalog.isReady();
+    }
+
+    @Override
+    public synchronized void onRebuild(Collection<Movie> movies) {
+        // 全量重建：先在临时结构里分组，再一次性生成位图
+        Map<String, Map<Integer, int[]>> grouped = new HashMap<>();
+        Map<String, Map<Integer, Integer>> sizes = new HashMap<>();
+        int[] allIds = new int[movies.size()];
+        int n = 0;
+        for (Movie movie : movies) {
+            int movieId = Math.toIntExact(movie.getId());
+            if (n == allIds.length) allIds = Arrays.copyOf(allIds, n * 2 + 1);
+            allIds[n++] = movieId;
+            for (Facet facet : facets.values()) {
+                for (String value : facet.extractor.apply(movie)) {
+                    int valueId = facet.intern(value);
+                    Map<Integer, int[]> byValue = grouped.computeIfAbsent(facet.name, k -> new HashMap<>());
+                    Map<Integer, Integer> sizeByValue = sizes.computeIfAbsent(facet.name, k -> new HashMap<>());
+                    int size = sizeByValue.getOrDefault(valueId, 0);
+                    int[] ids = byValue.computeIfAbsent(valueId, k -> new int[8]);
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        byValue.put(valueId, ids);
+                    }
+                    ids[size] = movieId;
+                    sizeByValue.put(valueId, size + 1);
+                }
+            }
+        }
+        Map<String, Map<Integer, IdBitmap>> postings = new HashMap<>();
+        for (Facet facet : facets.values()) {
+            Map<Integer, int[]> byValue = grouped.getOrDefault(facet.name, Map.of());
+            Map<Integer, Integer> sizeByValue = sizes.getOrDefault(facet.name, Map.of());
+            Map<Integer, IdBitmap> fresh = new HashMap<>();
+            byValue.forEach((valueId, ids) -> fresh.put(valueId, IdBitmap.of(ids, sizeByValue.get(valueId))));
+            postings.put(facet.name, Collections.unmodifiableMap(fresh));
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(postings), IdBitmap.of(allIds, n));
+        orderDirty = true;
+    }
+
+    /**
+     * 单个电影变化：复制各分面的位图表（每个分面的取值只有几十到几百个），替换受影响的位图后发布新快照。
+     * 写入之间加锁串行，读不加锁。
+     */
+    @Override
+    public synchronized void onUpsert(Movie movie, Movie previous) {
+        int movieId = Math.toIntExact(movie.getId());
+        Snapshot current = snapshot;
+        Map<String, Map<Integer, IdBitmap>> postings = new HashMap<>();
+        for (Facet facet : facets.values()) {
+            Map<Integer, IdBitmap> copy = new HashMap<>(current.postings(facet));
+            if (previous != null) facet.remove(copy, previous, movieId);
+            facet.add(copy, movie, movieId);
+            postings.put(facet.name, Collections.unmodifiableMap(copy));
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(postings), current.all().with(movieId));
+        orderDirty = true;
+    }
+
+    @Override
+    public synchronized void onRemove(Movie previous) {
+        int movieId = Math.toIntExact(previous.getId());
+        Snapshot current = snapshot;
+        Map<String, Map<Integer, IdBitmap>> postings = new HashMap<>();
+        for (Facet facet : facets.values()) {
+            Map<Integer, IdBitmap> copy = new HashMap<>(current.postings(facet));
+            facet.remove(copy, previous, movieId);
+            postings.put(facet.name, Collections.unmodifiableMap(copy));
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(postings), current.all().without(movieId));
+        orderDirty = true;
+    }
+
+    public FacetResult query(FacetQuery query, int offset, int limit) {
+        Snapshot current = snapshot;
+        // 各分面各自的选中集合；未筛选的分面不出现
+        Map<String, IdBitmap> selections = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> e : query.filters().entrySet()) {
+            Facet facet = facets.get(e.getKey());
+            List<String> values = e.getValue();
+            if (facet == null || values == null || values.isEmpty()) continue;
+            selections.put(facet.name, select(current, facet, values, query.matchAllGenres() && GENRE.equals(facet.name)));
+        }
+        IdBitmap matched = intersect(current, selections, null);
+        List<Movie> page = page(current, matched, offset, limit);
+
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (Facet facet : facets.values()) {
+            boolean disjunctive = selections.containsKey(facet.name)
+                    && !(query.matchAllGenres() && GENRE.equals(facet.name));
+            IdBitmap base = disjunctive ? intersect(current, selections, facet.name) : matched;
+            counts.put(facet.name, counts(current, facet, base));
+        }
+        return new FacetResult(page, matched.cardinality(), counts);
+    }
+
+    public Map<String, Object> stats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("movies", current.all().cardinality());
+        for (Facet facet : facets.values()) {
+            stats.put(facet.name + "Values", current.postings(facet).size());
+        }
+        return stats;
+    }
+
+    /**
+     * 分面内的选中集合：默认为各取值的并集，intersect 为 true 时取交集。
+     */
+    private static IdBitmap select(Snapshot current, Facet facet, List<String> values, boolean intersect) {
+        IdBitmap selected = null;
+        for (String value : values) {
+            IdBitmap bitmap = current.bitmap(facet, value);
+            selected = selected == null ? bitmap : intersect ? selected.and(bitmap) : selected.or(bitmap);
+        }
+        return selected == null ? IdBitmap.EMPTY : selected;
+    }
+
+    /**
+     * 全部电影与各分面选中集合的交集，except 指定的分面除外。先交小集合，尽早变小。
+     */
+    private static IdBitmap intersect(Snapshot current, Map<String, IdBitmap> selections, String except) {
+        List<IdBitmap> parts = new ArrayList<>(selections.size());
+        selections.forEach((name, bitmap) -> {
+            if (!name.equals(except)) parts.add(bitmap);
+        });
+        if (parts.isEmpty()) return current.all();
+        parts.sort(Comparator.comparingInt(IdBitmap::cardinality));
+        IdBitmap result = parts.get(0);
+        for (int i = 1; i < parts.size() && !result.isEmpty(); i++) {
+            result = result.and(parts.get(i));
+        }
+        // 保险起见与全集再交一次（同一快照内两者本应一致）
+        return result.and(current.all());
+    }
+
+    /**
+     * 取排序后的第 offset 起 limit 条。命中集合占全集比例大时按排名顺序扫描，很快就能凑满一页；
+     * 比例小时（按排名扫描预计要跳过大量未命中的电影）只遍历命中位图，用大小为 offset + limit 的堆取前几名。
+     */
+    private List<Movie> page(Snapshot current, IdBitmap matched, int offset, int limit) {
+        int size = matched.cardinality();
+        if (limit <= 0 || offset >= size) return new ArrayList<>();
+        long wanted = (long) offset + limit;
+        // 按排名扫描的预计长度：凑够 wanted 个命中平均要看 wanted * 全集 / 命中 个ID
+        if (wanted * current.all().cardinality() / size > size) {
+            return topK(matched, offset, (int) Math.min(size, wanted));
+        }
+        List<Movie> page = new ArrayList<>(Math.min(limit, size));
+        int skipped = 0;
+        for (int movieId : rankOrder()) {
+            if (!matched.contains(movieId)) continue;
+            if (skipped++ < offset) continue;
+            Movie movie = catalog.get((long) movieId);
+            if (movie != null) page.add(movie);
+            if (page.size() >= limit) break;
+        }
+        return page;
+    }
+
+    private List<Movie> topK(IdBitmap matched, int offset, int k) {
+        // 堆顶为当前入选中排名最靠后的一部
+        PriorityQueue<Movie> heap = new PriorityQueue<>(k, RANK.reversed());
+        matched.forEach(movieId -> {
+            Movie movie = catalog.get((long) movieId);
+            if (movie == null) return;
+            if (heap.size() < k) {
+                heap.add(movie);
+            } else if (RANK.compare(movie, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(movie);
+            }
+        });
+        List<Movie> ranked = new ArrayList<>(heap);
+        ranked.sort(RANK);
+        return offset >= ranked.size() ? new ArrayList<>() : new ArrayList<>(ranked.subList(offset, ranked.size()));
+    }
+
+    private static Map<String, Integer> counts(Snapshot current, Facet facet, IdBitmap matched) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        current.postings(facet).forEach((valueId, bitmap) -> {
+            int count = matched.andCardinality(bitmap);
+            if (count > 0) entries.add(Map.entry(facet.labels.get(valueId), count));
+        });
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : entries) counts.put(e.getKey(), e.getValue());
+        return counts;
+    }
+
+    private int[] rankOrder() {
+        if (orderDirty) {
+            synchronized (this) {
+                if (orderDirty) {
+                    orderDirty = false;
+                    rankOrder = catalog.all().stream()
+                            .sorted(RANK)
+                            .mapToInt(m -> Math.toIntExact(m.getId()))
+                            .toArray();
+                }
+            }
+        }
+        return rankOrder;
+    }
+
+    private static List<String> split(String value) {
+        if (value == null || value.isBlank()) return List.of();
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(VALUE_SEPARATORS)) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty()) values.add(trimmed);
+        }
+        return values;
+    }
+
+    /**
+     * 评分段：无人评分的单独一段，其余按整数分段，6 分以下合并。
+     */
+    private static String ratingBucket(Movie movie) {
+        if (ratingCount(movie) == 0) return "unrated";
+        double score = rating(movie).doubleValue();
+        if (score >= 9) return "9-10";
+        if (score >= 8) return "8-9";
+        if (score >= 7) return "7-8";
+        if (score >= 6) return "6-7";
+        return "0-6";
+    }
+
+    private static BigDecimal rating(Movie movie) {
+        return movie.getRating() == null ? BigDecimal.ZERO : movie.getRating();
+    }
+
+    private static int ratingCount(Movie movie) {
+        return movie.getRatingCount() == null ? 0 : movie.getRatingCount();
+    }
+}
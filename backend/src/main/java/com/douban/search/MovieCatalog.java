@@ -0,0 +1,192 @@
+package com.douban.search;
+
+import com.douban.config.RedisPubSub;
+import com.douban.entity.Movie;
+import com.douban.mapper.MovieMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 电影内存目录：启动时从 movies 表全量加载，之后增量同步，供搜索索引等内存结构订阅。
+ *
+ * 同步来源有三个：
+ * 1. 本节点增删改电影后调用 {@link #movieChanged(Long)}，立即刷新并通过 Redis 通知其他节点；
+ * 2. 定时按 updated_at 拉取变化（评分变化、其他节点漏掉的通知）；
+ * 3. 定时全量重建，兜底处理删除等无法增量感知的变化。
+ *
+ * 目录中的 Movie 对象是共享的只读快照，调用方不要修改。
+ */
+@Component
+public class MovieCatalog {
+    private static final Logger log = LoggerFactory.getLogger(MovieCatalog.class);
+
+    public static final String CHANGE_CHANNEL = "douban:catalog:movie";
+    private static final int LOAD_BATCH = 1000;
+    // 拉取窗口向前重叠一段时间，覆盖“先更新、后提交”的事务
+    private static final Duration POLL_OVERLAP = Duration.ofSeconds(5);
+
+    /**
+     * 目录变化监听器。回调在目录的写锁内串行执行，实现应尽快返回。
+     */
+    public interface Listener {
+        void onRebuild(Collection<Movie> movies);
+
+        void onUpsert(Movie movie, Movie previous);
+
+        void onRemove(Movie previous);
+    }
+
+    private final MovieMapper movieMapper;
+    private final RedisPubSub pubSub;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Map<Long, Movie> movies = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+    private LocalDateTime lastSeenUpdate;
+    private volatile long lastRebuildAt;
+    private volatile long lastRebuildDurationMs;
+    private volatile long lastPollAt;
+
+    public MovieCatalog(MovieMapper movieMapper, RedisPubSub pubSub) {
+        this.movieMapper = movieMapper;
+        this.pubSub = pubSub;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        pubSub.subscribe(CHANGE_CHANNEL, message -> reload(Long.valueOf(message.trim())));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Movie get(Long id) {
+        return id == null ? null : movies.get(id);
+    }
+
+    public Collection<Movie> all() {
+        return Collections.unmodifiableCollection(movies.values());
+    }
+
+    public int size() {
+        return movies.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Failed to load movie catalog, search falls back to database: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${douban.search.rebuild-interval-ms:1800000}",
+            fixedDelayString = "${douban.search.rebuild-interval-ms:1800000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<Long, Movie> loaded = new HashMap<>();
+        LocalDateTime maxUpdate = null;
+        long afterId = 0;
+        while (true) {
+            List<Movie> batch = movieMapper.findBatchAfterId(afterId, LOAD_BATCH);
+            for (Movie movie : batch) {
+                loaded.put(movie.getId(), movie);
+                maxUpdate = later(maxUpdate, movie.getUpdatedAt());
+            }
+            if (batch.size() < LOAD_BATCH) break;
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+
+        movies.keySet().retainAll(loaded.keySet());
+        movies.putAll(loaded);
+        lastSeenUpdate = maxUpdate != null ? maxUpdate : LocalDateTime.now();
+        for (Listener listener : listeners) {
+            listener.onRebuild(movies.values());
+        }
+        ready = true;
+        lastRebuildAt = System.currentTimeMillis();
+        lastRebuildDurationMs = lastRebuildAt - start;
+        log.info("Movie catalog rebuilt: {} movies in {} ms", movies.size(), lastRebuildDurationMs);
+    }
+
+    @Scheduled(fixedDelayString = "${douban.search.poll-interval-ms:30000}")
+    public synchronized void pollChanges() {
+        if (!ready) return;
+        try {
+            List<Movie> changed = movieMapper.findUpdatedSince(lastSeenUpdate.minus(POLL_OVERLAP));
+            for (Movie movie : changed) {
+                Movie previous = movies.get(movie.getId());
+                if (previous == null || !Objects.equals(previous.getUpdatedAt(), movie.getUpdatedAt())) {
+                    apply(movie.getId(), movie);
+                }
+                lastSeenUpdate = later(lastSeenUpdate, movie.getUpdatedAt());
+            }
+            lastPollAt = System.currentTimeMillis();
+        } catch (Exception e) {
+            log.warn("Movie catalog poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 本节点修改了电影（新增 / 更新 / 删除）后调用。
+     */
+    public void movieChanged(Long id) {
+        if (id == null) return;
+        reload(id);
+        pubSub.publish(CHANGE_CHANNEL, String.valueOf(id));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("movies", movies.size());
+        stats.put("lastRebuildAt", lastRebuildAt);
+        stats.put("lastRebuildDurationMs", lastRebuildDurationMs);
+        stats.put("lastPollAt", lastPollAt);
+        return stats;
+    }
+
+    private synchronized void reload(Long id) {
+        if (!ready) return;
+        apply(id, movieMapper.findById(id));
+    }
+
+    private void apply(Long id, Movie fresh) {
+        if (fresh == null) {
+            Movie previous = movies.remove(id);
+            if (previous != null) {
+                for (Listener listener : listeners) {
+                    listener.onRemove(previous);
+                }
+            }
+            return;
+        }
+        Movie previous = movies.put(id, fresh);
+        for (Listener listener : listeners) {
+            listener.onUpsert(fresh, previous);
+        }
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return b.isAfter(a) ? b : a;
+    }
+}
@@ -0,0 +1,295 @@
+package com.douban.search;
+
+import com.douban.entity.Movie;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 电影搜索的内存倒排索引，覆盖片名、原名、导演、演员四个字段。
+ *
+ * 倒排表：词 → (电影ID → 命中字段位掩码)。词典有序，拉丁词可按前缀展开。
+ * 排序：相关度（按字段加权，前缀命中打折，片名完全一致额外加分）降序，
+ * 相关度相同时按评分、评分人数、ID 降序。
+ *
+ * 前缀展开最多取 MAX_PREFIX_EXPANSION 个词，按文档频率从高到低选（而不是按字典序取前面的），
+ * 展开词被截断时结果里的 truncated 为 true。
+ */
+@Component
+public class MovieSearchIndex implements MovieCatalog.Listener {
+
+    static final int TITLE = 1;
+    static final int ORIGINAL_TITLE = 1 << 1;
+    static final int DIRECTORS = 1 << 2;
+    static final int ACTORS = 1 << 3;
+
+    private static final float PREFIX_WEIGHT = 0.6f;
+    private static final float EXACT_TITLE_BONUS = 10f;
+    // 单个前缀最多展开的词数（按文档频率取最高的），以及为挑选而最多扫描的词数，防止一个字母的前缀扫描整个词典
+    private static final int MAX_PREFIX_EXPANSION = 256;
+    private static final int MAX_PREFIX_SCAN = 16_384;
+
+    /**
+     * @param truncated 有前缀词的展开被截断，结果可能不完整
+     */
+    public record SearchHits(List<Movie> movies, int total, boolean truncated) {
+    }
+
+    private record Matched(List<Scored> scored, boolean truncated) {
+    }
+
+    // 展开候选：倒排表及挑选时的文档频率（倒排表可能被并发修改，堆里按快照比较）
+    private record Expansion(Map<Long, Integer> posting, int df) {
+    }
+
+    private record Entry(Movie movie, String[] fields, Map<String, Integer> terms) {
+    }
+
+    private record Scored(Entry entry, float score) {
+    }
+
+    private static final class Segment {
+        final ConcurrentSkipListMap<String, ConcurrentHashMap<Long, Integer>> postings = new ConcurrentSkipListMap<>();
+        final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    }
+
+    private static final Comparator<Scored> ORDER = Comparator
+            .comparingDouble((Scored s) -> s.score).reversed()
+            .thenComparing((Scored s) -> rating(s.entry.movie), Comparator.reverseOrder())
+            .thenComparing((Scored s) -> ratingCount(s.entry.movie), Comparator.reverseOrder())
+            .thenComparing((Scored s) -> s.entry.movie.getId(), Comparator.reverseOrder());
+
+    private final MovieCatalog catalog;
+    private volatile Segment segment = new Segment();
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAdder truncatedQueries = new LongAdder();
+
+    public MovieSearchIndex(MovieCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @PostConstruct
+    public void register() {
+        catalog.addListener(this);
+    }
+
+    public boolean isReady() {
+        return catalog.isReady();
+    }
+
+    @Override
+    public void onRebuild(Collection<Movie> movies) {
+        Segment fresh = new Segment();
+        for (Movie movie : movies) {
+            add(fresh, movie);
+        }
+        segment = fresh;
+    }
+
+    @Override
+    public void onUpsert(Movie movie, Movie previous) {
+        Segment current = segment;
+        remove(current, movie.getId());
+        add(current, movie);
+    }
+
+    @Override
+    public void onRemove(Movie previous) {
+        remove(segment, previous.getId());
+    }
+
+    public SearchHits search(String keyword, int offset, int limit) {
+        long start = System.nanoTime();
+        try {
+            String normalized = Tokenizer.normalize(keyword).trim();
+            Tokenizer.Query query = Tokenizer.parseQuery(normalized);
+            if (query.isEmpty()) {
+                return new SearchHits(List.of(), 0, false);
+            }
+            Segment current = segment;
+            Matched result = match(current, query, normalized);
+            if (result.truncated()) truncatedQueries.increment();
+            List<Scored> matched = result.scored();
+            matched.sort(ORDER);
+
+            int from = Math.min(Math.max(0, offset), matched.size());
+            int to = Math.min(matched.size(), from + Math.max(0, limit));
+            List<Movie> page = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                page.add(matched.get(i).entry.movie);
+            }
+            return new SearchHits(page, matched.size(), result.truncated());
+        } finally {
+            queries.increment();
+            queryNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Segment current = segment;
+        long count = queries.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("documents", current.entries.size());
+        stats.put("terms", current.postings.size());
+        stats.put("queries", count);
+        stats.put("truncatedQueries", truncatedQueries.sum());
+        stats.put("avgQueryMicros", count == 0 ? 0d : queryNanos.sum() / 1000d / count);
+        stats.put("catalog", catalog.stats());
+        return stats;
+    }
+
+    private Matched match(Segment current, Tokenizer.Query query, String normalized) {
+        // 先处理文档频率低的精确词，尽早缩小候选集；前缀词放最后
+        List<Tokenizer.Term> terms = new ArrayList<>(query.terms());
+        terms.sort(Comparator.comparingInt((Tokenizer.Term t) -> t.prefix() ? Integer.MAX_VALUE : documentFrequency(current, t.text())));
+
+        Map<Long, Float> scores = null;
+        boolean truncated = false;
+        for (Tokenizer.Term term : terms) {
+            Map<Long, Float> termScores = new HashMap<>();
+            collect(current.postings.get(term.text()), 1f, termScores, scores);
+            if (term.prefix()) {
+                truncated |= expandPrefix(current, term.text(), termScores, scores);
+            }
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<Long, Float> merged = new HashMap<>();
+                for (Map.Entry<Long, Float> e : termScores.entrySet()) {
+                    merged.put(e.getKey(), scores.get(e.getKey()) + e.getValue());
+                }
+                scores = merged;
+            }
+            if (scores.isEmpty()) break;
+        }
+
+        List<Scored> matched = new ArrayList<>(scores == null ? 0 : scores.size());
+        if (scores == null) return new Matched(matched, truncated);
+        for (Map.Entry<Long, Float> e : scores.entrySet()) {
+            Entry entry = current.entries.get(e.getKey());
+            if (entry == null || !containsPhrases(entry, query.phrases())) continue;
+            float score = e.getValue();
+            if (normalized.equals(entry.fields[0]) || normalized.equals(entry.fields[1])) {
+                score += EXACT_TITLE_BONUS;
+            }
+            matched.add(new Scored(entry, score));
+        }
+        return new Matched(matched, truncated);
+    }
+
+    /**
+     * 以 prefix 开头的词中挑文档频率最高的 MAX_PREFIX_EXPANSION 个累加到 termScores（小顶堆，按频率淘汰）。
+     * 返回是否有词因数量上限被丢弃。
+     */
+    private static boolean expandPrefix(Segment current, String prefix, Map<Long, Float> termScores, Map<Long, Float> candidates) {
+        PriorityQueue<Expansion> top = new PriorityQueue<>(Comparator.comparingInt(Expansion::df));
+        int scanned = 0;
+        boolean truncated = false;
+        for (ConcurrentHashMap<Long, Integer> posting
+                : current.postings.subMap(prefix, false, prefix + Character.MAX_VALUE, false).values()) {
+            if (++scanned > MAX_PREFIX_SCAN) {
+                truncated = true;
+                break;
+            }
+            int df = posting.size();
+            if (top.size() < MAX_PREFIX_EXPANSION) {
+                top.add(new Expansion(posting, df));
+            } else {
+                truncated = true;
+                if (df > top.peek().df()) {
+                    top.poll();
+                    top.add(new Expansion(posting, df));
+                }
+            }
+        }
+        for (Expansion e : top) {
+            collect(e.posting(), PREFIX_WEIGHT, termScores, candidates);
+        }
+        return truncated;
+    }
+
+    /**
+     * 把一个词的倒排表累加到 termScores；candidates 不为 null 时只保留已有候选（AND 语义）。
+     * 同一文档多个展开词命中时取最大权重。
+     */
+    private static void collect(Map<Long, Integer> posting, float weight, Map<Long, Float> termScores, Map<Long, Float> candidates) {
+        if (posting == null) return;
+        for (Map.Entry<Long, Integer> e : posting.entrySet()) {
+            if (candidates != null && !candidates.containsKey(e.getKey())) continue;
+            float score = weight * fieldBoost(e.getValue());
+            termScores.merge(e.getKey(), score, Math::max);
+        }
+    }
+
+    private static boolean containsPhrases(Entry entry, List<String> phrases) {
+        for (String phrase : phrases) {
+            boolean found = false;
+            for (String field : entry.fields) {
+                if (field.contains(phrase)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private static int documentFrequency(Segment current, String term) {
+        Map<Long, Integer> posting = current.postings.get(term);
+        return posting == null ? 0 : posting.size();
+    }
+
+    private static float fieldBoost(int mask) {
+        if ((mask & TITLE) != 0) return 3f;
+        if ((mask & ORIGINAL_TITLE) != 0) return 2.5f;
+        if ((mask & DIRECTORS) != 0) return 1.5f;
+        return 1f;
+    }
+
+    private static void add(Segment current, Movie movie) {
+        String[] fields = {
+                Tokenizer.normalize(movie.getTitle()),
+                Tokenizer.normalize(movie.getOriginalTitle()),
+                Tokenizer.normalize(movie.getDirectors()),
+                Tokenizer.normalize(movie.getActors())
+        };
+        int[] masks = {TITLE, ORIGINAL_TITLE, DIRECTORS, ACTORS};
+        Map<String, Integer> terms = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            for (String token : Tokenizer.indexTokens(fields[i])) {
+                terms.merge(token, masks[i], (a, b) -> a | b);
+            }
+        }
+        Long id = movie.getId();
+        current.entries.put(id, new Entry(movie, fields, terms));
+        terms.forEach((term, mask) ->
+                current.postings.computeIfAbsent(term, k -> new ConcurrentHashMap<>()).put(id, mask));
+    }
+
+    private static void remove(Segment current, Long id) {
+        Entry entry = current.entries.remove(id);
+        if (entry == null) return;
+        for (String term : entry.terms.keySet()) {
+            current.postings.computeIfPresent(term, (k, posting) -> {
+                posting.remove(id);
+                return posting.isEmpty() ? null : posting;
+            });
+        }
+    }
+
+    private static BigDecimal rating(Movie movie) {
+        return movie.getRating() == null ? BigDecimal.ZERO : movie.getRating();
+    }
+
+    private static int ratingCount(Movie movie) {
+        return movie.getRatingCount() == null ? 0 : movie.getRatingCount();
+    }
+}
@@ -0,0 +1,179 @@
+package com.douban.search;
+
+import com.douban.entity.Movie;
+import com.douban.service.RankingService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 搜索联想：基于电影目录构建的前缀树，候选包括片名（含原名）、导演、演员。
+ *
+ * 候选权重由热度分值与评分人数决定；人名候选取其所有作品权重之和。
+ * 目录变化只标记为脏，由定时任务合并重建（前缀树不可变，重建后整体替换），
+ * 热度分值变化较慢，按固定间隔刷新一次。
+ */
+@Component
+public class MovieSuggester implements MovieCatalog.Listener {
+    private static final Logger log = LoggerFactory.getLogger(MovieSuggester.class);
+
+    public static final int MAX_LIMIT = 10;
+    private static final int HOT_SCORE_LIMIT = 10_000;
+
+    public record Suggestion(String type, String text, Long movieId, String subtitle, Integer year, String poster) {
+    }
+
+    private record Snapshot(SuggestionTrie trie, List<Suggestion> items) {
+    }
+
+    private final MovieCatalog catalog;
+    private final RankingService rankingService;
+
+    private volatile Snapshot snapshot = new Snapshot(SuggestionTrie.empty(), List.of());
+    private volatile boolean dirty;
+    private volatile long lastBuildAt;
+    private volatile long lastBuildDurationMs;
+
+    public MovieSuggester(MovieCatalog catalog, RankingService rankingService) {
+        this.catalog = catalog;
+        this.rankingService = rankingService;
+    }
+
+    @PostConstruct
+    public void register() {
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void onRebuild(Collection<Movie> movies) {
+        dirty = true;
+    }
+
+    @Override
+    public void onUpsert(Movie movie, Movie previous) {
+        if (previous == null
+                || !Objects.equals(movie.getTitle(), previous.getTitle())
+                || !Objects.equals(movie.getOriginalTitle(), previous.getOriginalTitle())
+                || !Objects.equals(movie.getDirectors(), previous.getDirectors())
+                || !Objects.equals(movie.getActors(), previous.getActors())) {
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void onRemove(Movie previous) {
+        dirty = true;
+    }
+
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = Tokenizer.normalize(prefix).trim();
+        if (normalized.isEmpty()) return List.of();
+        Snapshot current = snapshot;
+        int[] hits = current.trie.complete(normalized, Math.min(MAX_LIMIT, Math.max(1, limit)));
+        List<Suggestion> result = new ArrayList<>(hits.length);
+        for (int item : hits) {
+            result.add(current.items.get(item));
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelay = 5000)
+    public void rebuildIfDirty() {
+        if (dirty && catalog.isReady()) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${douban.search.suggest-refresh-ms:300000}")
+    public void refreshWeights() {
+        if (catalog.isReady()) {
+            rebuild();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("suggestions", current.items.size());
+        stats.put("trieNodes", current.trie.nodeCount());
+        stats.put("lastBuildAt", lastBuildAt);
+        stats.put("lastBuildDurationMs", lastBuildDurationMs);
+        return stats;
+    }
+
+    private synchronized void rebuild() {
+        dirty = false;
+        long start = System.currentTimeMillis();
+        Map<Long, Double> hot = rankingService.getHotScores(HOT_SCORE_LIMIT);
+
+        List<Suggestion> items = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        Map<String, List<Integer>> keys = new HashMap<>();
+        Map<String, Integer> people = new HashMap<>();
+
+        for (Movie movie : catalog.all()) {
+            double weight = weight(movie, hot.getOrDefault(movie.getId(), 0d));
+            int item = items.size();
+            items.add(new Suggestion("movie", movie.getTitle(), movie.getId(),
+                    movie.getOriginalTitle(), movie.getYear(), movie.getPoster()));
+            weights.add(weight);
+            addKeys(keys, movie.getTitle(), item);
+            addKeys(keys, movie.getOriginalTitle(), item);
+
+            addPeople(keys, people, items, weights, "director", movie.getDirectors(), weight);
+            addPeople(keys, people, items, weights, "actor", movie.getActors(), weight);
+        }
+
+        double[] w = weights.stream().mapToDouble(Double::doubleValue).toArray();
+        snapshot = new Snapshot(SuggestionTrie.build(keys, w, MAX_LIMIT), List.copyOf(items));
+        lastBuildAt = System.currentTimeMillis();
+        lastBuildDurationMs = lastBuildAt - start;
+        log.debug("Suggestion trie rebuilt: {} suggestions in {} ms", items.size(), lastBuildDurationMs);
+    }
+
+    private static void addPeople(Map<String, List<Integer>> keys, Map<String, Integer> people,
+                                  List<Suggestion> items, List<Double> weights,
+                                  String type, String names, double weight) {
+        if (names == null || names.isBlank()) return;
+        for (String raw : names.split("[,，/、;；]")) {
+            String name = raw.trim();
+            if (name.isEmpty()) continue;
+            String id = type + ":" + Tokenizer.normalize(name);
+            Integer item = people.get(id);
+            if (item == null) {
+                item = items.size();
+                people.put(id, item);
+                items.add(new Suggestion(type, name, null, null, null, null));
+                weights.add(0d);
+                addKeys(keys, name, item);
+            }
+            weights.set(item, weights.get(item) + weight);
+        }
+    }
+
+    /**
+     * 整个文本作为一个键；拉丁文本额外从每个单词开头各建一个键，
+     * 这样输入 “shawshank” 也能联想到 “The Shawshank Redemption”。
+     */
+    private static void addKeys(Map<String, List<Integer>> keys, String text, int item) {
+        String normalized = Tokenizer.normalize(text).trim();
+        if (normalized.isEmpty()) return;
+        keys.computeIfAbsent(normalized, k -> new ArrayList<>()).add(item);
+        for (int i = 1; i < normalized.length(); i++) {
+            char prev = normalized.charAt(i - 1);
+            char c = normalized.charAt(i);
+            if (!Character.isLetterOrDigit(prev) && Character.isLetterOrDigit(c) && c < 0x2E80) {
+                keys.computeIfAbsent(normalized.substring(i), k -> new ArrayList<>()).add(item);
+            }
+        }
+    }
+
+    private static double weight(Movie movie, double hotScore) {
+        int ratingCount = movie.getRatingCount() == null ? 0 : movie.getRatingCount();
+        return 2 * Math.log1p(Math.max(0, hotScore)) + Math.log1p(ratingCount);
+    }
+}
@@ -0,0 +1,142 @@
+package com.douban.search;
+
+import java.util.*;
+
+/**
+ * 不可变的压缩前缀树（radix trie），每个节点预先保存以该节点为前缀的权重最高的 k 个候选。
+ *
+ * 查询只需沿前缀走到对应节点，直接返回节点上的 top-k，与候选总数无关。
+ * 构建时先把 (key, 候选下标) 按 key 排序，再按公共前缀递归切分区间建树。
+ */
+final class SuggestionTrie {
+
+    private static final class Node {
+        final String label;
+        final Node[] children;
+        final int[] top;
+
+        Node(String label, Node[] children, int[] top) {
+            this.label = label;
+            this.children = children;
+            this.top = top;
+        }
+    }
+
+    private record Key(String text, int item) {
+    }
+
+    private final Node root;
+    private final int nodeCount;
+
+    private SuggestionTrie(Node root, int nodeCount) {
+        this.root = root;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @param keys    已归一化的前缀键 → 候选下标
+     * @param weights 候选权重（下标即候选编号）
+     * @param k       每个节点保留的候选数
+     */
+    static SuggestionTrie build(Map<String, ? extends Collection<Integer>> keys, double[] weights, int k) {
+        List<Key> sorted = new ArrayList<>();
+        keys.forEach((text, items) -> {
+            if (text.isEmpty()) return;
+            for (Integer item : items) sorted.add(new Key(text, item));
+        });
+        sorted.sort(Comparator.comparing(Key::text));
+        int[] counter = {0};
+        Node root = build(sorted, 0, sorted.size(), 0, "", weights, k, counter);
+        return new SuggestionTrie(root, counter[0]);
+    }
+
+    static SuggestionTrie empty() {
+        return new SuggestionTrie(new Node("", new Node[0], new int[0]), 1);
+    }
+
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * 返回前缀对应节点上的候选下标（按权重降序），最多 limit 个。
+     */
+    int[] complete(String prefix, int limit) {
+        Node node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            Node child = findChild(node, prefix.charAt(pos));
+            if (child == null) return new int[0];
+            String label = child.label;
+            int n = Math.min(label.length(), prefix.length() - pos);
+            if (!prefix.regionMatches(pos, label, 0, n)) return new int[0];
+            pos += n;
+            node = child;
+        }
+        return Arrays.copyOf(node.top, Math.min(limit, node.top.length));
+    }
+
+    private static Node findChild(Node node, char c) {
+        int lo = 0, hi = node.children.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = node.children[mid].label.charAt(0);
+            if (first < c) lo = mid + 1;
+            else if (first > c) hi = mid - 1;
+            else return node.children[mid];
+        }
+        return null;
+    }
+
+    /**
+     * 为 [from, to) 区间建节点；区间内所有 key 共享前 depth 个字符。
+     */
+    private static Node build(List<Key> keys, int from, int to, int depth, String label,
+                              double[] weights, int k, int[] counter) {
+        counter[0]++;
+        List<Integer> here = new ArrayList<>();
+        int i = from;
+        // 恰好在此节点结束的 key
+        while (i < to && keys.get(i).text.length() == depth) {
+            here.add(keys.get(i).item);
+            i++;
+        }
+
+        List<Node> children = new ArrayList<>();
+        while (i < to) {
+            char c = keys.get(i).text.charAt(depth);
+            int j = i + 1;
+            while (j < to && keys.get(j).text.charAt(depth) == c) j++;
+            // 该分组的公共前缀长度（压缩单分支路径）
+            int end = commonPrefixEnd(keys, i, j, depth);
+            String edge = keys.get(i).text.substring(depth, end);
+            children.add(build(keys, i, j, end, edge, weights, k, counter));
+            i = j;
+        }
+
+        int[] top = topK(here, children, weights, k);
+        return new Node(label, children.toArray(new Node[0]), top);
+    }
+
+    private static int commonPrefixEnd(List<Key> keys, int from, int to, int depth) {
+        String first = keys.get(from).text;
+        String last = keys.get(to - 1).text;
+        int end = depth;
+        int max = Math.min(first.length(), last.length());
+        // 已排序，首尾两个 key 的公共前缀即整个区间的公共前缀
+        while (end < max && first.charAt(end) == last.charAt(end)) end++;
+        return end;
+    }
+
+    private static int[] topK(List<Integer> here, List<Node> children, double[] weights, int k) {
+        LinkedHashSet<Integer> candidates = new LinkedHashSet<>(here);
+        for (Node child : children) {
+            for (int item : child.top) candidates.add(item);
+        }
+        return candidates.stream()
+                .sorted((a, b) -> Double.compare(weights[b], weights[a]))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
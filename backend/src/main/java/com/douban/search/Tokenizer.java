@@ -0,0 +1,117 @@
+package com.douban.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 搜索分词：中日韩文字按单字 + 相邻二元组切分，拉丁字母与数字按词切分，其余字符视为分隔符。
+ *
+ * 文本先做 NFKC 归一化（全角转半角等）并转小写，索引与查询使用同一套规则。
+ */
+final class Tokenizer {
+
+    /**
+     * 查询词。prefix 为 true 时按前缀匹配（拉丁词，支持边输边搜）。
+     */
+    record Term(String text, boolean prefix) {
+    }
+
+    /**
+     * 解析后的查询：terms 之间为 AND；phrases 为长度不小于 3 的中文片段，
+     * 二元组命中后还需校验片段在某个字段中连续出现，避免 “ab…bc” 误命中 “abc”。
+     */
+    record Query(List<Term> terms, List<String> phrases) {
+        boolean isEmpty() {
+            return terms.isEmpty();
+        }
+    }
+
+    private Tokenizer() {
+    }
+
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 索引分词，输入需已归一化。
+     */
+    static Set<String> indexTokens(String normalized) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String run : cjkRuns(normalized)) {
+            int[] cps = run.codePoints().toArray();
+            for (int i = 0; i < cps.length; i++) {
+                tokens.add(new String(cps, i, 1));
+                if (i + 1 < cps.length) {
+                    tokens.add(new String(cps, i, 2));
+                }
+            }
+        }
+        tokens.addAll(words(normalized));
+        return tokens;
+    }
+
+    /**
+     * 查询分词，输入需已归一化。
+     */
+    static Query parseQuery(String normalized) {
+        List<Term> terms = new ArrayList<>();
+        List<String> phrases = new ArrayList<>();
+        for (String run : cjkRuns(normalized)) {
+            int[] cps = run.codePoints().toArray();
+            if (cps.length == 1) {
+                terms.add(new Term(run, false));
+                continue;
+            }
+            for (int i = 0; i + 1 < cps.length; i++) {
+                terms.add(new Term(new String(cps, i, 2), false));
+            }
+            if (cps.length >= 3) {
+                phrases.add(run);
+            }
+        }
+        for (String word : words(normalized)) {
+            terms.add(new Term(word, true));
+        }
+        return new Query(List.copyOf(new LinkedHashSet<>(terms)), phrases);
+    }
+
+    private static List<String> cjkRuns(String text) {
+        return runs(text, true);
+    }
+
+    private static List<String> words(String text) {
+        return runs(text, false);
+    }
+
+    private static List<String> runs(String text, boolean cjk) {
+        List<String> runs = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        text.codePoints().forEach(cp -> {
+            boolean inRun = cjk ? isCjk(cp) : !isCjk(cp) && Character.isLetterOrDigit(cp);
+            if (inRun) {
+                current.appendCodePoint(cp);
+            } else if (!current.isEmpty()) {
+                runs.add(current.toString());
+                current.setLength(0);
+            }
+        });
+        if (!current.isEmpty()) {
+            runs.add(current.toString());
+        }
+        return runs;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -1,10 +1,10 @@
 package com.douban.service;
 
+import com.douban.cache.UserBasicCache;
 import com.douban.dto.*;
 import com.douban.entity.User;
 import com.douban.mapper.UserMapper;
 import com.douban.util.JwtUtil;
-import com.douban.util.PasswordUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,6 +17,12 @@ public class AuthService {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private UserBasicCache userBasicCache;
+
+    @Autowired
+    private PasswordService passwordService;
+
     public AuthResponse register(RegisterRequest request) {
         if (userMapper.countByUsername(request.getUsername()) > 0) {
             throw new RuntimeException("用户名已存在");
@@ -28,7 +34,7 @@ public class AuthService {
         User user = new User();
         user.setUsername(request.getUsername());
         user.setEmail(request.getEmail());
-        user.setPasswordHash(PasswordUtil.hashPassword(request.getPassword()));
+        user.setPasswordHash(passwordService.hash(request.getPassword()));
         user.setRole("USER");
         user.setStatus("ACTIVE");
         user.setAvatar("https://img.icons8.com/fluency/96/user-male-circle.png");
@@ -54,9 +60,14 @@ public class AuthService {
             throw new RuntimeException("账户已停用");
         }
 
-        if (!PasswordUtil.verifyPassword(request.getPassword(), user.getPasswordHash())) {
+        PasswordService.Verification verification = passwordService.verify(request.getPassword(), user.getPasswordHash());
+        if (!verification.matched()) {
             throw new RuntimeException("密码错误");
         }
+        if (verification.upgradedHash() != null) {
+            // 旧格式或低成本哈希：登录成功时透明升级；期间密码被修改过则不更新（影响 0 行，忽略）
+            userMapper.upgradePasswordHash(user.getId(), user.getPasswordHash(), verification.upgradedHash());
+        }
 
         String token = jwtUtil.generateToken(user.getId(), user.getUsername(), user.getRole());
         return new AuthResponse(token, UserDTO.fromEntity(user));
@@ -90,6 +101,7 @@ public class AuthService {
         }
 
         userMapper.update(user);
+        userBasicCache.evict(userId);
         return UserDTO.fromEntity(user);
     }
 
@@ -104,9 +116,9 @@ public class AuthService {
         if (newPassword == null || newPassword.length() < 6) {
             throw new RuntimeException("新密码至少6位");
         }
-        if (!PasswordUtil.verifyPassword(oldPassword, user.getPasswordHash())) {
+        if (!passwordService.matches(oldPassword, user.getPasswordHash())) {
             throw new RuntimeException("旧密码不正确");
         }
-        userMapper.updatePasswordHash(userId, PasswordUtil.hashPassword(newPassword));
+        userMapper.updatePasswordHash(userId, passwordService.hash(newPassword));
     }
 }
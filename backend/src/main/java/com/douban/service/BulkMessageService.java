@@ -0,0 +1,329 @@
+package com.douban.service;
+
+import com.douban.counter.UnreadCounter;
+import com.douban.dto.BulkMessageRequest;
+import com.douban.entity.SiteMessage;
+import com.douban.mapper.SiteMessageMapper;
+import com.douban.mapper.UserMapper;
+import com.douban.websocket.MessageRelay;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量站内信：作为后台任务执行，提交后立即返回任务ID，进度通过 {@link #status(long)} 查询。
+ *
+ * 接收人按用户ID键集分批读取（不一次性载入内存），每批一条多行 INSERT 写入 site_messages，
+ * 一次 pipeline 给这批接收人的未读数加 1，再按 push-per-second 限速逐条推送消息和新的未读数；
+ * 推送失败不影响已入库的消息。任务在单线程执行器中排队，
+ * 队列满时拒绝提交（返回 503）。批量消息不逐个失效接收人的站内信总数缓存，总数在缓存过期后追上。
+ */
+@Service
+public class BulkMessageService {
+    private static final Logger log = LoggerFactory.getLogger(BulkMessageService.class);
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private static final int MAX_RECEIVER_IDS = 100_000;
+    // 保留的已结束任务数，更早的任务状态丢弃
+    private static final int MAX_FINISHED_JOBS = 50;
+
+    private static final class Job {
+        final long id;
+        final Long senderId;
+        final String title;
+        final String content;
+        final long[] receiverIds;
+        final String role;
+        final String status;
+        final Long movieId;
+        final LocalDateTime createdAt = LocalDateTime.now();
+
+        volatile State state = State.QUEUED;
+        volatile boolean cancelled;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+        volatile long startedNanos;
+        volatile long elapsedNanos;
+        volatile String error;
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong inserted = new AtomicLong();
+        final AtomicLong pushed = new AtomicLong();
+        final AtomicLong pushFailed = new AtomicLong();
+
+        Job(long id, Long senderId, BulkMessageRequest request, long[] receiverIds) {
+            this.id = id;
+            this.senderId = senderId;
+            this.title = request.getTitle();
+            this.content = request.getContent();
+            this.receiverIds = receiverIds;
+            this.role = blankToNull(request.getRole());
+            this.status = blankToNull(request.getStatus());
+            this.movieId = request.getMovieId();
+        }
+
+        boolean finished() {
+            return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+        }
+
+        Map<String, Object> snapshot() {
+            long nanos = state == State.RUNNING ? System.nanoTime() - startedNanos : elapsedNanos;
+            Map<String, Object> target = new LinkedHashMap<>();
+            if (receiverIds != null) {
+                target.put("receivers", receiverIds.length);
+            } else {
+                target.put("role", role);
+                target.put("status", status);
+                target.put("movieId", movieId);
+            }
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("jobId", id);
+            snapshot.put("state", state.name());
+            snapshot.put("title", title);
+            snapshot.put("target", target);
+            snapshot.put("scanned", scanned.get());
+            snapshot.put("skipped", skipped.get());
+            snapshot.put("inserted", inserted.get());
+            snapshot.put("pushed", pushed.get());
+            snapshot.put("pushFailed", pushFailed.get());
+            snapshot.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(nanos));
+            snapshot.put("insertedPerSecond", nanos > 0 ? Math.round(inserted.get() * 1e9 / nanos) : 0);
+            snapshot.put("createdAt", createdAt);
+            snapshot.put("startedAt", startedAt);
+            snapshot.put("finishedAt", finishedAt);
+            snapshot.put("error", error);
+            return snapshot;
+        }
+    }
+
+    private final SiteMessageMapper siteMessageMapper;
+    private final UserMapper userMapper;
+    private final MessageRelay messageRelay;
+    private final NotificationService notificationService;
+    private final UnreadCounter unreadCounter;
+
+    @Value("${douban.message.bulk.batch-size:500}")
+    private int batchSize;
+
+    @Value("${douban.message.bulk.push-per-second:1000}")
+    private int pushPerSecond;
+
+    @Value("${douban.message.bulk.queue-capacity:8}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+    private final AtomicLong jobSeq = new AtomicLong();
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+
+    public BulkMessageService(SiteMessageMapper siteMessageMapper, UserMapper userMapper, MessageRelay messageRelay,
+                              NotificationService notificationService, UnreadCounter unreadCounter) {
+        this.siteMessageMapper = siteMessageMapper;
+        this.userMapper = userMapper;
+        this.messageRelay = messageRelay;
+        this.notificationService = notificationService;
+        this.unreadCounter = unreadCounter;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bulk-message");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.cancelled = true);
+        executor.shutdownNow();
+    }
+
+    public Map<String, Object> submit(Long senderId, BulkMessageRequest request) {
+        if (request.getTitle() == null || request.getTitle().isBlank()) {
+            throw new IllegalArgumentException("标题不能为空");
+        }
+        if (request.getContent() == null || request.getContent().isBlank()) {
+            throw new IllegalArgumentException("内容不能为空");
+        }
+        long[] receiverIds = null;
+        if (request.getReceiverIds() != null && !request.getReceiverIds().isEmpty()) {
+            receiverIds = request.getReceiverIds().stream()
+                    .filter(Objects::nonNull).mapToLong(Long::longValue).distinct().sorted().toArray();
+            if (receiverIds.length > MAX_RECEIVER_IDS) {
+                throw new IllegalArgumentException("接收人数量不能超过 " + MAX_RECEIVER_IDS + "，请改用分群条件");
+            }
+        } else if (blankToNull(request.getRole()) == null && blankToNull(request.getStatus()) == null
+                && request.getMovieId() == null) {
+            throw new IllegalArgumentException("请指定接收人或分群条件（全站通知请使用公告广播）");
+        }
+
+        Job job = new Job(jobSeq.incrementAndGet(), senderId, request, receiverIds);
+        pruneFinished();
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new RejectedExecutionException("批量发送任务过多，请稍后再试");
+        }
+        return job.snapshot();
+    }
+
+    public Map<String, Object> status(long jobId) {
+        return requireJob(jobId).snapshot();
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Job> all = new ArrayList<>(jobs.values());
+        all.sort(Comparator.comparingLong((Job j) -> j.id).reversed());
+        List<Map<String, Object>> list = new ArrayList<>(all.size());
+        for (Job job : all) list.add(job.snapshot());
+        return list;
+    }
+
+    /**
+     * 取消排队中或执行中的任务；已写入的批次保留。
+     */
+    public Map<String, Object> cancel(long jobId) {
+        Job job = requireJob(jobId);
+        // 排队中的任务开始执行时直接结束，执行中的任务在当前这条推送之后停止
+        job.cancelled = true;
+        return job.snapshot();
+    }
+
+    private Job requireJob(long jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) throw new IllegalArgumentException("任务不存在");
+        return job;
+    }
+
+    private void run(Job job) {
+        if (job.cancelled) {
+            job.state = State.CANCELLED;
+            job.finishedAt = LocalDateTime.now();
+            return;
+        }
+        job.startedAt = LocalDateTime.now();
+        job.startedNanos = System.nanoTime();
+        job.state = State.RUNNING;
+        try {
+            if (job.receiverIds != null) {
+                runForList(job);
+            } else {
+                runForSegment(job);
+            }
+            job.state = job.cancelled ? State.CANCELLED : State.DONE;
+        } catch (Exception e) {
+            if (job.cancelled && e instanceof InterruptedException) {
+                job.state = State.CANCELLED;
+            } else {
+                job.error = e.getMessage();
+                job.state = State.FAILED;
+                log.warn("Bulk message job {} failed after {} messages: {}", job.id, job.inserted.get(), e.getMessage());
+            }
+        } finally {
+            job.elapsedNanos = System.nanoTime() - job.startedNanos;
+            job.finishedAt = LocalDateTime.now();
+            log.info("Bulk message job {} {}: {} inserted, {} pushed in {} ms", job.id, job.state,
+                    job.inserted.get(), job.pushed.get(), TimeUnit.NANOSECONDS.toMillis(job.elapsedNanos));
+        }
+    }
+
+    private void runForList(Job job) throws InterruptedException {
+        long[] ids = job.receiverIds;
+        for (int from = 0; from < ids.length && !job.cancelled; from += batchSize) {
+            List<Long> chunk = new ArrayList<>(batchSize);
+            for (int i = from; i < Math.min(ids.length, from + batchSize); i++) chunk.add(ids[i]);
+            job.scanned.addAndGet(chunk.size());
+            List<Long> existing = userMapper.findExistingIds(chunk);
+            job.skipped.addAndGet(chunk.size() - existing.size());
+            deliver(job, existing);
+        }
+    }
+
+    private void runForSegment(Job job) throws InterruptedException {
+        long afterId = 0;
+        while (!job.cancelled) {
+            List<Long> recipients = userMapper.findIdsBySegment(job.role, job.status, job.movieId, afterId, batchSize);
+            if (recipients.isEmpty()) break;
+            job.scanned.addAndGet(recipients.size());
+            deliver(job, recipients);
+            afterId = recipients.get(recipients.size() - 1);
+        }
+    }
+
+    private void deliver(Job job, List<Long> recipients) throws InterruptedException {
+        if (recipients.isEmpty()) return;
+        LocalDateTime now = LocalDateTime.now();
+        List<SiteMessage> messages = new ArrayList<>(recipients.size());
+        for (Long receiverId : recipients) {
+            SiteMessage message = new SiteMessage();
+            message.setReceiverId(receiverId);
+            message.setSenderId(job.senderId);
+            message.setTitle(job.title);
+            message.setContent(job.content);
+            message.setStatus("UNREAD");
+            message.setCreatedAt(now);
+            messages.add(message);
+        }
+        siteMessageMapper.insertBatch(messages);
+        job.inserted.addAndGet(messages.size());
+        // 未读数不在 Redis 中的用户只推送消息，其未读数在下次读取时从数据库加载
+        Map<Long, Long> unread = unreadCounter.incrementAll(recipients);
+
+        for (SiteMessage message : messages) {
+            if (job.cancelled) return;
+            try {
+                messageRelay.sendToUser(message.getReceiverId(), "/queue/notice", message);
+                Long count = unread.get(message.getReceiverId());
+                if (count != null) notificationService.pushUnread(message.getReceiverId(), count);
+                job.pushed.incrementAndGet();
+            } catch (Exception e) {
+                job.pushFailed.incrementAndGet();
+            }
+            throttle(job);
+        }
+    }
+
+    /**
+     * 推送超前于 push-per-second 的进度时休眠，平滑推送速率。
+     */
+    private void throttle(Job job) throws InterruptedException {
+        if (pushPerSecond <= 0) return;
+        long sent = job.pushed.get() + job.pushFailed.get();
+        long dueNanos = sent * 1_000_000_000L / pushPerSecond;
+        long aheadMillis = TimeUnit.NANOSECONDS.toMillis(dueNanos - (System.nanoTime() - job.startedNanos));
+        if (aheadMillis > 0) Thread.sleep(aheadMillis);
+    }
+
+    private void pruneFinished() {
+        List<Job> finished = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.finished()) finished.add(job);
+        }
+        if (finished.size() < MAX_FINISHED_JOBS) return;
+        finished.sort(Comparator.comparingLong(j -> j.id));
+        for (int i = 0; i <= finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim().toUpperCase(Locale.ROOT);
+    }
+}
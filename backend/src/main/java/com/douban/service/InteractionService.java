@@ -1,5 +1,9 @@
 package com.douban.service;
 
+import com.douban.cache.CachedCounts;
+import com.douban.counter.CounterPipeline;
+import com.douban.dto.CursorPage;
+import com.douban.dto.PageCursor;
 import com.douban.dto.PageResult;
 import com.douban.entity.MovieCollection;
 import com.douban.entity.Rating;
@@ -9,12 +13,12 @@ import com.douban.mapper.MovieMapper;
 import com.douban.mapper.RatingMapper;
 import com.douban.mapper.ReviewMapper;
 import com.douban.mapper.ReviewLikeMapper;
+import com.douban.util.TransactionUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,10 +41,25 @@ public class InteractionService {
     @Autowired
     private MovieMapper movieMapper;
 
+    @Autowired
+    private CounterPipeline counterPipeline;
+
+    @Autowired
+    private MovieService movieService;
+
+    @Autowired
+    private CachedCounts cachedCounts;
+
+    @Autowired
+    private ReviewPageAssembler reviewPageAssembler;
+
+    @Autowired
+    private ReviewLeaderboard reviewLeaderboard;
+
     // 评分相关
     @Transactional
     public Rating rateMovie(Long userId, Long movieId, int score) {
-        Rating existing = ratingMapper.findByUserAndMovie(userId, movieId);
+        Rating existing = ratingMapper.findByUserAndMovieForUpdate(userId, movieId);
         Rating rating = new Rating();
         rating.setUserId(userId);
         rating.setMovieId(movieId);
@@ -48,12 +67,12 @@ public class InteractionService {
 
         if (existing != null) {
             ratingMapper.update(rating);
+            movieMapper.applyRatingDelta(movieId, score - existing.getScore(), 0);
         } else {
             ratingMapper.insert(rating);
+            movieMapper.applyRatingDelta(movieId, score, 1);
         }
-
-        // 更新电影平均评分
-        updateMovieRating(movieId);
+        movieService.invalidateMovie(movieId);
 
         return ratingMapper.findByUserAndMovie(userId, movieId);
     }
@@ -64,27 +83,116 @@ public class InteractionService {
 
     @Transactional
     public void removeRating(Long userId, Long movieId) {
-        ratingMapper.delete(userId, movieId);
-        updateMovieRating(movieId);
+        Rating existing = ratingMapper.findByUserAndMovieForUpdate(userId, movieId);
+        if (existing == null) {
+            return;
+        }
+        if (ratingMapper.delete(userId, movieId) > 0) {
+            movieMapper.applyRatingDelta(movieId, -existing.getScore(), -1);
+            movieService.invalidateMovie(movieId);
+        }
+    }
+
+    /**
+     * 管理员修改评分，返回 false 表示评分不存在。
+     */
+    @Transactional
+    public boolean adminUpdateRating(Long ratingId, int score) {
+        Rating existing = ratingMapper.findByIdForUpdate(ratingId);
+        if (existing == null) {
+            return false;
+        }
+        ratingMapper.adminUpdateScore(ratingId, score);
+        movieMapper.applyRatingDelta(existing.getMovieId(), score - existing.getScore(), 0);
+        movieService.invalidateMovie(existing.getMovieId());
+        return true;
     }
 
-    private void updateMovieRating(Long movieId) {
-        Double avgScore = ratingMapper.getAverageScore(movieId);
-        int count = ratingMapper.countByMovie(movieId);
-        BigDecimal rating = avgScore != null
-                ? BigDecimal.valueOf(avgScore).setScale(1, RoundingMode.HALF_UP)
-                : BigDecimal.ZERO;
-        movieMapper.updateRating(movieId, rating, count);
+    /**
+     * 管理员删除评分，返回 false 表示评分不存在。
+     */
+    @Transactional
+    public boolean adminDeleteRating(Long ratingId) {
+        Rating existing = ratingMapper.findByIdForUpdate(ratingId);
+        if (existing == null) {
+            return false;
+        }
+        if (ratingMapper.adminDelete(ratingId) > 0) {
+            movieMapper.applyRatingDelta(existing.getMovieId(), -existing.getScore(), -1);
+            movieService.invalidateMovie(existing.getMovieId());
+        }
+        return true;
     }
 
     // 评论相关
     public PageResult<Review> getMovieReviews(Long movieId, Long viewerId, int page, int size) {
         int offset = (page - 1) * size;
-        List<Review> reviews = reviewMapper.findByMovie(movieId, viewerId, size, offset);
-        int total = reviewMapper.countByMovie(movieId);
+        List<Review> reviews = reviewPageAssembler.assemble(reviewMapper.findByMovie(movieId, null, size, offset), viewerId, false);
+        long total = cachedCounts.get(CachedCounts.reviewsByMovie(movieId), () -> reviewMapper.countByMovie(movieId));
         return new PageResult<>(reviews, page, size, total);
     }
 
+    public CursorPage<Review> getMovieReviewsAfter(Long movieId, Long viewerId, String cursor, int size) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.TIME);
+        int safeSize = CursorPage.safeSize(size);
+        List<Review> fetched = reviewMapper.findByMovie(movieId, after, safeSize + 1, 0);
+        Long total = after == null
+                ? cachedCounts.get(CachedCounts.reviewsByMovie(movieId), () -> reviewMapper.countByMovie(movieId))
+                : null;
+        CursorPage<Review> result = CursorPage.of(fetched, safeSize, r -> PageCursor.byTime(r.getCreatedAt(), r.getId()), total);
+        reviewPageAssembler.assemble(result.getItems(), viewerId, false);
+        return result;
+    }
+
+    /**
+     * 评论点赞排行：从 Redis 排行榜按名次取一页ID，再批量取详情；排行榜不可用时按 like_count 查库（只有总榜）。
+     */
+    public PageResult<Review> getTopReviews(String window, Long viewerId, int page, int size) {
+        int safePage = Math.max(1, page);
+        int safeSize = CursorPage.safeSize(size);
+        TopPage top = loadTopReviews(ReviewLeaderboard.Window.parse(window), viewerId, (long) (safePage - 1) * safeSize, safeSize);
+        return new PageResult<>(top.items(), safePage, safeSize, top.total());
+    }
+
+    /**
+     * 排行按名次分页，游标记录偏移量。
+     */
+    public CursorPage<Review> getTopReviewsAfter(String window, Long viewerId, String cursor, int size) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.OFFSET);
+        long offset = after == null ? 0 : after.getCount();
+        int safeSize = CursorPage.safeSize(size);
+        TopPage top = loadTopReviews(ReviewLeaderboard.Window.parse(window), viewerId, offset, safeSize);
+        String next = offset + top.items().size() < top.total() && !top.items().isEmpty()
+                ? PageCursor.byOffset(offset + top.items().size()).encode()
+                : null;
+        return new CursorPage<>(top.items(), safeSize, next, after == null ? top.total() : null);
+    }
+
+    private record TopPage(List<Review> items, long total) {
+    }
+
+    private TopPage loadTopReviews(ReviewLeaderboard.Window window, Long viewerId, long offset, int size) {
+        ReviewLeaderboard.Ranked ranked = reviewLeaderboard.page(window, offset, size);
+        if (ranked == null) {
+            List<Review> rows = reviewMapper.findTopLiked(size, Math.toIntExact(offset));
+            long total = cachedCounts.get(CachedCounts.reviews(), reviewMapper::countAll);
+            return new TopPage(reviewPageAssembler.assemble(rows, viewerId, true), total);
+        }
+        if (ranked.reviewIds().isEmpty()) {
+            return new TopPage(List.of(), ranked.total());
+        }
+        Map<Long, Review> byId = new HashMap<>();
+        for (Review review : reviewMapper.findByIds(ranked.reviewIds())) {
+            byId.put(review.getId(), review);
+        }
+        List<Review> ordered = new ArrayList<>(ranked.reviewIds().size());
+        for (Long id : ranked.reviewIds()) {
+            Review review = byId.get(id);
+            if (review != null) ordered.add(review);
+        }
+        return new TopPage(reviewPageAssembler.assemble(ordered, viewerId, true), ranked.total());
+    }
+
     public Review createReview(Long userId, Long movieId, String title, String content) {
         Review review = new Review();
         review.setUserId(userId);
@@ -92,6 +200,8 @@ public class InteractionService {
         review.setTitle(title);
         review.setContent(content);
         reviewMapper.insert(review);
+        cachedCounts.evict(CachedCounts.reviewsByMovie(movieId));
+        reviewLeaderboard.reviewCreated(review.getId());
         return reviewMapper.findById(review.getId(), userId);
     }
 
@@ -100,8 +210,19 @@ public class InteractionService {
         if (affected == 0) {
             throw new RuntimeException("评论不存在或无权删除");
         }
+        reviewLeaderboard.reviewDeleted(reviewId);
+    }
+
+    public void adminDeleteReview(Long reviewId) {
+        if (reviewMapper.adminDelete(reviewId) > 0) {
+            reviewLeaderboard.reviewDeleted(reviewId);
+        }
     }
 
+    /**
+     * 点赞 / 取消点赞。锁住点赞行后再判断和修改，like_count 的增量在事务提交后才交给计数管道，
+     * 回滚时不会留下多余的计数。
+     */
     @Transactional
     public Review toggleReviewLike(Long userId, Long reviewId) {
         Review existing = reviewMapper.findById(reviewId, userId);
@@ -109,20 +230,36 @@ public class InteractionService {
             throw new RuntimeException("评论不存在");
         }
 
-        boolean liked = reviewLikeMapper.exists(userId, reviewId) > 0;
-        if (liked) {
-            reviewLikeMapper.delete(userId, reviewId);
+        int delta = 0;
+        if (reviewLikeMapper.existsForUpdate(userId, reviewId) > 0) {
+            if (reviewLikeMapper.delete(userId, reviewId) > 0) {
+                delta = -1;
+            }
         } else {
             reviewLikeMapper.insert(userId, reviewId);
+            delta = 1;
+        }
+        if (delta != 0) {
+            int likeDelta = delta;
+            TransactionUtil.afterCommit(() -> counterPipeline.recordReviewLike(reviewId, likeDelta));
         }
-        return reviewMapper.findById(reviewId, userId);
+        Review updated = reviewMapper.findById(reviewId, userId);
+        // like_count 由计数管道异步落库，这里补上尚未刷新的增量（本次的增量提交后才入管道）
+        int stored = updated.getLikeCount() == null ? 0 : updated.getLikeCount();
+        updated.setLikeCount((int) Math.max(0, stored + counterPipeline.pendingReviewLikes(reviewId) + delta));
+        return updated;
     }
 
     // 收藏相关
+    /**
+     * 收藏或修改收藏状态。先锁住收藏行再读旧状态，计数增量按锁内读到的旧状态计算，提交后才交给计数管道。
+     */
+    @Transactional
     public MovieCollection collectMovie(Long userId, Long movieId, String status) {
-        MovieCollection existing = collectionMapper.findByUserAndMovie(userId, movieId);
-        if (existing != null) {
+        String previous = collectionMapper.getStatusForUpdate(userId, movieId);
+        if (previous != null) {
             collectionMapper.updateStatus(userId, movieId, status);
+            cachedCounts.evict(CachedCounts.collections(userId, previous));
         } else {
             MovieCollection collection = new MovieCollection();
             collection.setUserId(userId);
@@ -130,11 +267,18 @@ public class InteractionService {
             collection.setStatus(status);
             collectionMapper.insert(collection);
         }
+        TransactionUtil.afterCommit(() -> counterPipeline.recordCollectionTransition(movieId, previous, status));
+        cachedCounts.evict(CachedCounts.collections(userId, status));
         return collectionMapper.findByUserAndMovie(userId, movieId);
     }
 
+    @Transactional
     public void removeCollection(Long userId, Long movieId) {
-        collectionMapper.delete(userId, movieId);
+        String status = collectionMapper.getStatusForUpdate(userId, movieId);
+        if (status != null && collectionMapper.delete(userId, movieId) > 0) {
+            TransactionUtil.afterCommit(() -> counterPipeline.recordCollectionTransition(movieId, status, null));
+            cachedCounts.evict(CachedCounts.collections(userId, status));
+        }
     }
 
     public String getCollectionStatus(Long userId, Long movieId) {
@@ -143,11 +287,23 @@ public class InteractionService {
 
     public PageResult<MovieCollection> getUserCollections(Long userId, String status, int page, int size) {
         int offset = (page - 1) * size;
-        List<MovieCollection> collections = collectionMapper.findByUserAndStatus(userId, status, size, offset);
-        int total = collectionMapper.countByUserAndStatus(userId, status);
+        List<MovieCollection> collections = collectionMapper.findByUserAndStatus(userId, status, null, size, offset);
+        long total = cachedCounts.get(CachedCounts.collections(userId, status),
+                () -> collectionMapper.countByUserAndStatus(userId, status));
         return new PageResult<>(collections, page, size, total);
     }
 
+    public CursorPage<MovieCollection> getUserCollectionsAfter(Long userId, String status, String cursor, int size) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.TIME);
+        int safeSize = CursorPage.safeSize(size);
+        List<MovieCollection> fetched = collectionMapper.findByUserAndStatus(userId, status, after, safeSize + 1, 0);
+        Long total = after == null
+                ? cachedCounts.get(CachedCounts.collections(userId, status),
+                        () -> collectionMapper.countByUserAndStatus(userId, status))
+                : null;
+        return CursorPage.of(fetched, safeSize, c -> PageCursor.byTime(c.getCreatedAt(), c.getId()), total);
+    }
+
     // 获取用户对某电影的互动状态
     public Map<String, Object> getUserMovieStatus(Long userId, Long movieId) {
         Map<String, Object> status = new HashMap<>();
@@ -1,30 +1,87 @@
 package com.douban.service;
 
+import com.douban.cache.CachedCounts;
+import com.douban.cache.TieredCache;
+import com.douban.cache.TieredCacheManager;
+import com.douban.config.ServiceUnavailableException;
+import com.douban.dto.CursorPage;
+import com.douban.dto.FacetPageResult;
+import com.douban.dto.PageCursor;
 import com.douban.dto.PageResult;
 import com.douban.dto.MovieRequest;
 import com.douban.entity.Movie;
 import com.douban.mapper.MovieMapper;
+import com.douban.mapper.MovieStatsMapper;
+import com.douban.search.FacetIndex;
+import com.douban.search.MovieCatalog;
+import com.douban.search.MovieSearchIndex;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class MovieService {
 
+    // 分面索引加载中时建议客户端的重试间隔
+    private static final int INDEX_RETRY_AFTER_SECONDS = 5;
+
     @Autowired
     private MovieMapper movieMapper;
 
+    @Autowired
+    private MovieStatsMapper movieStatsMapper;
+
+    @Autowired
+    private TieredCacheManager cacheManager;
+
+    @Autowired
+    private CachedCounts cachedCounts;
+
+    @Autowired
+    private MovieCatalog movieCatalog;
+
+    @Autowired
+    private MovieSearchIndex searchIndex;
+
+    @Autowired
+    private FacetIndex facetIndex;
+
+    // 电影详情按ID缓存；首页/榜单列表按“类型:条数”缓存，只在电影新增/修改/删除时整体失效，
+    // 评分等其它变化不主动失效，列表最多滞后一个 TTL（Redis 层 60 秒）
+    private TieredCache<Movie> detailCache;
+    private TieredCache<List<Movie>> listCache;
+
+    @PostConstruct
+    public void initCaches() {
+        detailCache = cacheManager.create("movie:detail", 10_000,
+                Duration.ofSeconds(60), Duration.ofMinutes(10), Movie.class);
+        listCache = cacheManager.create("movie:list", 256,
+                Duration.ofSeconds(15), Duration.ofSeconds(60), cacheManager.listType(Movie.class));
+    }
+
     public PageResult<Movie> getMovies(int page, int size) {
         int offset = (page - 1) * size;
-        List<Movie> movies = movieMapper.findAll(size, offset);
-        int total = movieMapper.count();
+        List<Movie> movies = movieMapper.findAll(null, size, offset);
+        long total = cachedCounts.get(CachedCounts.movies(), movieMapper::count);
         return new PageResult<>(movies, page, size, total);
     }
 
+    public CursorPage<Movie> getMoviesAfter(String cursor, int size) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.RATING);
+        int safeSize = CursorPage.safeSize(size);
+        List<Movie> fetched = movieMapper.findAll(after, safeSize + 1, 0);
+        Long total = after == null ? cachedCounts.get(CachedCounts.movies(), movieMapper::count) : null;
+        return CursorPage.of(fetched, safeSize, MovieService::ratingKey, total);
+    }
+
     public Movie getMovieById(Long id) {
-        Movie movie = movieMapper.findById(id);
+        Movie movie = detailCache.get(String.valueOf(id), () -> movieMapper.findById(id));
         if (movie == null) {
             throw new RuntimeException("电影不存在");
         }
@@ -32,15 +89,15 @@ public class MovieService {
     }
 
     public List<Movie> getTopRated(int limit) {
-        return movieMapper.findTopRated(limit);
+        return listCache.get("top:" + limit, () -> movieMapper.findTopRated(limit));
     }
 
     public List<Movie> getRecent(int limit) {
-        return movieMapper.findRecent(limit);
+        return listCache.get("recent:" + limit, () -> movieMapper.findRecent(limit));
     }
 
     public List<Movie> getMostReviewed(int limit) {
-        return movieMapper.findMostReviewed(limit);
+        return listCache.get("most-reviewed:" + limit, () -> movieMapper.findMostReviewed(limit));
     }
 
     public List<Movie> getMostWished(int limit) {
@@ -51,33 +108,160 @@ public class MovieService {
         return movieMapper.findMostWatched(limit);
     }
 
+    /**
+     * 搜索走内存索引；索引尚未加载完成（启动阶段）时退回数据库 LIKE 查询。
+     */
     public PageResult<Movie> search(String keyword, int page, int size) {
-        int offset = (page - 1) * size;
-        List<Movie> movies = movieMapper.search(keyword, size, offset);
-        int total = movieMapper.countByKeyword(keyword);
+        int offset = Math.max(0, (page - 1) * size);
+        if (searchIndex.isReady()) {
+            MovieSearchIndex.SearchHits hits = searchIndex.search(keyword, offset, size);
+            PageResult<Movie> result = new PageResult<>(hits.movies(), page, size, hits.total());
+            result.setTruncated(hits.truncated());
+            return result;
+        }
+        List<Movie> movies = movieMapper.search(keyword, null, size, offset);
+        long total = cachedCounts.get(CachedCounts.moviesByKeyword(keyword), () -> movieMapper.countByKeyword(keyword));
         return new PageResult<>(movies, page, size, total);
     }
 
+    /**
+     * 搜索结果按相关度排序且整体在内存中，游标直接记录位置。
+     */
+    public CursorPage<Movie> searchAfter(String keyword, String cursor, int size) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.OFFSET);
+        int offset = after == null ? 0 : after.getCount().intValue();
+        int safeSize = CursorPage.safeSize(size);
+        List<Movie> items;
+        long total;
+        boolean truncated = false;
+        if (searchIndex.isReady()) {
+            MovieSearchIndex.SearchHits hits = searchIndex.search(keyword, offset, safeSize);
+            items = hits.movies();
+            total = hits.total();
+            truncated = hits.truncated();
+        } else {
+            items = movieMapper.search(keyword, null, safeSize, offset);
+            total = cachedCounts.get(CachedCounts.moviesByKeyword(keyword), () -> movieMapper.countByKeyword(keyword));
+        }
+        String next = offset + items.size() < total && !items.isEmpty()
+                ? PageCursor.byOffset(offset + items.size()).encode()
+                : null;
+        CursorPage<Movie> result = new CursorPage<>(items, safeSize, next, after == null ? total : null);
+        result.setTruncated(truncated);
+        return result;
+    }
+
     public PageResult<Movie> getByGenre(String genre, int page, int size) {
-        int offset = (page - 1) * size;
-        List<Movie> movies = movieMapper.findByGenre(genre, size, offset);
-        int total = movieMapper.countByGenre(genre);
-        return new PageResult<>(movies, page, size, total);
+        return getByGenres(List.of(genre), true, Map.of(), page, size);
+    }
+
+    public CursorPage<Movie> getByGenreAfter(String genre, String cursor, int size) {
+        return getByGenresAfter(List.of(genre), true, Map.of(), cursor, size);
+    }
+
+    /**
+     * 类型（可选 AND/OR）与年份、国家/地区、语言分面筛选，同时返回各分面计数。
+     */
+    public FacetPageResult<Movie> getByGenres(List<String> genres, boolean matchAll,
+                                              Map<String, List<String>> facets, int page, int size) {
+        return browse(withGenres(genres, facets), matchAll, page, size);
+    }
+
+    public CursorPage<Movie> getByGenresAfter(List<String> genres, boolean matchAll,
+                                              Map<String, List<String>> facets, String cursor, int size) {
+        return browseAfter(withGenres(genres, facets), matchAll, cursor, size);
+    }
+
+    /**
+     * 任意分面组合筛选（分面名见 {@link FacetIndex#FACETS}），走内存位图索引，一次返回结果页与各分面计数。
+     * 索引尚未加载完成时退回数据库查询（仅支持多类型 AND，无分面计数）。
+     */
+    public FacetPageResult<Movie> browse(Map<String, List<String>> filters, boolean matchAll, int page, int size) {
+        Map<String, List<String>> cleaned = cleanFilters(filters);
+        int offset = Math.max(0, (page - 1) * size);
+        if (facetIndex.isReady()) {
+            FacetIndex.FacetResult result = facetIndex.query(new FacetIndex.FacetQuery(cleaned, matchAll), offset, size);
+            return new FacetPageResult<>(result.movies(), page, size, result.total(), result.facets());
+        }
+        List<String> genres = requireGenresOnly(cleaned, matchAll);
+        if (genres.isEmpty()) {
+            PageResult<Movie> all = getMovies(page, size);
+            return new FacetPageResult<>(all.getItems(), page, size, all.getTotal(), Map.of());
+        }
+        List<Movie> movies = movieMapper.findByGenresAll(genres, size, offset);
+        long total = cachedCounts.get(CachedCounts.moviesByGenres(String.join(",", genres)),
+                () -> movieMapper.countByGenresAll(genres));
+        return new FacetPageResult<>(movies, page, size, total, Map.of());
+    }
+
+    /**
+     * 分面结果按位置分页（索引内排序固定为评分降序），游标记录偏移量。
+     */
+    public CursorPage<Movie> browseAfter(Map<String, List<String>> filters, boolean matchAll, String cursor, int size) {
+        Map<String, List<String>> cleaned = cleanFilters(filters);
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.OFFSET);
+        int offset = after == null ? 0 : after.getCount().intValue();
+        int safeSize = CursorPage.safeSize(size);
+        List<Movie> items;
+        long total;
+        if (facetIndex.isReady()) {
+            FacetIndex.FacetResult result = facetIndex.query(new FacetIndex.FacetQuery(cleaned, matchAll), offset, safeSize);
+            items = result.movies();
+            total = result.total();
+        } else {
+            List<String> genres = requireGenresOnly(cleaned, matchAll);
+            if (genres.isEmpty()) {
+                items = movieMapper.findAll(null, safeSize, offset);
+                total = cachedCounts.get(CachedCounts.movies(), movieMapper::count);
+            } else {
+                items = movieMapper.findByGenresAll(genres, safeSize, offset);
+                total = cachedCounts.get(CachedCounts.moviesByGenres(String.join(",", genres)),
+                        () -> movieMapper.countByGenresAll(genres));
+            }
+        }
+        String next = offset + items.size() < total && !items.isEmpty()
+                ? PageCursor.byOffset(offset + items.size()).encode()
+                : null;
+        return new CursorPage<>(items, safeSize, next, after == null ? total : null);
+    }
+
+    private static Map<String, List<String>> withGenres(List<String> genres, Map<String, List<String>> facets) {
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        if (genres != null) filters.put(FacetIndex.GENRE, genres);
+        filters.putAll(facets);
+        return filters;
+    }
+
+    private static Map<String, List<String>> cleanFilters(Map<String, List<String>> filters) {
+        Map<String, List<String>> cleaned = new LinkedHashMap<>();
+        filters.forEach((facet, values) -> {
+            List<String> list = cleanValues(values);
+            if (!list.isEmpty()) cleaned.put(facet, list);
+        });
+        return cleaned;
     }
 
-    public PageResult<Movie> getByGenres(List<String> genres, int page, int size) {
-        List<String> cleaned = (genres == null ? List.<String>of() : genres).stream()
+    /**
+     * 数据库兜底只能处理 “多类型同时满足”，其余条件在索引就绪前返回 503（临时状态，不是请求错误）。
+     */
+    private static List<String> requireGenresOnly(Map<String, List<String>> filters, boolean matchAll) {
+        List<String> genres = filters.getOrDefault(FacetIndex.GENRE, List.of());
+        if ((!matchAll && genres.size() > 1) || filters.size() > (genres.isEmpty() ? 0 : 1)) {
+            throw new ServiceUnavailableException("分类索引加载中，请稍后再试", INDEX_RETRY_AFTER_SECONDS);
+        }
+        return genres;
+    }
+
+    private static List<String> cleanValues(List<String> genres) {
+        return (genres == null ? List.<String>of() : genres).stream()
                 .filter(s -> s != null && !s.trim().isEmpty())
                 .map(String::trim)
                 .distinct()
                 .collect(Collectors.toList());
-        if (cleaned.isEmpty()) {
-            return getMovies(page, size);
-        }
-        int offset = (page - 1) * size;
-        List<Movie> movies = movieMapper.findByGenresAll(cleaned, size, offset);
-        int total = movieMapper.countByGenresAll(cleaned);
-        return new PageResult<>(movies, page, size, total);
+    }
+
+    private static PageCursor ratingKey(Movie movie) {
+        return PageCursor.byRating(movie.getRating(), movie.getRatingCount(), movie.getId());
     }
 
     public Movie create(MovieRequest request) {
@@ -86,6 +270,9 @@ public class MovieService {
         movie.setRating(java.math.BigDecimal.ZERO);
         movie.setRatingCount(0);
         movieMapper.insert(movie);
+        listCache.evictAll();
+        cachedCounts.evict(CachedCounts.movies());
+        movieCatalog.movieChanged(movie.getId());
         return movie;
     }
 
@@ -96,11 +283,28 @@ public class MovieService {
         }
         applyRequest(existing, request);
         movieMapper.update(existing);
+        invalidateMovie(id);
+        listCache.evictAll();
+        movieCatalog.movieChanged(id);
         return movieMapper.findById(id);
     }
 
     public void delete(Long id) {
         movieMapper.delete(id);
+        movieStatsMapper.deleteByMovie(id);
+        invalidateMovie(id);
+        listCache.evictAll();
+        cachedCounts.evict(CachedCounts.movies());
+        movieCatalog.movieChanged(id);
+    }
+
+    /**
+     * 评分、评论数等变化后失效该电影的详情缓存（所有节点）。
+     * 榜单列表不在这里清空：按评分排序的列表允许在 TTL（本地 15 秒、Redis 60 秒）内滞后，
+     * 否则正常的评分流量会持续清空整个列表缓存；只有编辑、删除电影时才整体失效。
+     */
+    public void invalidateMovie(Long id) {
+        detailCache.evict(String.valueOf(id));
     }
 
     private void applyRequest(Movie movie, MovieRequest request) {
@@ -1,23 +1,71 @@
 package com.douban.service;
 
+import com.douban.cache.CachedCounts;
+import com.douban.counter.UnreadCounter;
 import com.douban.entity.SiteMessage;
+import com.douban.dto.CursorPage;
+import com.douban.dto.PageCursor;
 import com.douban.dto.PageResult;
+import com.douban.mapper.BroadcastMessageMapper;
 import com.douban.mapper.SiteMessageMapper;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import com.douban.util.SortedMerge;
+import com.douban.websocket.MessageRelay;
+import com.douban.websocket.WebSocketSessionRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 站内信收件箱 = 个人消息（site_messages，每人一行）+ 全站广播（broadcast_messages，只存一份）。
+ * 广播的已读状态由每个用户的已读水位决定，发送广播是 O(1) 写入；列表和未读数在读取时
+ * 对两路按 created_at DESC, id DESC 排好序的结果做多路归并。
+ *
+ * 未读数由 {@link UnreadCounter} 在 Redis 中维护，每次变化后通过 /user/queue/notice 推送
+ * {"type": "unread", "count": n}，前端不再轮询；本节点在线用户的计数定时与数据库对账。
+ */
 @Service
 public class NotificationService {
+    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+
+    // 与 SQL 的 ORDER BY created_at DESC, id DESC 一致；相同时个人消息在前
+    private static final Comparator<SiteMessage> NEWEST_FIRST = Comparator
+            .comparing(SiteMessage::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(SiteMessage::getId, Comparator.nullsLast(Comparator.reverseOrder()));
+    // 未读列表中最多带出的广播条数
+    private static final int MAX_UNREAD_BROADCASTS = 100;
 
     private final SiteMessageMapper siteMessageMapper;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final BroadcastMessageMapper broadcastMessageMapper;
+    private final MessageRelay messageRelay;
+    private final CachedCounts cachedCounts;
+    private final UnreadCounter unreadCounter;
+    private final WebSocketSessionRegistry sessionRegistry;
+
+    @Value("${douban.notification.unread-reconcile-ms:300000}")
+    private long reconcileIntervalMs;
 
-    public NotificationService(SiteMessageMapper siteMessageMapper, SimpMessagingTemplate messagingTemplate) {
+    private ScheduledExecutorService reconciler;
+
+    public NotificationService(SiteMessageMapper siteMessageMapper, BroadcastMessageMapper broadcastMessageMapper,
+                               MessageRelay messageRelay, CachedCounts cachedCounts, UnreadCounter unreadCounter,
+                               WebSocketSessionRegistry sessionRegistry) {
         this.siteMessageMapper = siteMessageMapper;
-        this.messagingTemplate = messagingTemplate;
+        this.broadcastMessageMapper = broadcastMessageMapper;
+        this.messageRelay = messageRelay;
+        this.cachedCounts = cachedCounts;
+        this.unreadCounter = unreadCounter;
+        this.sessionRegistry = sessionRegistry;
     }
 
     public SiteMessage sendToUser(Long receiverId, Long senderId, String title, String content) {
@@ -39,48 +87,145 @@ public class NotificationService {
         message.setCreatedAt(LocalDateTime.now());
 
         siteMessageMapper.insert(message);
-        messagingTemplate.convertAndSendToUser(receiverId.toString(), "/queue/notice", message);
+        cachedCounts.evict(CachedCounts.messages(receiverId));
+        messageRelay.sendToUser(receiverId, "/queue/notice", message);
+        Long unread = unreadCounter.add(receiverId, 1);
+        pushUnread(receiverId, unread != null ? unread : unreadCounter.get(receiverId));
         return message;
     }
 
     /**
-     * 简单广播：发送到/topic/announcement，前端可订阅；同时不入库（避免为每个用户插入记录）。
+     * 全站广播：写入 broadcast_messages 一行，推送到所有节点的 /topic/announcement；
+     * 离线用户下次打开收件箱时在合并结果中看到。
      */
-    public void broadcast(Long senderId, String title, String content) {
+    public SiteMessage broadcast(Long senderId, String title, String content) {
         SiteMessage message = new SiteMessage();
         message.setReceiverId(0L);
         message.setSenderId(senderId);
         message.setTitle(title);
         message.setContent(content);
         message.setStatus("UNREAD");
-        messagingTemplate.convertAndSend("/topic/announcement", message);
+        message.setCreatedAt(LocalDateTime.now());
+        message.setBroadcast(true);
+        broadcastMessageMapper.insert(message);
+        unreadCounter.broadcastAdded(message.getId());
+        messageRelay.broadcast("/topic/announcement", message);
+        return message;
     }
 
     public List<SiteMessage> listUnread(Long userId) {
-        return siteMessageMapper.findUnread(userId);
+        List<SiteMessage> personal = siteMessageMapper.findUnread(userId);
+        List<SiteMessage> broadcasts = broadcastMessageMapper.findUnread(userId, broadcastReadId(userId), MAX_UNREAD_BROADCASTS);
+        return SortedMerge.merge(List.of(personal, broadcasts), NEWEST_FIRST, personal.size() + broadcasts.size());
     }
 
     public List<SiteMessage> list(Long userId, int page, int size) {
         int offset = Math.max(0, (page - 1) * size);
-        return siteMessageMapper.findByReceiver(userId, size, offset);
+        return mergedPage(userId, offset, size);
     }
 
     public PageResult<SiteMessage> listPage(Long userId, int page, int size) {
         int safePage = Math.max(1, page);
         int safeSize = Math.min(50, Math.max(1, size));
         int offset = (safePage - 1) * safeSize;
-        List<SiteMessage> items = siteMessageMapper.findByReceiver(userId, safeSize, offset);
-        int total = siteMessageMapper.countByReceiver(userId);
+        List<SiteMessage> items = mergedPage(userId, offset, safeSize);
+        long total = cachedCounts.get(CachedCounts.messages(userId), () -> siteMessageMapper.countByReceiver(userId))
+                + broadcastMessageMapper.countVisible(userId);
         return new PageResult<>(items, safePage, safeSize, total);
     }
 
+    public CursorPage<SiteMessage> listAfter(Long userId, String cursor, int size) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.Kind.TIME);
+        int safeSize = CursorPage.safeSize(size);
+        List<SiteMessage> personal = siteMessageMapper.findByReceiver(userId, after, safeSize + 1, 0);
+        List<SiteMessage> broadcasts = broadcastMessageMapper.findVisible(userId, broadcastReadId(userId), after, safeSize + 1);
+        List<SiteMessage> fetched = SortedMerge.merge(List.of(personal, broadcasts), NEWEST_FIRST, safeSize + 1);
+        Long total = after == null
+                ? cachedCounts.get(CachedCounts.messages(userId), () -> siteMessageMapper.countByReceiver(userId))
+                + broadcastMessageMapper.countVisible(userId)
+                : null;
+        return CursorPage.of(fetched, safeSize, m -> PageCursor.byTime(m.getCreatedAt(), m.getId()), total);
+    }
+
+    /**
+     * 偏移分页：两路各取前 offset + size 条归并后跳过 offset 条（与单表 OFFSET 的代价相当）。
+     */
+    private List<SiteMessage> mergedPage(Long userId, int offset, int size) {
+        int needed = offset + size;
+        List<SiteMessage> personal = siteMessageMapper.findByReceiver(userId, null, needed, 0);
+        List<SiteMessage> broadcasts = broadcastMessageMapper.findVisible(userId, broadcastReadId(userId), null, needed);
+        List<SiteMessage> merged = SortedMerge.merge(List.of(personal, broadcasts), NEWEST_FIRST, needed);
+        return offset >= merged.size() ? List.of() : merged.subList(offset, merged.size());
+    }
+
     public void markRead(Long userId, List<Long> ids) {
-        if (ids != null && !ids.isEmpty()) {
-            siteMessageMapper.markRead(userId, ids);
+        if (ids == null || ids.isEmpty()) return;
+        int changed = siteMessageMapper.markRead(userId, ids);
+        if (changed > 0) {
+            Long unread = unreadCounter.add(userId, -changed);
+            pushUnread(userId, unread != null ? unread : unreadCounter.get(userId));
+        }
+    }
+
+    /**
+     * 把广播已读水位推进到 upTo（为空时推进到最新一条），早于它的广播全部视为已读。
+     */
+    public void markBroadcastsRead(Long userId, Long upTo) {
+        long latest = broadcastMessageMapper.latestId();
+        long target = upTo == null ? latest : Math.min(upTo, latest);
+        if (target > 0) {
+            broadcastMessageMapper.advanceReadId(userId, target);
+            unreadCounter.evict(userId);
+            pushUnread(userId, unreadCounter.get(userId));
+        }
+    }
+
+    public long countUnread(Long userId) {
+        return unreadCounter.get(userId);
+    }
+
+    /**
+     * 把最新未读数推送给用户（与站内信共用 /user/queue/notice，用 type 区分）。
+     */
+    public void pushUnread(Long userId, long count) {
+        messageRelay.sendToUser(userId, "/queue/notice", Map.of("type", "unread", "count", count));
+    }
+
+    @PostConstruct
+    public void startReconciler() {
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "unread-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcileUnread, reconcileIntervalMs, reconcileIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopReconciler() {
+        reconciler.shutdownNow();
+    }
+
+    /**
+     * 对账：本节点在线用户的未读数按数据库重新计算，比较并覆盖（见 {@link UnreadCounter#reconcile}），
+     * 有偏差时推送修正后的值。逐个用户查库，跑在自己的线程上，不占用共享的定时任务线程。
+     */
+    public void reconcileUnread() {
+        for (Long userId : sessionRegistry.localUserIds()) {
+            try {
+                Long corrected = unreadCounter.reconcile(userId);
+                if (corrected != null) {
+                    pushUnread(userId, corrected);
+                }
+            } catch (Exception e) {
+                log.warn("Unread reconcile of user {} failed: {}", userId, e.getMessage());
+            }
         }
     }
 
-    public int countUnread(Long userId) {
-        return siteMessageMapper.countUnread(userId);
+    private long broadcastReadId(Long userId) {
+        Long readId = broadcastMessageMapper.findReadId(userId);
+        return readId == null ? 0 : readId;
     }
 }
@@ -0,0 +1,165 @@
+package com.douban.service;
+
+import com.douban.util.PasswordUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 密码哈希与校验放在独立的有界线程池中执行，慢哈希不占用 Tomcat 线程去做 CPU 计算；
+ * 队列满时立即拒绝（{@link RejectedExecutionException}，接口返回 503），登录风暴不会拖垮浏览接口。
+ *
+ * 迭代次数未配置时按 target-ms 在启动时校准，结果向下取整到 ITERATION_STEP 的整数倍，
+ * 机器性能的小幅波动不会让各节点、每次重启得到不同的值。
+ * 登录校验通过后，只有旧格式或迭代次数低于固定下限（rehash-below-iterations）的哈希才顺带重新计算，
+ * 校准值的变化不会引起反复升级。
+ */
+@Service
+public class PasswordService {
+    private static final Logger log = LoggerFactory.getLogger(PasswordService.class);
+
+    private static final int MIN_ITERATIONS = 100_000;
+    private static final int MAX_ITERATIONS = 2_000_000;
+    private static final int ITERATION_STEP = 50_000;
+
+    /**
+     * @param upgradedHash 需要升级时的新哈希，否则为 null
+     */
+    public record Verification(boolean matched, String upgradedHash) {
+    }
+
+    @Value("${douban.auth.pbkdf2-iterations:0}")
+    private int configuredIterations;
+
+    // 低于这个迭代次数的哈希在登录时升级；0 表示取配置的迭代次数，未配置时取 MIN_ITERATIONS
+    @Value("${douban.auth.rehash-below-iterations:0}")
+    private int rehashBelowIterations;
+
+    @Value("${douban.auth.hash-target-ms:100}")
+    private long targetMs;
+
+    @Value("${douban.auth.hash-threads:0}")
+    private int threads;
+
+    @Value("${douban.auth.hash-queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${douban.auth.hash-timeout-ms:5000}")
+    private long timeoutMs;
+
+    private int iterations;
+    private int rehashFloor;
+    private ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rehashed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        iterations = configuredIterations > 0 ? configuredIterations : calibrate();
+        rehashFloor = rehashBelowIterations > 0 ? rehashBelowIterations
+                : configuredIterations > 0 ? configuredIterations : MIN_ITERATIONS;
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("Password hashing: PBKDF2 {} iterations (rehash below {}), {} threads, queue {}",
+                iterations, rehashFloor, poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public String hash(String password) {
+        return submit(() -> PasswordUtil.hashPassword(password, iterations));
+    }
+
+    /**
+     * 登录用：校验通过且哈希低于下限时，同时返回按当前迭代次数重新计算的哈希。
+     */
+    public Verification verify(String password, String storedHash) {
+        return submit(() -> {
+            if (!PasswordUtil.verifyPassword(password, storedHash)) {
+                return new Verification(false, null);
+            }
+            if (PasswordUtil.needsRehash(storedHash, rehashFloor)) {
+                rehashed.incrementAndGet();
+                return new Verification(true, PasswordUtil.hashPassword(password, iterations));
+            }
+            return new Verification(true, null);
+        });
+    }
+
+    /**
+     * 只校验不升级，用于修改密码等随后会写入新哈希的场景。
+     */
+    public boolean matches(String password, String storedHash) {
+        return submit(() -> PasswordUtil.verifyPassword(password, storedHash));
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("登录请求过多，请稍后再试");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("登录请求过多，请稍后再试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("操作被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 以 1 万次迭代试算，按比例换算到目标耗时，向下取整到 ITERATION_STEP 的整数倍并限制在合理范围内。
+     */
+    private int calibrate() {
+        int sample = 10_000;
+        PasswordUtil.hashPassword("calibration", sample);
+        long start = System.nanoTime();
+        PasswordUtil.hashPassword("calibration", sample);
+        double ms = Math.max(0.01, (System.nanoTime() - start) / 1_000_000.0);
+        long scaled = Math.round(sample * targetMs / ms) / ITERATION_STEP * ITERATION_STEP;
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, scaled));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("iterations", iterations);
+        stats.put("rehashBelowIterations", rehashFloor);
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("rejected", rejected.get());
+        stats.put("rehashed", rehashed.get());
+        return stats;
+    }
+}
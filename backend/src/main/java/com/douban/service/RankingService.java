@@ -1,57 +1,228 @@
 package com.douban.service;
 
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.counter.HeavyHitters;
+import com.douban.counter.UniqueViewerCounter;
 import com.douban.entity.Movie;
 import com.douban.mapper.MovieMapper;
+import com.douban.search.MovieCatalog;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 电影热度排行：浏览量按小时、按天分桶计数（Redis 有序集合，自动过期），
+ * 读取时把窗口内的桶按指数衰减加权合并（ZUNIONSTORE），合并结果短暂缓存。
+ *
+ * - 1h：当前小时桶 + 上一小时桶按尚未滑出窗口的比例加权（滑动窗口）；
+ * - 24h：最近 24 个小时桶，半衰期 6 小时；
+ * - 7d：最近 7 个天桶，半衰期 2 天。
+ *
+ * 浏览记录只进入本机固定内存的 {@link HeavyHitters}（Count-Min Sketch + Space-Saving），请求线程不访问网络；
+ * 定时把本机这一轮的高频电影及估计次数 ZINCRBY 到共享的桶里，各节点的结果在 Redis 中相加合并。
+ * 长尾和不存在的电影ID不会进入 Redis，刷量脚本无法让任意ID的计数无限增长。
+ *
+ * 另按独立访客排行（{@link UniqueViewerCounter} 每天一个集合）：24h 为今天加上昨天尚未滑出窗口的部分，
+ * 7d 为最近 7 天按半衰期 2 天加权求和（同一访客在不同天各算一次）。同一用户反复刷新不会抬高这个分值。
+ *
+ * Redis 熔断（{@link RedisCircuitBreaker}）期间不再访问 Redis：计数留在本机等恢复后再写，排行直接退化为“最多看过”。
+ */
 @Service
 public class RankingService {
     private static final Logger log = LoggerFactory.getLogger(RankingService.class);
-    private static final String KEY_MOVIE_HOT = "douban:movie:hot";
+
+    private static final String KEY_HOUR_BUCKET_PREFIX = "douban:movie:hot:h:";
+    private static final String KEY_DAY_BUCKET_PREFIX = "douban:movie:hot:d:";
+    private static final String KEY_WINDOW_PREFIX = "douban:movie:hot:w:";
+    public static final Duration HOUR_BUCKET_TTL = Duration.ofHours(26);
+    public static final Duration DAY_BUCKET_TTL = Duration.ofDays(8);
+    // 合并结果的缓存时间：热度榜允许有这么久的延迟
+    private static final Duration WINDOW_CACHE_TTL = Duration.ofSeconds(60);
+
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    public enum Metric {
+        VIEWS, VIEWERS;
+
+        public static Metric parse(String value) {
+            if (value == null || value.isBlank()) return VIEWS;
+            try {
+                return Metric.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的热度指标: " + value);
+            }
+        }
+    }
+
+    public enum Window {
+        HOUR("1h"), DAY("24h"), WEEK("7d");
+
+        private final String label;
+
+        Window(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Window parse(String value) {
+            if (value == null || value.isBlank()) return DAY;
+            for (Window window : values()) {
+                if (window.label.equalsIgnoreCase(value.trim())) return window;
+            }
+            throw new IllegalArgumentException("不支持的热度窗口: " + value);
+        }
+    }
 
     private final StringRedisTemplate redisTemplate;
     private final MovieMapper movieMapper;
+    private final MovieCatalog movieCatalog;
+    private final UniqueViewerCounter uniqueViewers;
+    private final RedisCircuitBreaker redisBreaker;
+    private final HeavyHitters views;
+
+    private final AtomicLong recordedViews = new AtomicLong();
+    private final AtomicLong flushedViews = new AtomicLong();
+    private final AtomicLong droppedUnknownIds = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong deferredFlushes = new AtomicLong();
 
-    public RankingService(StringRedisTemplate redisTemplate, MovieMapper movieMapper) {
+    public RankingService(StringRedisTemplate redisTemplate, MovieMapper movieMapper, MovieCatalog movieCatalog,
+                          UniqueViewerCounter uniqueViewers, RedisCircuitBreaker redisBreaker,
+                          @Value("${douban.ranking.sketch-depth:4}") int sketchDepth,
+                          @Value("${douban.ranking.sketch-width:4096}") int sketchWidth,
+                          @Value("${douban.ranking.top-k:1000}") int topK) {
         this.redisTemplate = redisTemplate;
         this.movieMapper = movieMapper;
+        this.movieCatalog = movieCatalog;
+        this.uniqueViewers = uniqueViewers;
+        this.redisBreaker = redisBreaker;
+        this.views = new HeavyHitters(sketchDepth, sketchWidth, topK);
     }
 
-    public void recordMovieView(Long movieId) {
+    /**
+     * 只在本机的高频计数结构中累加，由 {@link #flushViews()} 定时批量写入当前的小时桶和天桶；
+     * viewerKey 见 {@link UniqueViewerCounter#viewerKey}，同时计入当天的独立访客。
+     */
+    public void recordMovieView(Long movieId, String viewerKey) {
         if (movieId == null) return;
+        views.add(movieId, 1);
+        recordedViews.incrementAndGet();
+        uniqueViewers.record(movieId, viewerKey);
+    }
+
+    /**
+     * 返回带近 7 天独立访客数的副本（详情缓存中的对象不可修改）；计数只读本机缓存，
+     * 还没算出来（首次访问或 Redis 不可用）时原样返回。
+     */
+    public Movie withUniqueViewers(Movie movie) {
+        Long count = uniqueViewers.weeklyCount(movie.getId());
+        if (count == null) return movie;
+        Movie copy = new Movie();
+        BeanUtils.copyProperties(movie, copy);
+        copy.setUniqueViewers(count);
+        return copy;
+    }
+
+    @Scheduled(fixedDelayString = "${douban.counter.flush-interval-ms:1000}")
+    public void flushViews() {
+        flushViews(views.drain());
+    }
+
+    @PreDestroy
+    public void flushViewsOnShutdown() {
+        flushViews(views.drainAll());
+    }
+
+    private void flushViews(Map<Long, Long> counts) {
+        if (counts.isEmpty()) return;
+        if (movieCatalog.isReady()) {
+            int before = counts.size();
+            counts.keySet().removeIf(id -> movieCatalog.get(id) == null);
+            droppedUnknownIds.addAndGet(before - counts.size());
+            if (counts.isEmpty()) return;
+        }
+        if (!redisBreaker.allowRequest()) {
+            deferredFlushes.incrementAndGet();
+            counts.forEach(views::add);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        String hourKey = hourBucketKey(now);
+        String dayKey = dayBucketKey(now);
         try {
-            redisTemplate.opsForZSet().incrementScore(KEY_MOVIE_HOT, movieId.toString(), 1d);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                counts.forEach((movieId, count) -> {
+                    conn.zIncrBy(hourKey, count, movieId.toString());
+                    conn.zIncrBy(dayKey, count, movieId.toString());
+                });
+                conn.expire(hourKey, HOUR_BUCKET_TTL.toSeconds());
+                conn.expire(dayKey, DAY_BUCKET_TTL.toSeconds());
+                return null;
+            });
+            redisBreaker.recordSuccess();
+            flushedViews.addAndGet(counts.size());
         } catch (Exception e) {
-            log.debug("Redis unavailable, skip recording movie view: {}", e.getMessage());
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, keep {} hot movie counts for next flush: {}", counts.size(), e.getMessage());
+            failedFlushes.incrementAndGet();
+            counts.forEach(views::add);
         }
     }
 
-    public List<Movie> getHotMovies(int limit) {
-        if (limit <= 0) return List.of();
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recordedViews", recordedViews.get());
+        stats.put("flushedHotKeys", flushedViews.get());
+        stats.put("droppedUnknownIds", droppedUnknownIds.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("deferredFlushes", deferredFlushes.get());
+        stats.put("trackedItems", views.trackedItems());
+        stats.put("sketchMemoryBytes", views.memoryBytes());
+        stats.put("uniqueViewers", uniqueViewers.stats());
+        return stats;
+    }
 
-        Map<Long, Long> hotById = new LinkedHashMap<>();
-        try {
-            Set<ZSetOperations.TypedTuple<String>> tuples =
-                    redisTemplate.opsForZSet().reverseRangeWithScores(KEY_MOVIE_HOT, 0, limit - 1);
-            if (tuples != null) {
-                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
-                    if (tuple == null || tuple.getValue() == null) continue;
-                    Long id = tryParseLong(tuple.getValue());
-                    if (id == null) continue;
-                    long score = tuple.getScore() == null ? 0L : Math.round(tuple.getScore());
-                    hotById.put(id, score);
-                }
-            }
-        } catch (Exception e) {
-            log.debug("Redis unavailable, fall back hot ranking: {}", e.getMessage());
+    public static String hourBucketKey(LocalDateTime time) {
+        return KEY_HOUR_BUCKET_PREFIX + HOUR_FORMAT.format(time);
+    }
+
+    public static String dayBucketKey(LocalDateTime time) {
+        return KEY_DAY_BUCKET_PREFIX + DAY_FORMAT.format(time);
+    }
+
+    public List<Movie> getHotMovies(int limit, Window window) {
+        return getHotMovies(limit, window, Metric.VIEWS);
+    }
+
+    public List<Movie> getHotMovies(int limit, Window window, Metric metric) {
+        if (limit <= 0) return List.of();
+        if (metric == Metric.VIEWERS && window == Window.HOUR) {
+            throw new IllegalArgumentException("独立访客按天统计，不支持 1h 窗口");
         }
 
+        Map<Long, Double> hotById = getHotScores(limit, window, metric);
         if (hotById.isEmpty()) {
             // 无 Redis 数据时：退化为“最多看过” + “最多评论” 的综合感觉
             List<Movie> mostWatched = movieMapper.findMostWatched(limit);
@@ -68,11 +239,113 @@ public class RankingService {
         List<Movie> movies = movieMapper.findByIdsOrdered(ids);
         for (Movie m : movies) {
             if (m == null || m.getId() == null) continue;
-            m.setHot(hotById.getOrDefault(m.getId(), 0L));
+            long score = Math.round(hotById.getOrDefault(m.getId(), 0d));
+            m.setHot(score);
+            if (metric == Metric.VIEWERS) m.setUniqueViewers(score);
         }
         return movies;
     }
 
+    /**
+     * 最近 7 天热度分值最高的前 limit 部电影（电影ID → 分值），Redis 不可用或熔断时返回空表。
+     */
+    public Map<Long, Double> getHotScores(int limit) {
+        return getHotScores(limit, Window.WEEK);
+    }
+
+    /**
+     * 窗口内热度分值最高的前 limit 部电影，按分值降序（电影ID → 分值），Redis 不可用或熔断时返回空表。
+     */
+    public Map<Long, Double> getHotScores(int limit, Window window) {
+        return getHotScores(limit, window, Metric.VIEWS);
+    }
+
+    public Map<Long, Double> getHotScores(int limit, Window window, Metric metric) {
+        Map<Long, Double> scores = new LinkedHashMap<>();
+        if (limit <= 0 || !redisBreaker.allowRequest()) return scores;
+        try {
+            String key = metric == Metric.VIEWERS
+                    ? KEY_WINDOW_PREFIX + "uv:" + window.label()
+                    : KEY_WINDOW_PREFIX + window.label();
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                if (metric == Metric.VIEWERS) {
+                    mergeViewerWindow(window, key);
+                } else {
+                    mergeWindow(window, key);
+                }
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples =
+                    redisTemplate.opsForZSet().reverseRangeWithScores(key, 0, limit - 1);
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    if (tuple == null || tuple.getValue() == null) continue;
+                    Long id = tryParseLong(tuple.getValue());
+                    if (id != null) scores.put(id, tuple.getScore() == null ? 0d : tuple.getScore());
+                }
+            }
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, skip hot scores: {}", e.getMessage());
+        }
+        return scores;
+    }
+
+    /**
+     * 把窗口内的桶加权合并到 dest，并设置短 TTL；并发合并的结果相同，无需加锁。
+     */
+    private void mergeWindow(Window window, String dest) {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> keys = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        switch (window) {
+            case HOUR -> {
+                keys.add(hourBucketKey(now));
+                weights.add(1d);
+                keys.add(hourBucketKey(now.minusHours(1)));
+                weights.add(1d - now.getMinute() / 60d);
+            }
+            case DAY -> {
+                for (int i = 0; i < 24; i++) {
+                    keys.add(hourBucketKey(now.minusHours(i)));
+                    weights.add(Math.pow(0.5, i / 6d));
+                }
+            }
+            case WEEK -> {
+                for (int i = 0; i < 7; i++) {
+                    keys.add(dayBucketKey(now.minusDays(i)));
+                    weights.add(Math.pow(0.5, i / 2d));
+                }
+            }
+        }
+        union(keys, weights, dest);
+    }
+
+    private void mergeViewerWindow(Window window, String dest) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = now.toLocalDate();
+        List<String> keys = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        if (window == Window.WEEK) {
+            for (int i = 0; i < 7; i++) {
+                keys.add(UniqueViewerCounter.rankKey(today.minusDays(i)));
+                weights.add(Math.pow(0.5, i / 2d));
+            }
+        } else {
+            keys.add(UniqueViewerCounter.rankKey(today));
+            weights.add(1d);
+            keys.add(UniqueViewerCounter.rankKey(today.minusDays(1)));
+            weights.add(1d - now.toLocalTime().toSecondOfDay() / 86400d);
+        }
+        union(keys, weights, dest);
+    }
+
+    private void union(List<String> keys, List<Double> weights, String dest) {
+        double[] w = weights.stream().mapToDouble(Double::doubleValue).toArray();
+        redisTemplate.opsForZSet().unionAndStore(keys.get(0), keys.subList(1, keys.size()), dest, Aggregate.SUM, Weights.of(w));
+        redisTemplate.expire(dest, WINDOW_CACHE_TTL);
+    }
+
     private static Long tryParseLong(String s) {
         try {
             return Long.parseLong(s);
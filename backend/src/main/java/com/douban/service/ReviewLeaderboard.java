@@ -0,0 +1,276 @@
+package com.douban.service;
+
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.entity.Review;
+import com.douban.mapper.ReviewMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * 评论点赞排行榜（Redis 有序集合），替代按 like_count 全表排序再 OFFSET。
+ *
+ * - all：总点赞数，成员为全部评论（新评论以 0 分加入），分值随点赞增量 ZINCRBY；
+ * - 按天分桶：每天一个有序集合记录当天的点赞增量，保留 8 天；
+ * - day / week：把最近 2 / 7 个桶按半衰期加权 ZUNIONSTORE 成一个集合，定时刷新，
+ *   越早的点赞权重越低（day 半衰期 1 天，week 半衰期 3 天）。
+ *
+ * 点赞增量由 CounterPipeline 落库后同步写入；Redis 中的数据可能因故障而漂移，
+ * 启动时（集合不存在）和每天定时从数据库全量重建。Redis 熔断期间读写都直接跳过（读退回数据库），
+ * 丢掉的增量同样由重建纠正。
+ */
+@Component
+public class ReviewLeaderboard {
+    private static final Logger log = LoggerFactory.getLogger(ReviewLeaderboard.class);
+
+    private static final String KEY_ALL = "douban:review:top:all";
+    private static final String KEY_WINDOW_PREFIX = "douban:review:top:";
+    private static final String KEY_BUCKET_PREFIX = "douban:review:likes:";
+    private static final DateTimeFormatter BUCKET_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final Duration BUCKET_TTL = Duration.ofDays(8);
+    private static final int REBUILD_BATCH = 1000;
+
+    public enum Window {
+        ALL(1, 0), DAY(2, 1), WEEK(7, 3);
+
+        final int days;
+        final double halfLifeDays;
+
+        Window(int days, double halfLifeDays) {
+            this.days = days;
+            this.halfLifeDays = halfLifeDays;
+        }
+
+        public static Window parse(String value) {
+            if (value == null || value.isBlank()) return ALL;
+            try {
+                return Window.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的排行窗口: " + value);
+            }
+        }
+    }
+
+    public record Ranked(List<Long> reviewIds, long total) {
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final ReviewMapper reviewMapper;
+    private final RedisCircuitBreaker redisBreaker;
+
+    public ReviewLeaderboard(StringRedisTemplate redisTemplate, ReviewMapper reviewMapper,
+                             RedisCircuitBreaker redisBreaker) {
+        this.redisTemplate = redisTemplate;
+        this.reviewMapper = reviewMapper;
+        this.redisBreaker = redisBreaker;
+    }
+
+    /**
+     * 按名次读取一页评论ID；Redis 不可用或熔断时返回 null，由调用方退回数据库。
+     */
+    public Ranked page(Window window, long offset, int limit) {
+        if (!redisBreaker.allowRequest()) return null;
+        try {
+            String key = window == Window.ALL ? KEY_ALL : windowKey(window);
+            if (window != Window.ALL && !Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                refreshWindow(window);
+            }
+            ZSetOperations<String, String> zset = redisTemplate.opsForZSet();
+            Set<String> members = zset.reverseRange(key, offset, offset + limit - 1);
+            Long total = zset.zCard(key);
+            redisBreaker.recordSuccess();
+            if (window == Window.ALL && (total == null || total == 0)) {
+                // 排行榜还没建好（例如 Redis 刚清空），让调用方走数据库
+                return null;
+            }
+            List<Long> ids = new ArrayList<>();
+            if (members != null) {
+                for (String member : members) ids.add(Long.valueOf(member));
+            }
+            return new Ranked(ids, total == null ? 0 : total);
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, review leaderboard falls back to database: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public void reviewCreated(Long reviewId) {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            redisTemplate.opsForZSet().addIfAbsent(KEY_ALL, String.valueOf(reviewId), 0);
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, review {} joins leaderboard on next rebuild: {}", reviewId, e.getMessage());
+        }
+    }
+
+    public void reviewDeleted(Long reviewId) {
+        if (!redisBreaker.allowRequest()) return;
+        String member = String.valueOf(reviewId);
+        LocalDate today = LocalDate.now();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.zRem(KEY_ALL, member);
+                conn.zRem(windowKey(Window.DAY), member);
+                conn.zRem(windowKey(Window.WEEK), member);
+                for (int i = 0; i < Window.WEEK.days; i++) {
+                    conn.zRem(bucketKey(today.minusDays(i)), member);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, review {} leaves leaderboard on next rebuild: {}", reviewId, e.getMessage());
+        }
+    }
+
+    /**
+     * 点赞增量（评论ID → 增量），由计数管道在落库之后调用。失败不重试，依赖定时重建纠正。
+     */
+    public void applyLikeDeltas(Map<Long, Long> deltas) {
+        if (deltas.isEmpty() || !redisBreaker.allowRequest()) return;
+        String bucket = bucketKey(LocalDate.now());
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                deltas.forEach((reviewId, delta) -> {
+                    conn.zIncrBy(KEY_ALL, delta, reviewId.toString());
+                    conn.zIncrBy(bucket, delta, reviewId.toString());
+                });
+                conn.expire(bucket, BUCKET_TTL.toSeconds());
+                return null;
+            });
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, drop {} leaderboard deltas until rebuild: {}", deltas.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${douban.review.leaderboard-window-refresh-ms:60000}")
+    public void refreshWindows() {
+        if (!redisBreaker.allowRequest()) return;
+        try {
+            refreshWindow(Window.DAY);
+            refreshWindow(Window.WEEK);
+        } catch (Exception e) {
+            log.debug("Redis unavailable, skip review window refresh: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfMissing() {
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(KEY_ALL))) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.warn("Review leaderboard rebuild skipped: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${douban.review.leaderboard-rebuild-cron:0 30 4 * * *}")
+    public void scheduledRebuild() {
+        if (!redisBreaker.allowRequest()) {
+            log.warn("Review leaderboard rebuild skipped: Redis circuit open");
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Review leaderboard rebuild failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库全量重建：先写入临时 key，再 RENAME 原子替换。
+     * 重建期间落到旧集合上的增量会丢失，下一次重建时纠正。
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        String tmpAll = KEY_ALL + ":rebuild";
+        redisTemplate.delete(tmpAll);
+        long afterId = 0;
+        int total = 0;
+        while (true) {
+            List<Review> batch = reviewMapper.findLikeCountsAfterId(afterId, REBUILD_BATCH);
+            if (batch.isEmpty()) break;
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+            for (Review review : batch) {
+                int likes = review.getLikeCount() == null ? 0 : review.getLikeCount();
+                tuples.add(ZSetOperations.TypedTuple.of(String.valueOf(review.getId()), (double) likes));
+            }
+            redisTemplate.opsForZSet().add(tmpAll, tuples);
+            total += batch.size();
+            afterId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < REBUILD_BATCH) break;
+        }
+        if (total > 0) {
+            redisTemplate.rename(tmpAll, KEY_ALL);
+        } else {
+            redisTemplate.delete(KEY_ALL);
+        }
+
+        LocalDate today = LocalDate.now();
+        Map<String, Set<ZSetOperations.TypedTuple<String>>> buckets = new HashMap<>();
+        for (Map<String, Object> row : reviewMapper.countLikesByDaySince(today.minusDays(Window.WEEK.days - 1).atStartOfDay())) {
+            LocalDate day = LocalDate.parse(String.valueOf(row.get("day")));
+            String member = String.valueOf(row.get("reviewId"));
+            double likes = ((Number) row.get("likes")).doubleValue();
+            buckets.computeIfAbsent(bucketKey(day), k -> new HashSet<>()).add(ZSetOperations.TypedTuple.of(member, likes));
+        }
+        for (int i = 0; i < Window.WEEK.days; i++) {
+            String key = bucketKey(today.minusDays(i));
+            Set<ZSetOperations.TypedTuple<String>> tuples = buckets.get(key);
+            if (tuples == null) {
+                redisTemplate.delete(key);
+                continue;
+            }
+            String tmp = key + ":rebuild";
+            redisTemplate.delete(tmp);
+            redisTemplate.opsForZSet().add(tmp, tuples);
+            redisTemplate.rename(tmp, key);
+            redisTemplate.expire(key, BUCKET_TTL);
+        }
+        refreshWindows();
+        log.info("Review leaderboard rebuilt: {} reviews in {} ms", total, System.currentTimeMillis() - start);
+    }
+
+    private void refreshWindow(Window window) {
+        LocalDate today = LocalDate.now();
+        List<String> keys = new ArrayList<>(window.days);
+        double[] weights = new double[window.days];
+        for (int i = 0; i < window.days; i++) {
+            keys.add(bucketKey(today.minusDays(i)));
+            weights[i] = Math.pow(0.5, i / window.halfLifeDays);
+        }
+        String dest = windowKey(window);
+        ZSetOperations<String, String> zset = redisTemplate.opsForZSet();
+        zset.unionAndStore(keys.get(0), keys.subList(1, keys.size()), dest, Aggregate.SUM, Weights.of(weights));
+        // 取消点赞可能让某天的增量为负，去掉没有净点赞的评论
+        zset.removeRangeByScore(dest, Double.NEGATIVE_INFINITY, 0);
+    }
+
+    private static String windowKey(Window window) {
+        return KEY_WINDOW_PREFIX + window.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String bucketKey(LocalDate day) {
+        return KEY_BUCKET_PREFIX + BUCKET_FORMAT.format(day);
+    }
+}
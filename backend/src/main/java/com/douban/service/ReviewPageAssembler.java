@@ -0,0 +1,103 @@
+package com.douban.service;
+
+import com.douban.cache.UserBasicCache;
+import com.douban.counter.CounterPipeline;
+import com.douban.entity.Movie;
+import com.douban.entity.Rating;
+import com.douban.entity.Review;
+import com.douban.entity.User;
+import com.douban.mapper.RatingMapper;
+import com.douban.mapper.ReviewLikeMapper;
+import com.douban.search.MovieCatalog;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 分阶段组装评论列表：先取评论行，再按批补齐作者、作者评分、当前用户点赞状态、点赞数和电影信息。
+ *
+ * 每一页固定只多出两次小批量查询（作者评分、点赞状态），作者信息走缓存，点赞数来自
+ * 反范式的 reviews.like_count 加上计数管道中尚未落库的增量，电影信息来自内存目录。
+ */
+@Component
+public class ReviewPageAssembler {
+
+    private final UserBasicCache userBasicCache;
+    private final RatingMapper ratingMapper;
+    private final ReviewLikeMapper reviewLikeMapper;
+    private final CounterPipeline counterPipeline;
+    private final MovieCatalog movieCatalog;
+    private final MovieService movieService;
+
+    public ReviewPageAssembler(UserBasicCache userBasicCache, RatingMapper ratingMapper,
+                               ReviewLikeMapper reviewLikeMapper, CounterPipeline counterPipeline,
+                               MovieCatalog movieCatalog, MovieService movieService) {
+        this.userBasicCache = userBasicCache;
+        this.ratingMapper = ratingMapper;
+        this.reviewLikeMapper = reviewLikeMapper;
+        this.counterPipeline = counterPipeline;
+        this.movieCatalog = movieCatalog;
+        this.movieService = movieService;
+    }
+
+    /**
+     * 原地补齐字段并返回同一个列表。
+     *
+     * @param viewerId    当前用户，未登录为 null（liked 留空）
+     * @param withMovies  是否补齐电影标题、海报、年份（跨电影的列表需要）
+     */
+    public List<Review> assemble(List<Review> reviews, Long viewerId, boolean withMovies) {
+        if (reviews.isEmpty()) return reviews;
+
+        Set<Long> authorIds = new HashSet<>();
+        List<Long> reviewIds = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            authorIds.add(review.getUserId());
+            reviewIds.add(review.getId());
+        }
+
+        Map<Long, User> authors = userBasicCache.getAll(authorIds);
+
+        Map<String, Integer> scores = new HashMap<>();
+        for (Rating rating : ratingMapper.findScoresFor(reviews)) {
+            scores.put(rating.getUserId() + ":" + rating.getMovieId(), rating.getScore());
+        }
+
+        Set<Long> liked = viewerId == null
+                ? Set.of()
+                : new HashSet<>(reviewLikeMapper.findLikedReviewIds(viewerId, reviewIds));
+
+        for (Review review : reviews) {
+            User author = authors.get(review.getUserId());
+            if (author != null) {
+                review.setUsername(author.getUsername());
+                review.setAvatar(author.getAvatar());
+            }
+            review.setUserRating(scores.get(review.getUserId() + ":" + review.getMovieId()));
+            if (viewerId != null) {
+                review.setLiked(liked.contains(review.getId()));
+            }
+            int stored = review.getLikeCount() == null ? 0 : review.getLikeCount();
+            review.setLikeCount((int) Math.max(0, stored + counterPipeline.pendingReviewLikes(review.getId())));
+            if (withMovies) {
+                Movie movie = findMovie(review.getMovieId());
+                if (movie != null) {
+                    review.setMovieTitle(movie.getTitle());
+                    review.setMoviePoster(movie.getPoster());
+                    review.setMovieYear(movie.getYear());
+                }
+            }
+        }
+        return reviews;
+    }
+
+    private Movie findMovie(Long movieId) {
+        Movie movie = movieCatalog.get(movieId);
+        if (movie != null || movieCatalog.isReady()) return movie;
+        try {
+            return movieService.getMovieById(movieId);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
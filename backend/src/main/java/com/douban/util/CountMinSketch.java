@@ -0,0 +1,82 @@
+package com.douban.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch：固定内存的频率估计，估计值只会偏大不会偏小。
+ * 线程安全，计数使用 AtomicLongArray。
+ */
+public class CountMinSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L
+    };
+
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final AtomicLongArray table;
+
+    /**
+     * @param depth 哈希行数（1-8），越大误差概率越低
+     * @param width 每行宽度，向上取整为 2 的幂，越大误差越小
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("depth must be 1-" + SEEDS.length);
+        }
+        this.depth = depth;
+        this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.mask = this.width - 1;
+        this.table = new AtomicLongArray(depth * this.width);
+    }
+
+    public void add(long item, long count) {
+        for (int i = 0; i < depth; i++) {
+            table.addAndGet(index(i, item), count);
+        }
+    }
+
+    public long estimate(long item) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, table.get(index(i, item)));
+        }
+        return min;
+    }
+
+    /**
+     * 所有计数减半，用于让历史频率逐渐衰减。
+     */
+    public void halve() {
+        for (int i = 0; i < table.length(); i++) {
+            long v = table.get(i);
+            if (v != 0) {
+                table.set(i, v >>> 1);
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0);
+        }
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    private int index(int row, long item) {
+        long h = item * SEEDS[row];
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        return row * width + (int) (h & mask);
+    }
+}
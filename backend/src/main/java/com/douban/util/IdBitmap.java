@@ -0,0 +1,412 @@
+package com.douban.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 不可变的压缩位图（Roaring 风格），用于非负 int ID 集合的交并运算。
+ *
+ * ID 按高 16 位分桶，每桶一个容器：元素不超过 4096 个时用有序 char 数组，否则用 1024 个 long 的位图。
+ * 所有修改都返回新对象，只复制受影响的容器，因此可以在并发读的同时安全地整体替换。
+ */
+public final class IdBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    public static final IdBitmap EMPTY = new IdBitmap(new char[0], new Object[0], new int[0]);
+
+    // 高 16 位（升序）；containers[i] 为 char[]（数组容器）或 long[]（位图容器）
+    private final char[] keys;
+    private final Object[] containers;
+    private final int[] cards;
+    private final int cardinality;
+
+    private IdBitmap(char[] keys, Object[] containers, int[] cards) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cards = cards;
+        int total = 0;
+        for (int c : cards) total += c;
+        this.cardinality = total;
+    }
+
+    /**
+     * 由任意顺序、可重复的 ID 构建。
+     */
+    public static IdBitmap of(int[] values, int length) {
+        int[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int keyCount = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            checkValue(sorted[i]);
+            if (i == 0 || high(sorted[i]) != high(sorted[i - 1])) keyCount++;
+        }
+        char[] keys = new char[keyCount];
+        Object[] containers = new Object[keyCount];
+        int[] cards = new int[keyCount];
+        int k = 0;
+        int i = 0;
+        while (i < sorted.length) {
+            char key = high(sorted[i]);
+            char[] lows = new char[Math.min(sorted.length - i, 1 << 16)];
+            int n = 0;
+            while (i < sorted.length && high(sorted[i]) == key) {
+                char low = (char) sorted[i];
+                if (n == 0 || lows[n - 1] != low) lows[n++] = low;
+                i++;
+            }
+            keys[k] = key;
+            cards[k] = n;
+            containers[k] = n > ARRAY_MAX ? toBitmap(lows, n) : Arrays.copyOf(lows, n);
+            k++;
+        }
+        return new IdBitmap(keys, containers, cards);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) return false;
+        int i = Arrays.binarySearch(keys, high(value));
+        if (i < 0) return false;
+        return containerContains(containers[i], (char) value);
+    }
+
+    public IdBitmap with(int value) {
+        checkValue(value);
+        char key = high(value);
+        char low = (char) value;
+        int i = Arrays.binarySearch(keys, key);
+        if (i < 0) {
+            int at = -i - 1;
+            return insertContainer(at, key, new char[]{low}, 1);
+        }
+        if (containerContains(containers[i], low)) return this;
+        Object container = containers[i];
+        Object updated;
+        if (container instanceof char[] array) {
+            if (array.length + 1 > ARRAY_MAX) {
+                long[] bitmap = toBitmap(array, array.length);
+                bitmap[low >>> 6] |= 1L << low;
+                updated = bitmap;
+            } else {
+                int pos = -Arrays.binarySearch(array, low) - 1;
+                char[] next = new char[array.length + 1];
+                System.arraycopy(array, 0, next, 0, pos);
+                next[pos] = low;
+                System.arraycopy(array, pos, next, pos + 1, array.length - pos);
+                updated = next;
+            }
+        } else {
+            long[] bitmap = ((long[]) container).clone();
+            bitmap[low >>> 6] |= 1L << low;
+            updated = bitmap;
+        }
+        return replaceContainer(i, updated, cards[i] + 1);
+    }
+
+    public IdBitmap without(int value) {
+        if (value < 0) return this;
+        char low = (char) value;
+        int i = Arrays.binarySearch(keys, high(value));
+        if (i < 0 || !containerContains(containers[i], low)) return this;
+        int card = cards[i] - 1;
+        if (card == 0) return removeContainer(i);
+        Object container = containers[i];
+        Object updated;
+        if (container instanceof char[] array) {
+            int pos = Arrays.binarySearch(array, low);
+            char[] next = new char[array.length - 1];
+            System.arraycopy(array, 0, next, 0, pos);
+            System.arraycopy(array, pos + 1, next, pos, array.length - pos - 1);
+            updated = next;
+        } else {
+            long[] bitmap = ((long[]) container).clone();
+            bitmap[low >>> 6] &= ~(1L << low);
+            updated = card <= ARRAY_MAX ? toArray(bitmap, card) : bitmap;
+        }
+        return replaceContainer(i, updated, card);
+    }
+
+    public IdBitmap and(IdBitmap other) {
+        int max = Math.min(keys.length, other.keys.length);
+        char[] outKeys = new char[max];
+        Object[] outContainers = new Object[max];
+        int[] outCards = new int[max];
+        int n = 0;
+        int i = 0, j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Object c = andContainers(containers[i], other.containers[j]);
+                int card = containerCardinality(c);
+                if (card > 0) {
+                    outKeys[n] = keys[i];
+                    outContainers[n] = c;
+                    outCards[n] = card;
+                    n++;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new IdBitmap(Arrays.copyOf(outKeys, n), Arrays.copyOf(outContainers, n), Arrays.copyOf(outCards, n));
+    }
+
+    public IdBitmap or(IdBitmap other) {
+        char[] outKeys = new char[keys.length + other.keys.length];
+        Object[] outContainers = new Object[outKeys.length];
+        int[] outCards = new int[outKeys.length];
+        int n = 0;
+        int i = 0, j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j >= other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                outKeys[n] = keys[i];
+                outContainers[n] = containers[i];
+                outCards[n++] = cards[i++];
+            } else if (i >= keys.length || keys[i] > other.keys[j]) {
+                outKeys[n] = other.keys[j];
+                outContainers[n] = other.containers[j];
+                outCards[n++] = other.cards[j++];
+            } else {
+                Object c = orContainers(containers[i], other.containers[j]);
+                outKeys[n] = keys[i];
+                outContainers[n] = c;
+                outCards[n++] = containerCardinality(c);
+                i++;
+                j++;
+            }
+        }
+        return new IdBitmap(Arrays.copyOf(outKeys, n), Arrays.copyOf(outContainers, n), Arrays.copyOf(outCards, n));
+    }
+
+    /**
+     * 交集大小，不构造结果位图（用于分面计数）。
+     */
+    public int andCardinality(IdBitmap other) {
+        int total = 0;
+        int i = 0, j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += andCardinality(containers[i], other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 按升序遍历所有元素。
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            int base = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof char[] array) {
+                for (char low : array) action.accept(base | low);
+            } else {
+                long[] bitmap = (long[]) container;
+                for (int w = 0; w < bitmap.length; w++) {
+                    long word = bitmap[w];
+                    while (word != 0) {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        action.accept(base | (w << 6) | bit);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    private IdBitmap insertContainer(int at, char key, Object container, int card) {
+        char[] nextKeys = new char[keys.length + 1];
+        Object[] nextContainers = new Object[keys.length + 1];
+        int[] nextCards = new int[keys.length + 1];
+        System.arraycopy(keys, 0, nextKeys, 0, at);
+        System.arraycopy(containers, 0, nextContainers, 0, at);
+        System.arraycopy(cards, 0, nextCards, 0, at);
+        nextKeys[at] = key;
+        nextContainers[at] = container;
+        nextCards[at] = card;
+        System.arraycopy(keys, at, nextKeys, at + 1, keys.length - at);
+        System.arraycopy(containers, at, nextContainers, at + 1, keys.length - at);
+        System.arraycopy(cards, at, nextCards, at + 1, keys.length - at);
+        return new IdBitmap(nextKeys, nextContainers, nextCards);
+    }
+
+    private IdBitmap replaceContainer(int i, Object container, int card) {
+        Object[] nextContainers = containers.clone();
+        int[] nextCards = cards.clone();
+        nextContainers[i] = container;
+        nextCards[i] = card;
+        return new IdBitmap(keys, nextContainers, nextCards);
+    }
+
+    private IdBitmap removeContainer(int i) {
+        char[] nextKeys = new char[keys.length - 1];
+        Object[] nextContainers = new Object[keys.length - 1];
+        int[] nextCards = new int[keys.length - 1];
+        System.arraycopy(keys, 0, nextKeys, 0, i);
+        System.arraycopy(containers, 0, nextContainers, 0, i);
+        System.arraycopy(cards, 0, nextCards, 0, i);
+        System.arraycopy(keys, i + 1, nextKeys, i, keys.length - i - 1);
+        System.arraycopy(containers, i + 1, nextContainers, i, keys.length - i - 1);
+        System.arraycopy(cards, i + 1, nextCards, i, keys.length - i - 1);
+        return new IdBitmap(nextKeys, nextContainers, nextCards);
+    }
+
+    private static Object andContainers(Object a, Object b) {
+        if (a instanceof char[] x && b instanceof char[] y) {
+            char[] out = new char[Math.min(x.length, y.length)];
+            int n = 0, i = 0, j = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) i++;
+                else if (x[i] > y[j]) j++;
+                else {
+                    out[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        if (a instanceof char[] x) return filter(x, (long[]) b);
+        if (b instanceof char[] y) return filter(y, (long[]) a);
+        long[] x = (long[]) a;
+        long[] y = (long[]) b;
+        long[] out = new long[BITMAP_WORDS];
+        int card = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            out[w] = x[w] & y[w];
+            card += Long.bitCount(out[w]);
+        }
+        return card <= ARRAY_MAX ? toArray(out, card) : out;
+    }
+
+    private static Object orContainers(Object a, Object b) {
+        if (a instanceof char[] x && b instanceof char[] y) {
+            char[] out = new char[x.length + y.length];
+            int n = 0, i = 0, j = 0;
+            while (i < x.length || j < y.length) {
+                if (j >= y.length || (i < x.length && x[i] < y[j])) out[n++] = x[i++];
+                else if (i >= x.length || x[i] > y[j]) out[n++] = y[j++];
+                else {
+                    out[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return n > ARRAY_MAX ? toBitmap(out, n) : Arrays.copyOf(out, n);
+        }
+        long[] out;
+        if (a instanceof char[] x) {
+            out = ((long[]) b).clone();
+            for (char v : x) out[v >>> 6] |= 1L << v;
+        } else if (b instanceof char[] y) {
+            out = ((long[]) a).clone();
+            for (char v : y) out[v >>> 6] |= 1L << v;
+        } else {
+            long[] x = (long[]) a;
+            long[] y = (long[]) b;
+            out = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) out[w] = x[w] | y[w];
+        }
+        return out;
+    }
+
+    private static int andCardinality(Object a, Object b) {
+        if (a instanceof char[] x && b instanceof char[] y) {
+            int n = 0, i = 0, j = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) i++;
+                else if (x[i] > y[j]) j++;
+                else {
+                    n++;
+                    i++;
+                    j++;
+                }
+            }
+            return n;
+        }
+        if (a instanceof char[] x) return countIn(x, (long[]) b);
+        if (b instanceof char[] y) return countIn(y, (long[]) a);
+        long[] x = (long[]) a;
+        long[] y = (long[]) b;
+        int card = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) card += Long.bitCount(x[w] & y[w]);
+        return card;
+    }
+
+    private static char[] filter(char[] array, long[] bitmap) {
+        char[] out = new char[array.length];
+        int n = 0;
+        for (char v : array) {
+            if ((bitmap[v >>> 6] & (1L << v)) != 0) out[n++] = v;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int countIn(char[] array, long[] bitmap) {
+        int n = 0;
+        for (char v : array) {
+            if ((bitmap[v >>> 6] & (1L << v)) != 0) n++;
+        }
+        return n;
+    }
+
+    private static boolean containerContains(Object container, char low) {
+        if (container instanceof char[] array) return Arrays.binarySearch(array, low) >= 0;
+        return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    private static int containerCardinality(Object container) {
+        if (container instanceof char[] array) return array.length;
+        int card = 0;
+        for (long word : (long[]) container) card += Long.bitCount(word);
+        return card;
+    }
+
+    private static long[] toBitmap(char[] array, int length) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < length; i++) bitmap[array[i] >>> 6] |= 1L << array[i];
+        return bitmap;
+    }
+
+    private static char[] toArray(long[] bitmap, int card) {
+        char[] out = new char[card];
+        int n = 0;
+        for (int w = 0; w < bitmap.length; w++) {
+            long word = bitmap[w];
+            while (word != 0) {
+                out[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    private static char high(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IdBitmap only supports non-negative ids: " + value);
+        }
+    }
+}
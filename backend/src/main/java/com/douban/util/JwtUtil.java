@@ -2,25 +2,56 @@ package com.douban.util;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 签名密钥和解析器启动时构建一次（JwtParser 不可变、线程安全）。
+ *
+ * 校验通过的 token 按 SHA-256 摘要缓存解析结果直到过期，同一会话的后续请求不再做 HMAC 校验和 JSON 解析；
+ * 缓存有上限，满了先清掉已过期的条目，仍然满则整体清空。内存中不保存 token 原文。
+ */
 @Component
 public class JwtUtil {
 
+    /**
+     * 已校验的 token 中携带的身份信息。
+     */
+    public record TokenPrincipal(Long userId, String username, String role, long expiresAtMillis) {
+    }
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private long expiration;
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${jwt.cache-size:10000}")
+    private int cacheSize;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    private final Map<String, TokenPrincipal> verified = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
     }
 
     public String generateToken(Long userId, String username, String role) {
@@ -33,38 +64,79 @@ public class JwtUtil {
                 .claim("role", role)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
+    /**
+     * 校验并解析 token，只做一次签名校验；无效或已过期返回 null。
+     */
+    public TokenPrincipal parse(String token) {
+        if (token == null || token.isEmpty()) return null;
+        String key = digest(token);
+        long now = System.currentTimeMillis();
+        TokenPrincipal cached = verified.get(key);
+        if (cached != null) {
+            if (cached.expiresAtMillis() > now) {
+                hits.increment();
+                return cached;
+            }
+            verified.remove(key);
+            return null;
+        }
+        misses.increment();
+        TokenPrincipal principal;
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            Object roleObj = claims.get("role");
+            Object usernameObj = claims.get("username");
+            Date exp = claims.getExpiration();
+            principal = new TokenPrincipal(
+                    Long.parseLong(claims.getSubject()),
+                    usernameObj != null ? usernameObj.toString() : null,
+                    roleObj != null ? roleObj.toString() : "USER",
+                    exp != null ? exp.getTime() : now + expiration);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        if (verified.size() >= cacheSize) {
+            verified.values().removeIf(p -> p.expiresAtMillis() <= now);
+            if (verified.size() >= cacheSize) verified.clear();
+        }
+        verified.put(key, principal);
+        return principal;
+    }
+
     public Long getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        return Long.parseLong(claims.getSubject());
+        TokenPrincipal principal = parse(token);
+        if (principal == null) throw new JwtException("Invalid token");
+        return principal.userId();
     }
 
     public String getRoleFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        Object roleObj = claims.get("role");
-        return roleObj != null ? roleObj.toString() : "USER";
+        TokenPrincipal principal = parse(token);
+        if (principal == null) throw new JwtException("Invalid token");
+        return principal.role();
     }
 
     public boolean validateToken(String token) {
+        return parse(token) != null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", verified.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    private static String digest(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
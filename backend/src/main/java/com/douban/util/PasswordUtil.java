@@ -1,53 +1,86 @@
 package com.douban.util;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
+/**
+ * 密码哈希，存储格式带版本前缀，便于以后更换算法或调高成本：
+ *
+ * - $pbkdf2-sha256$i=迭代次数$盐$哈希：当前格式（PBKDF2-HMAC-SHA256，16 字节盐，32 字节输出）；
+ * - 无前缀的 Base64(盐 + SHA-256)：旧格式，只用于校验，登录成功后由调用方升级（见 {@link #needsRehash}）。
+ */
 public class PasswordUtil {
 
     private static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH_BITS = 256;
+    private static final String PBKDF2_PREFIX = "$pbkdf2-sha256$";
 
-    public static String hashPassword(String password) {
-        try {
-            SecureRandom random = new SecureRandom();
-            byte[] salt = new byte[SALT_LENGTH];
-            random.nextBytes(salt);
+    private static final SecureRandom RANDOM = new SecureRandom();
 
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(salt);
-            byte[] hashedPassword = md.digest(password.getBytes());
+    public static String hashPassword(String password, int iterations) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PBKDF2_PREFIX + "i=" + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
 
-            byte[] combined = new byte[salt.length + hashedPassword.length];
-            System.arraycopy(salt, 0, combined, 0, salt.length);
-            System.arraycopy(hashedPassword, 0, combined, salt.length, hashedPassword.length);
+    public static boolean verifyPassword(String password, String storedHash) {
+        if (password == null || storedHash == null) return false;
+        try {
+            if (storedHash.startsWith(PBKDF2_PREFIX)) {
+                String[] parts = storedHash.substring(PBKDF2_PREFIX.length()).split("\\$");
+                int iterations = Integer.parseInt(parts[0].substring("i=".length()));
+                byte[] salt = Base64.getDecoder().decode(parts[1]);
+                byte[] expected = Base64.getDecoder().decode(parts[2]);
+                return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+            }
+            return verifyLegacy(password, storedHash);
+        } catch (Exception e) {
+            return false;
+        }
+    }
 
-            return Base64.getEncoder().encodeToString(combined);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
+    /**
+     * 旧格式或迭代次数低于 iterations（升级下限，而不是当前的目标迭代次数）时返回 true，应在校验通过后重新计算哈希。
+     */
+    public static boolean needsRehash(String storedHash, int iterations) {
+        if (storedHash == null || !storedHash.startsWith(PBKDF2_PREFIX)) return true;
+        try {
+            String params = storedHash.substring(PBKDF2_PREFIX.length()).split("\\$")[0];
+            return Integer.parseInt(params.substring("i=".length())) < iterations;
+        } catch (RuntimeException e) {
+            return true;
         }
     }
 
-    public static boolean verifyPassword(String password, String storedHash) {
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_LENGTH_BITS);
         try {
-            byte[] combined = Base64.getDecoder().decode(storedHash);
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error hashing password", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
 
-            byte[] salt = new byte[SALT_LENGTH];
-            System.arraycopy(combined, 0, salt, 0, SALT_LENGTH);
+    private static boolean verifyLegacy(String password, String storedHash) throws NoSuchAlgorithmException {
+        byte[] combined = Base64.getDecoder().decode(storedHash);
+        if (combined.length <= SALT_LENGTH) return false;
 
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(salt);
-            byte[] hashedPassword = md.digest(password.getBytes());
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(combined, 0, SALT_LENGTH);
+        byte[] hashedPassword = md.digest(password.getBytes(StandardCharsets.UTF_8));
 
-            for (int i = 0; i < hashedPassword.length; i++) {
-                if (combined[SALT_LENGTH + i] != hashedPassword[i]) {
-                    return false;
-                }
-            }
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        byte[] stored = new byte[combined.length - SALT_LENGTH];
+        System.arraycopy(combined, SALT_LENGTH, stored, 0, stored.length);
+        return MessageDigest.isEqual(stored, hashedPassword);
     }
 }
@@ -0,0 +1,78 @@
+package com.douban.util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列：多个生产者、单个消费者。
+ *
+ * 每个槽位带一个序号（Vyukov 有界队列）：生产者 CAS 抢占写位置，写入元素后发布序号；
+ * 消费者按序号判断槽位是否就绪，读完后把序号推进一圈交还给生产者。队列满时 offer 直接返回 false。
+ */
+public class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity 容量，向上取整为 2 的幂
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    public boolean offer(E item) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long seq = sequences.get(index);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(index, item);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (seq < pos) {
+                // 槽位还没被消费者释放：队列已满
+                return false;
+            }
+            // seq > pos：其他生产者抢先，重读 tail
+        }
+    }
+
+    /**
+     * 取出最多 max 个元素追加到 out，返回取出的数量。只能由单个线程调用。
+     */
+    public int drainTo(List<? super E> out, int max) {
+        int n = 0;
+        long pos = head;
+        while (n < max) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) break;
+            out.add(items.get(index));
+            items.lazySet(index, null);
+            sequences.set(index, pos + mask + 1);
+            pos++;
+            n++;
+        }
+        head = pos;
+        return n;
+    }
+
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity(), tail.get() - head));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
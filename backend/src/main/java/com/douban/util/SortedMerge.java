@@ -0,0 +1,33 @@
+package com.douban.util;
+
+import java.util.*;
+
+/**
+ * 多路归并：把若干条已按同一顺序排好的列表合并成一条，只取前 limit 个。
+ * 用小顶堆保存每一路的当前元素，复杂度 O(limit · log k)；顺序相同时靠前的列表优先。
+ */
+public final class SortedMerge {
+
+    private SortedMerge() {
+    }
+
+    public static <T> List<T> merge(List<? extends List<? extends T>> sources, Comparator<? super T> order, int limit) {
+        List<T> merged = new ArrayList<>(Math.max(0, limit));
+        if (limit <= 0) return merged;
+        // 堆中的元素为 {来源下标, 来源内位置}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+            int c = order.compare(sources.get(a[0]).get(a[1]), sources.get(b[0]).get(b[1]));
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            if (!sources.get(i).isEmpty()) heap.add(new int[]{i, 0});
+        }
+        while (!heap.isEmpty() && merged.size() < limit) {
+            int[] head = heap.poll();
+            List<? extends T> source = sources.get(head[0]);
+            merged.add(source.get(head[1]));
+            if (head[1] + 1 < source.size()) heap.add(new int[]{head[0], head[1] + 1});
+        }
+        return merged;
+    }
+}
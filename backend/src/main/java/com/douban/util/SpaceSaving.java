@@ -0,0 +1,62 @@
+package com.douban.util;
+
+import java.util.*;
+
+/**
+ * Space-Saving 算法：用固定数量的计数器追踪数据流中的高频元素（heavy hitters）。
+ *
+ * 计数器满时，新元素顶替当前计数最小的元素，并继承其计数（记为误差上界）。
+ * 任何真实频率超过 总数 / 容量 的元素都保证在结果中，估计值只会偏大，偏大量不超过 error。
+ * 线程安全（方法级同步），每次 offer 为 O(log 容量)；高并发写入时由调用方分条带使用（见 HeavyHitters）。
+ */
+public class SpaceSaving {
+
+    public record Counter(long item, long count, long error) {
+    }
+
+    private static final Comparator<Counter> ORDER =
+            Comparator.comparingLong(Counter::count).thenComparingLong(Counter::item);
+
+    private final int capacity;
+    private final Map<Long, Counter> counters;
+    private final TreeSet<Counter> byCount = new TreeSet<>(ORDER);
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public synchronized void offer(long item, long count) {
+        if (count <= 0) return;
+        Counter current = counters.get(item);
+        Counter updated;
+        if (current != null) {
+            byCount.remove(current);
+            updated = new Counter(item, current.count + count, current.error);
+        } else if (counters.size() < capacity) {
+            updated = new Counter(item, count, 0);
+        } else {
+            Counter min = byCount.pollFirst();
+            counters.remove(min.item);
+            updated = new Counter(item, min.count + count, min.count);
+        }
+        counters.put(item, updated);
+        byCount.add(updated);
+    }
+
+    /**
+     * 按计数降序返回所有计数器。
+     */
+    public synchronized List<Counter> counters() {
+        return new ArrayList<>(byCount.descendingSet());
+    }
+
+    public synchronized int size() {
+        return counters.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,44 @@
+package com.douban.websocket;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 只投递到本节点的连接（内置简单代理），适用于单节点部署。
+ */
+@Component
+@ConditionalOnProperty(name = "douban.websocket.relay", havingValue = "local")
+public class LocalMessageRelay implements MessageRelay {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final AtomicLong sent = new AtomicLong();
+
+    public LocalMessageRelay(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @Override
+    public void sendToUser(Long userId, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(userId.toString(), destination, payload);
+        sent.incrementAndGet();
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        sent.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("relay", "local");
+        stats.put("sent", sent.get());
+        return stats;
+    }
+}
@@ -0,0 +1,22 @@
+package com.douban.websocket;
+
+import java.util.Map;
+
+/**
+ * STOMP 消息的跨节点投递。单节点部署用 {@link LocalMessageRelay}，
+ * 多节点用 {@link RedisMessageRelay}（douban.websocket.relay）。
+ */
+public interface MessageRelay {
+
+    /**
+     * 投递到某个用户的 /user 目的地（如 /queue/notice），用户连在哪个节点都能收到。
+     */
+    void sendToUser(Long userId, String destination, Object payload);
+
+    /**
+     * 投递到所有节点上订阅了 destination（如 /topic/announcement）的连接。
+     */
+    void broadcast(String destination, Object payload);
+
+    Map<String, Object> stats();
+}
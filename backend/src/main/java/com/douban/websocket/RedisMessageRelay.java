@@ -0,0 +1,131 @@
+package com.douban.websocket;
+
+import com.douban.config.RedisCircuitBreaker;
+import com.douban.config.RedisPubSub;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 Redis 发布/订阅的跨节点投递：每个节点订阅自己的频道 douban:ws:node:{nodeId} 和广播频道。
+ *
+ * 发给用户的消息先投递到本节点的连接，再按 {@link WebSocketSessionRegistry} 中的登记
+ * 只发布到用户所在的其他节点，不会在所有节点间泛洪；广播发布一次，各节点投递给自己的订阅者。
+ * Redis 不可用或熔断时只能投递到本节点。
+ */
+@Component
+@ConditionalOnProperty(name = "douban.websocket.relay", havingValue = "redis", matchIfMissing = true)
+public class RedisMessageRelay implements MessageRelay {
+    private static final Logger log = LoggerFactory.getLogger(RedisMessageRelay.class);
+
+    private static final String NODE_CHANNEL_PREFIX = "douban:ws:node:";
+    private static final String BROADCAST_CHANNEL = "douban:ws:broadcast";
+
+    /**
+     * 跨节点传递的消息；userId 为 null 表示广播。
+     */
+    record Envelope(String origin, String userId, String destination, JsonNode payload) {
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final RedisPubSub pubSub;
+    private final RedisCircuitBreaker redisBreaker;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong deliveredLocal = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong localOnly = new AtomicLong();
+
+    public RedisMessageRelay(SimpMessagingTemplate messagingTemplate, WebSocketSessionRegistry sessionRegistry,
+                             RedisPubSub pubSub, RedisCircuitBreaker redisBreaker, ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.sessionRegistry = sessionRegistry;
+        this.pubSub = pubSub;
+        this.redisBreaker = redisBreaker;
+        this.objectMapper = objectMapper;
+        pubSub.subscribe(NODE_CHANNEL_PREFIX + sessionRegistry.nodeId(), this::onMessage);
+        pubSub.subscribe(BROADCAST_CHANNEL, this::onMessage);
+    }
+
+    @Override
+    public void sendToUser(Long userId, String destination, Object payload) {
+        if (sessionRegistry.isLocal(userId)) {
+            messagingTemplate.convertAndSendToUser(userId.toString(), destination, payload);
+            deliveredLocal.incrementAndGet();
+        }
+        Set<String> nodes = sessionRegistry.nodesOf(userId);
+        if (nodes == null) {
+            localOnly.incrementAndGet();
+            return;
+        }
+        String self = sessionRegistry.nodeId();
+        String message = null;
+        for (String node : nodes) {
+            if (self.equals(node)) continue;
+            if (message == null) {
+                message = encode(new Envelope(self, userId.toString(), destination, objectMapper.valueToTree(payload)));
+            }
+            if (pubSub.publish(NODE_CHANNEL_PREFIX + node, message)) published.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        deliveredLocal.incrementAndGet();
+        if (!redisBreaker.allowRequest()) {
+            localOnly.incrementAndGet();
+            return;
+        }
+        String message = encode(new Envelope(sessionRegistry.nodeId(), null, destination, objectMapper.valueToTree(payload)));
+        if (pubSub.publish(BROADCAST_CHANNEL, message)) published.incrementAndGet();
+    }
+
+    private void onMessage(String message) {
+        Envelope envelope;
+        try {
+            envelope = objectMapper.readValue(message, Envelope.class);
+        } catch (Exception e) {
+            log.warn("Malformed websocket relay message: {}", e.getMessage());
+            return;
+        }
+        if (sessionRegistry.nodeId().equals(envelope.origin())) return;
+        received.incrementAndGet();
+        if (envelope.userId() == null) {
+            messagingTemplate.convertAndSend(envelope.destination(), envelope.payload());
+        } else {
+            messagingTemplate.convertAndSendToUser(envelope.userId(), envelope.destination(), envelope.payload());
+        }
+    }
+
+    private String encode(Envelope envelope) {
+        try {
+            return objectMapper.writeValueAsString(envelope);
+        } catch (Exception e) {
+            throw new IllegalStateException("无法序列化推送消息", e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("relay", "redis");
+        stats.putAll(sessionRegistry.stats());
+        stats.put("deliveredLocal", deliveredLocal.get());
+        stats.put("published", published.get());
+        stats.put("received", received.get());
+        stats.put("localOnly", localOnly.get());
+        return stats;
+    }
+}
@@ -0,0 +1,182 @@
+package com.douban.websocket;
+
+import com.douban.config.RedisCircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.net.InetAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已登录 WebSocket 连接的登记表：本节点按用户记录会话，跨节点在 Redis 中记录“用户 → 所在节点”。
+ *
+ * Redis 中每个用户一个有序集合 douban:ws:nodes:{userId}，成员为节点ID，分值为该节点最近一次心跳的时间（毫秒）。
+ * 每个节点只刷新自己成员的分值，读取时忽略并顺带删除超过 TTL 没有心跳的成员，
+ * 所以宕机节点的登记在 TTL（加上节点间的时钟偏差）之后就不再被返回，不会被其他存活节点的续期一直带着。
+ * 整个 key 也设置 TTL，所有节点都不再心跳时自动删除。只在 relay 为 redis 时写 Redis。
+ */
+@Component
+public class WebSocketSessionRegistry {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketSessionRegistry.class);
+
+    private static final String KEY_USER_PREFIX = "douban:ws:nodes:";
+    private static final Duration TTL = Duration.ofSeconds(90);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker redisBreaker;
+    private final boolean distributed;
+    private final String nodeId;
+
+    // 用户ID → 本节点上的会话ID
+    private final Map<String, Set<String>> localSessions = new ConcurrentHashMap<>();
+
+    public WebSocketSessionRegistry(StringRedisTemplate redisTemplate, RedisCircuitBreaker redisBreaker,
+                                    @Value("${douban.websocket.relay:redis}") String relay,
+                                    @Value("${douban.websocket.node-id:}") String nodeId) {
+        this.redisTemplate = redisTemplate;
+        this.redisBreaker = redisBreaker;
+        this.distributed = "redis".equalsIgnoreCase(relay);
+        this.nodeId = nodeId == null || nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        if (user == null) return;
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        if (sessionId == null) return;
+        localSessions.computeIfAbsent(user.getName(), k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+        if (distributed) register(List.of(user.getName()));
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) return;
+        String userId = user.getName();
+        boolean last = localSessions.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(event.getSessionId());
+            return sessions.isEmpty() ? null : sessions;
+        }) == null;
+        if (last && distributed && redisBreaker.allowRequest()) {
+            try {
+                redisTemplate.opsForZSet().remove(KEY_USER_PREFIX + userId, nodeId);
+                redisBreaker.recordSuccess();
+            } catch (Exception e) {
+                redisBreaker.recordFailure(e);
+                log.debug("Redis unavailable, session of user {} expires with TTL: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 当前连在本节点上的用户。
+     */
+    public List<Long> localUserIds() {
+        List<Long> ids = new ArrayList<>(localSessions.size());
+        for (String userId : localSessions.keySet()) {
+            try {
+                ids.add(Long.valueOf(userId));
+            } catch (NumberFormatException ignored) {
+                // 非数字的 Principal 名称不是站内用户
+            }
+        }
+        return ids;
+    }
+
+    public boolean isLocal(Long userId) {
+        return localSessions.containsKey(userId.toString());
+    }
+
+    /**
+     * 用户所在的节点（可能包含本节点），只返回 TTL 内有过心跳的节点；Redis 不可用或熔断时返回 null。
+     */
+    public Set<String> nodesOf(Long userId) {
+        if (!redisBreaker.allowRequest()) return null;
+        String key = KEY_USER_PREFIX + userId;
+        double cutoff = System.currentTimeMillis() - TTL.toMillis();
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.zRemRangeByScore(key, Double.NEGATIVE_INFINITY, cutoff);
+                conn.zRangeByScore(key, cutoff, Double.POSITIVE_INFINITY);
+                return null;
+            });
+            redisBreaker.recordSuccess();
+            Set<String> nodes = new HashSet<>();
+            if (results.size() > 1 && results.get(1) instanceof Collection<?> members) {
+                for (Object member : members) nodes.add(member.toString());
+            }
+            return nodes;
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, cannot locate sessions of user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 续期本节点在线用户的登记；Redis 恢复后也靠这里补上断开期间的新连接。
+     */
+    @Scheduled(fixedDelayString = "${douban.websocket.heartbeat-ms:30000}")
+    public void heartbeat() {
+        if (!distributed || localSessions.isEmpty()) return;
+        register(new ArrayList<>(localSessions.keySet()));
+    }
+
+    private void register(List<String> userIds) {
+        if (!redisBreaker.allowRequest()) return;
+        double now = System.currentTimeMillis();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String userId : userIds) {
+                    conn.zAdd(KEY_USER_PREFIX + userId, now, nodeId);
+                    conn.expire(KEY_USER_PREFIX + userId, TTL.toSeconds());
+                }
+                return null;
+            });
+            redisBreaker.recordSuccess();
+        } catch (Exception e) {
+            redisBreaker.recordFailure(e);
+            log.debug("Redis unavailable, register {} websocket users on next heartbeat: {}", userIds.size(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int sessions = 0;
+        for (Set<String> s : localSessions.values()) sessions += s.size();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("localUsers", localSessions.size());
+        stats.put("localSessions", sessions);
+        return stats;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,75 @@
+package com.douban.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link SqlRiskScanner} 必须与原先拦截器里的正则给出相同结论：
+ * 原做法是先把空白压成一个空格、转小写，再用下面的正则 find。
+ */
+class SqlRiskScannerTest {
+
+    private static final Pattern LEGACY_PATTERN = Pattern.compile(
+            "(?i)(\\bunion\\b|\\bdrop\\b|\\binsert\\b.+\\binto\\b.+information_schema|sleep\\s*\\(|benchmark\\s*\\(|or\\s+1=1|--|;--|/\\*|\\*/|xp_)");
+
+    // 随机片段的组成部分：规则里的关键字（含大小写变体和粘连形式）、分隔符和普通 SQL 词
+    private static final String[] TOKENS = {
+            "union", "UNION", "Union", "unions", "_union", "union_all",
+            "drop", "DROP", "dropped", "drop1", "xdrop",
+            "insert", "INSERT", "insertinto", "into", "INTO", "into_",
+            "information_schema", "INFORMATION_SCHEMA", "information", "_schema",
+            "sleep", "SLEEP", "benchmark", "BenchMark", "(", ")",
+            "or", "OR", "Or", "for", "1=1", "1", "=", "1 =1",
+            "-", "--", ";", "/", "*", "/*", "*/",
+            "xp_", "XP_", "x", "p", "_", "xp",
+            "select", "from", "where", "movies", "id", "?", ",", "'", "a", "0",
+            " ", " ", " ", "  ", "\t", "\n", "\r\n", "\f", "\u000B"
+    };
+
+    private static boolean legacyIsRisky(String sql) {
+        String normalized = sql.replaceAll("\\s+", " ").toLowerCase();
+        return LEGACY_PATTERN.matcher(normalized).find();
+    }
+
+    @Test
+    void agreesWithLegacyRegexOnRandomFragments() {
+        Random random = new Random(20240917L);
+        StringBuilder sb = new StringBuilder();
+        int risky = 0;
+        for (int n = 0; n < 2_000_000; n++) {
+            sb.setLength(0);
+            int parts = 1 + random.nextInt(12);
+            for (int i = 0; i < parts; i++) {
+                sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            String sql = sb.toString();
+            boolean expected = legacyIsRisky(sql);
+            assertEquals(expected, SqlRiskScanner.isRisky(sql), () -> "disagree on: " + sql.replace("\n", "\\n"));
+            if (expected) risky++;
+        }
+        // 保证随机片段两种结论都覆盖到了
+        assertTrue(risky > 0 && risky < 2_000_000);
+    }
+
+    @Test
+    void flagsTypicalInjections() {
+        assertTrue(SqlRiskScanner.isRisky("SELECT * FROM users WHERE id = 1 OR 1=1"));
+        assertTrue(SqlRiskScanner.isRisky("SELECT * FROM movies UNION SELECT password FROM users"));
+        assertTrue(SqlRiskScanner.isRisky("SELECT SLEEP (5)"));
+        assertTrue(SqlRiskScanner.isRisky("INSERT INTO t SELECT * FROM INFORMATION_SCHEMA.tables"));
+        assertTrue(SqlRiskScanner.isRisky("SELECT 1 -- comment"));
+    }
+
+    @Test
+    void acceptsOrdinaryStatements() {
+        assertFalse(SqlRiskScanner.isRisky("SELECT * FROM movies WHERE id = ? AND status = ?"));
+        assertFalse(SqlRiskScanner.isRisky("INSERT INTO ratings (user_id, movie_id, score) VALUES (?, ?, ?)"));
+        assertFalse(SqlRiskScanner.isRisky("UPDATE reviews SET dropped_at = NOW() WHERE id = ?"));
+    }
+}
@@ -35,6 +35,8 @@ CREATE TABLE IF NOT EXISTS movies (
     duration INT,
     rating DECIMAL(3, 1) DEFAULT 0.0,
     rating_count INT DEFAULT 0,
+    -- 评分总和（与 rating_count 一起增量维护，rating = rating_sum / rating_count）
+    rating_sum BIGINT NOT NULL DEFAULT 0,
     summary TEXT,
     poster VARCHAR(500),
     images TEXT,
@@ -42,7 +44,9 @@ CREATE TABLE IF NOT EXISTS movies (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     INDEX idx_title (title),
     INDEX idx_year (year),
-    INDEX idx_rating (rating DESC)
+    INDEX idx_rating (rating DESC, rating_count DESC, id DESC),
+    -- 内存搜索索引按 updated_at 增量同步
+    INDEX idx_updated_at (updated_at)
 );
 
 -- 评分表
@@ -55,7 +59,8 @@ CREATE TABLE IF NOT EXISTS ratings (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     UNIQUE KEY uk_user_movie (user_id, movie_id),
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
-    FOREIGN KEY (movie_id) REFERENCES movies (id) ON DELETE CASCADE
+    FOREIGN KEY (movie_id) REFERENCES movies (id) ON DELETE CASCADE,
+    INDEX idx_ratings_created (created_at DESC, id DESC)
 );
 
 -- 评论表
@@ -65,12 +70,16 @@ CREATE TABLE IF NOT EXISTS reviews (
     movie_id BIGINT NOT NULL,
     title VARCHAR(200),
     content TEXT NOT NULL,
+    -- 点赞数（review_likes 的计数，由应用批量异步累加）
+    like_count INT NOT NULL DEFAULT 0,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
     FOREIGN KEY (movie_id) REFERENCES movies (id) ON DELETE CASCADE,
-    INDEX idx_movie_id (movie_id),
-    INDEX idx_user_id (user_id)
+    INDEX idx_movie_created (movie_id, created_at DESC, id DESC),
+    INDEX idx_user_id (user_id),
+    INDEX idx_reviews_like (like_count DESC, created_at DESC, id DESC),
+    INDEX idx_reviews_created (created_at DESC, id DESC)
 );
 
 -- 评论点赞表（用户对评论的点赞状态）
@@ -95,7 +104,17 @@ CREATE TABLE IF NOT EXISTS collections (
     UNIQUE KEY uk_user_movie (user_id, movie_id),
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
     FOREIGN KEY (movie_id) REFERENCES movies (id) ON DELETE CASCADE,
-    INDEX idx_user_status (user_id, status)
+    INDEX idx_user_status (user_id, status, created_at DESC, id DESC),
+    INDEX idx_movie_user (movie_id, user_id)
+);
+
+-- 电影收藏计数（由应用批量异步累加，电影删除时由应用清理）
+CREATE TABLE IF NOT EXISTS movie_stats (
+    movie_id BIGINT PRIMARY KEY,
+    wish_count INT NOT NULL DEFAULT 0,
+    watching_count INT NOT NULL DEFAULT 0,
+    watched_count INT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
 );
 
 -- SQL 审计表
@@ -110,6 +129,23 @@ CREATE TABLE IF NOT EXISTS sql_audit (
     INDEX idx_sql_audit_blocked (blocked)
 );
 
+-- SQL 审计聚合表（aggregate 模式：每个语句指纹每个时间窗口一行）
+CREATE TABLE IF NOT EXISTS sql_audit_stats (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    fingerprint CHAR(16) NOT NULL,
+    statement_id VARCHAR(255) NULL,
+    sql_text TEXT NOT NULL,
+    window_start DATETIME NOT NULL,
+    window_end DATETIME NOT NULL,
+    exec_count BIGINT NOT NULL,
+    total_latency_us BIGINT NOT NULL,
+    max_latency_us BIGINT NOT NULL,
+    distinct_users INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_sql_audit_stats_window (window_start),
+    INDEX idx_sql_audit_stats_fp (fingerprint, window_start)
+);
+
 -- 公告表
 CREATE TABLE IF NOT EXISTS announcements (
     id BIGINT PRIMARY KEY AUTO_INCREMENT,
@@ -131,7 +167,26 @@ CREATE TABLE IF NOT EXISTS site_messages (
     status ENUM('UNREAD', 'READ') DEFAULT 'UNREAD',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (receiver_id) REFERENCES users (id) ON DELETE CASCADE,
-    INDEX idx_receiver_status (receiver_id, status)
+    INDEX idx_receiver_status (receiver_id, status),
+    INDEX idx_receiver_created (receiver_id, created_at DESC, id DESC)
+);
+
+-- 全站广播：只存一份，读取时与个人站内信合并（用户注册之前的广播不可见）
+CREATE TABLE IF NOT EXISTS broadcast_messages (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    sender_id BIGINT NULL,
+    title VARCHAR(200) NOT NULL,
+    content TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_broadcast_created (created_at DESC, id DESC)
+);
+
+-- 每个用户的广播已读水位：ID 不大于 broadcast_read_id 的广播视为已读
+CREATE TABLE IF NOT EXISTS user_inbox_state (
+    user_id BIGINT PRIMARY KEY,
+    broadcast_read_id BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
 );
 
 -- 示例用户（密码哈希与 PasswordUtil 兼容）
@@ -662,6 +717,17 @@ VALUES (2, 1, 10),
     (14, 12, 8),
     (7, 5, 10);
 
+-- 根据示例评分回填电影评分聚合（运行期由应用按增量维护）
+UPDATE movies m
+LEFT JOIN (
+    SELECT movie_id, SUM(score) AS score_sum, COUNT(*) AS score_count
+    FROM ratings
+    GROUP BY movie_id
+) rt ON m.id = rt.movie_id
+SET m.rating_sum = COALESCE(rt.score_sum, 0),
+    m.rating_count = COALESCE(rt.score_count, 0),
+    m.rating = COALESCE(ROUND(rt.score_sum / rt.score_count, 1), 0);
+
 INSERT INTO
     collections (user_id, movie_id, status)
 VALUES (2, 1, 'watched'),
@@ -694,6 +760,17 @@ VALUES (2, 1, 'watched'),
     (13, 11, 'watched'),
     (12, 17, 'watched');
 
+-- 根据示例收藏回填收藏计数
+INSERT INTO
+    movie_stats (movie_id, wish_count, watching_count, watched_count)
+SELECT
+    movie_id,
+    SUM(status = 'wish'),
+    SUM(status = 'watching'),
+    SUM(status = 'watched')
+FROM collections
+GROUP BY movie_id;
+
 -- 示例评论
 INSERT INTO
     reviews (
@@ -0,0 +1,22 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：广播消息只存一份（broadcast_messages），每个用户记录一个已读水位（user_inbox_state），
+-- 站内信列表 / 未读数在读取时合并个人消息与广播，发送广播只写一行
+
+-- 0) 确认当前库
+-- USE douban;
+
+CREATE TABLE IF NOT EXISTS broadcast_messages (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    sender_id BIGINT NULL,
+    title VARCHAR(200) NOT NULL,
+    content TEXT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_broadcast_created (created_at DESC, id DESC)
+);
+
+CREATE TABLE IF NOT EXISTS user_inbox_state (
+    user_id BIGINT PRIMARY KEY,
+    broadcast_read_id BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+);
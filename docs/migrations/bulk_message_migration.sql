@@ -0,0 +1,7 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：批量站内信按“收藏过某部电影的用户”分群时，按 (movie_id, user_id) 键集分批读取接收人
+
+-- 0) 确认当前库
+-- USE douban;
+
+ALTER TABLE collections ADD INDEX idx_movie_user (movie_id, user_id);
@@ -0,0 +1,37 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：
+-- 1) reviews 增加 like_count（review_likes 仍是点赞的唯一真相，like_count 为其计数）
+-- 2) 新建 movie_stats 保存想看/在看/看过计数，替代对 collections 的 COUNT 聚合
+
+-- 0) 确认当前库
+-- USE douban;
+
+-- 1) 评论点赞数
+ALTER TABLE reviews
+    ADD COLUMN like_count INT NOT NULL DEFAULT 0 AFTER content,
+    ADD INDEX idx_reviews_like (like_count DESC, created_at DESC);
+
+UPDATE reviews r
+LEFT JOIN (SELECT review_id, COUNT(*) AS cnt FROM review_likes GROUP BY review_id) lc ON lc.review_id = r.id
+SET r.like_count = COALESCE(lc.cnt, 0),
+    r.updated_at = r.updated_at;
+
+-- 2) 收藏计数
+CREATE TABLE IF NOT EXISTS movie_stats (
+    movie_id BIGINT PRIMARY KEY,
+    wish_count INT NOT NULL DEFAULT 0,
+    watching_count INT NOT NULL DEFAULT 0,
+    watched_count INT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+INSERT INTO movie_stats (movie_id, wish_count, watching_count, watched_count)
+SELECT movie_id, SUM(status = 'wish'), SUM(status = 'watching'), SUM(status = 'watched')
+FROM collections
+GROUP BY movie_id
+ON DUPLICATE KEY UPDATE
+    wish_count = VALUES(wish_count),
+    watching_count = VALUES(watching_count),
+    watched_count = VALUES(watched_count);
+
+-- 注意：请在应用停止写入（或低峰期）执行回填，否则回填期间的增量可能被覆盖。
@@ -0,0 +1,34 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：为键集（游标）分页补齐 “排序键 + id” 的复合索引，
+-- 使 WHERE (排序键, id) < 游标 ORDER BY 排序键 DESC, id DESC LIMIT n 只扫描 n 行
+
+-- 0) 确认当前库
+-- USE douban;
+
+-- 1) 电影列表：rating DESC, rating_count DESC, id DESC
+ALTER TABLE movies
+    DROP INDEX idx_rating,
+    ADD INDEX idx_rating (rating DESC, rating_count DESC, id DESC);
+
+-- 2) 评论：电影详情页按时间、排行榜按点赞、后台按时间
+--    先建复合索引再删 idx_movie_id，外键 movie_id 始终有可用索引
+ALTER TABLE reviews
+    ADD INDEX idx_movie_created (movie_id, created_at DESC, id DESC),
+    ADD INDEX idx_reviews_created (created_at DESC, id DESC);
+ALTER TABLE reviews DROP INDEX idx_movie_id;
+ALTER TABLE reviews
+    DROP INDEX idx_reviews_like,
+    ADD INDEX idx_reviews_like (like_count DESC, created_at DESC, id DESC);
+
+-- 3) 评分后台列表
+ALTER TABLE ratings
+    ADD INDEX idx_ratings_created (created_at DESC, id DESC);
+
+-- 4) 我的收藏
+ALTER TABLE collections
+    DROP INDEX idx_user_status,
+    ADD INDEX idx_user_status (user_id, status, created_at DESC, id DESC);
+
+-- 5) 站内信
+ALTER TABLE site_messages
+    ADD INDEX idx_receiver_created (receiver_id, created_at DESC, id DESC);
@@ -0,0 +1,24 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：
+-- 1) movies 增加 rating_sum，与 rating_count 一起作为评分的增量聚合
+-- 2) 读路径直接使用 movies.rating / rating_count，不再对 ratings 全表 GROUP BY
+
+-- 0) 确认当前库
+-- USE douban;
+
+-- 1) 增加评分总和列
+ALTER TABLE movies ADD COLUMN rating_sum BIGINT NOT NULL DEFAULT 0 AFTER rating_count;
+
+-- 2) 排序索引：列表按 rating DESC, rating_count DESC 排序
+ALTER TABLE movies DROP INDEX idx_rating, ADD INDEX idx_rating (rating DESC, rating_count DESC);
+
+-- 3) 用现有评分回填聚合（执行期间请暂停写入评分，或在低峰期执行）
+UPDATE movies m
+LEFT JOIN (
+    SELECT movie_id, SUM(score) AS score_sum, COUNT(*) AS score_count
+    FROM ratings
+    GROUP BY movie_id
+) rt ON m.id = rt.movie_id
+SET m.rating_sum = COALESCE(rt.score_sum, 0),
+    m.rating_count = COALESCE(rt.score_count, 0),
+    m.rating = COALESCE(ROUND(rt.score_sum / rt.score_count, 1), 0);
@@ -0,0 +1,8 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：电影搜索改为应用内存倒排索引，索引按 movies.updated_at 增量同步，需要该列上的索引
+
+-- 0) 确认当前库
+-- USE douban;
+
+ALTER TABLE movies
+    ADD INDEX idx_updated_at (updated_at);
@@ -0,0 +1,22 @@
+-- 用于“已存在数据库”的手动迁移脚本（不要在 init.sql 的全量重建场景使用）
+-- 目标：新建 sql_audit_stats，配合 douban.audit.mode=aggregate 按语句指纹和时间窗口汇总审计，
+-- 正常语句不再逐条写入 sql_audit（被拦截的可疑语句仍逐条完整记录）
+
+-- 0) 确认当前库
+-- USE douban;
+
+CREATE TABLE IF NOT EXISTS sql_audit_stats (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    fingerprint CHAR(16) NOT NULL,
+    statement_id VARCHAR(255) NULL,
+    sql_text TEXT NOT NULL,
+    window_start DATETIME NOT NULL,
+    window_end DATETIME NOT NULL,
+    exec_count BIGINT NOT NULL,
+    total_latency_us BIGINT NOT NULL,
+    max_latency_us BIGINT NOT NULL,
+    distinct_users INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_sql_audit_stats_window (window_start),
+    INDEX idx_sql_audit_stats_fp (fingerprint, window_start)
+);
@@ -42,8 +42,14 @@ const api = {
 
   // 通知
   listUnreadNotifications: () => instance.get('/notifications/unread'),
+  // 未读总数（Redis 计数，变化时也会通过 WebSocket 推送）
+  getUnreadCount: () => instance.get('/notifications/unread/count'),
   listNotifications: (page = 1, size = 20) => instance.get('/notifications', { params: { page, size } }),
+  // 游标分页：第一页 cursor 传空字符串，之后传上一页返回的 nextCursor
+  listNotificationsAfter: (cursor = '', size = 20) => instance.get('/notifications', { params: { cursor, size } }),
   markNotificationsRead: (ids) => instance.post('/notifications/read', ids),
+  // 广播按已读水位标记：upTo 及更早的广播全部已读，不传时标记到最新一条
+  markBroadcastsRead: (upTo) => instance.post('/notifications/read/broadcasts', null, { params: { upTo } }),
   listAnnouncements: () => instance.get('/announcements'),
 
   // 电影
@@ -51,26 +57,39 @@ const api = {
   getMovie: (id) => instance.get(`/movies/${id}`),
   getTopMovies: (limit = 10) => instance.get('/movies/top', { params: { limit } }),
   getRecentMovies: (limit = 10) => instance.get('/movies/recent', { params: { limit } }),
-  getHotMovies: (limit = 10) => instance.get('/movies/hot', { params: { limit } }),
+  // window: 1h / 24h / 7d
+  getHotMovies: (limit = 10, window = '24h', by = 'views') => instance.get('/movies/hot', { params: { limit, window, by } }),
   getMostReviewedMovies: (limit = 10) => instance.get('/movies/most-reviewed', { params: { limit } }),
   getMostWishedMovies: (limit = 10) => instance.get('/movies/most-wished', { params: { limit } }),
   getMostWatchedMovies: (limit = 10) => instance.get('/movies/most-watched', { params: { limit } }),
   searchMovies: (q, page = 1, size = 20) => instance.get('/movies/search', { params: { q, page, size } }),
+  suggestMovies: (prefix, limit = 8) => instance.get('/movies/suggest', { params: { prefix, limit } }),
   getMoviesByGenre: (genre, page = 1, size = 20) => instance.get(`/movies/genre/${genre}`, { params: { page, size } }),
   getMoviesByGenres: (genres = [], page = 1, size = 20) =>
     instance.get('/movies/genres', { params: { genres: Array.isArray(genres) ? genres.join(',') : genres, page, size } }),
+  // filters: { genre: [], decade: [], country: [], language: [], rating: [] }，返回 items/total 及 facets 计数
+  browseMovies: (filters = {}, page = 1, size = 20, match = 'all') => {
+    const params = { page, size, match }
+    Object.entries(filters).forEach(([facet, values]) => {
+      if (values && values.length > 0) params[facet] = values.join(',')
+    })
+    return instance.get('/movies/browse', { params })
+  },
 
   // 首页
   getRecommendations: () => instance.get('/home/recommendations'),
 
   // 评论排行
-  getTopReviews: (page = 1, size = 20) => instance.get('/reviews/top', { params: { page, size } }),
+  // window: all（总榜）/ week / day
+  getTopReviews: (page = 1, size = 20, window = 'all') => instance.get('/reviews/top', { params: { page, size, window } }),
+  getTopReviewsAfter: (cursor = '', size = 20, window = 'all') => instance.get('/reviews/top', { params: { cursor, size, window } }),
 
   // 互动
   rateMovie: (id, score) => instance.post(`/movies/${id}/rating`, { score }),
   removeRating: (id) => instance.delete(`/movies/${id}/rating`),
   getUserRating: (id) => instance.get(`/movies/${id}/rating`),
   getReviews: (id, page = 1, size = 10) => instance.get(`/movies/${id}/reviews`, { params: { page, size } }),
+  getReviewsAfter: (id, cursor = '', size = 10) => instance.get(`/movies/${id}/reviews`, { params: { cursor, size } }),
   createReview: (id, data) => instance.post(`/movies/${id}/reviews`, data),
   deleteReview: (reviewId) => instance.delete(`/movies/reviews/${reviewId}`),
   likeReview: (reviewId) => instance.post(`/movies/reviews/${reviewId}/like`),
@@ -118,6 +137,10 @@ const api = {
   adminToggleAnnouncement: (id, active) => instance.put(`/admin/announcements/${id}/active`, null, { params: { active } }),
   adminDeleteAnnouncement: (id) => instance.delete(`/admin/announcements/${id}`),
   adminSendMessage: (data) => instance.post('/admin/messages', data),
+  // 批量站内信：提交后台任务，返回任务状态（含 jobId）
+  adminSendBulkMessage: (data) => instance.post('/admin/messages/bulk', data),
+  adminGetBulkMessageJob: (jobId) => instance.get(`/admin/messages/bulk/${jobId}`),
+  adminCancelBulkMessageJob: (jobId) => instance.delete(`/admin/messages/bulk/${jobId}`),
 }
 
 export default api
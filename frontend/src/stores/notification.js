@@ -10,16 +10,15 @@ export const useNotificationStore = defineStore('notification', () => {
   const unreadCount = ref(0)
   const client = ref(null)
 
+  // 只取未读数；之后的变化由服务端推送 {type: 'unread', count}，无需轮询
   async function loadUnread() {
-    const data = await api.listUnreadNotifications()
-    messages.value = data
-    unreadCount.value = data.length
+    const data = await api.getUnreadCount()
+    unreadCount.value = data.count || 0
   }
 
   async function markRead(ids) {
     await api.markNotificationsRead(ids)
-    messages.value = messages.value.map((m) => (ids.includes(m.id) ? { ...m, status: 'READ' } : m))
-    unreadCount.value = messages.value.filter((m) => m.status === 'UNREAD').length
+    messages.value = messages.value.map((m) => (!m.broadcast && ids.includes(m.id) ? { ...m, status: 'READ' } : m))
   }
 
   function connect(token) {
@@ -35,12 +34,22 @@ export const useNotificationStore = defineStore('notification', () => {
       onConnect: () => {
         stompClient.subscribe('/user/queue/notice', (msg) => {
           const body = JSON.parse(msg.body)
+          if (body.type === 'unread') {
+            unreadCount.value = body.count
+            return
+          }
+          // 新消息先本地加一，随后推送的未读数会覆盖为准确值
           messages.value.unshift(body)
           unreadCount.value += 1
         })
         stompClient.subscribe('/topic/announcement', (msg) => {
           const body = JSON.parse(msg.body)
           announcements.value.unshift(body)
+          // 广播同时进入每个用户的收件箱（按已读水位计未读）
+          if (body.broadcast) {
+            messages.value.unshift(body)
+            unreadCount.value += 1
+          }
         })
       },
       reconnectDelay: 5000,